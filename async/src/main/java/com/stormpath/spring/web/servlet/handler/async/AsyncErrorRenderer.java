@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+import com.stormpath.spring.web.servlet.handler.RestExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the failure or timeout of a single asynchronous request on the thread completing it.  Created per request
+ * by the {@link AsyncRestErrorInterceptor}.
+ * <p/>
+ * Only one of a result and a timeout is rendered, whichever claims the request first.  A result that loses the race
+ * to a timeout blocks its thread until the timeout has been rendered, because Spring may dispatch the request as soon
+ * as the result has been processed, and the dispatch must not see a partially rendered response.  A result that wins
+ * never blocks, and neither does a timeout.
+ */
+final class AsyncErrorRenderer implements CallableProcessingInterceptor, DeferredResultProcessingInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncErrorRenderer.class);
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final RestExceptionHandler exceptionHandler;
+    private final Object handler;
+
+    //set by whichever of the result or the timeout comes first, so that only one of them is rendered:
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+
+    //released once a timeout has been rendered, see complete():
+    private final CountDownLatch timeoutRendered = new CountDownLatch(1);
+
+    AsyncErrorRenderer(RestExceptionHandler exceptionHandler, Object handler) {
+        this.exceptionHandler = exceptionHandler;
+        this.handler = handler;
+    }
+
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+    }
+
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+    }
+
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        complete(request, concurrentResult);
+    }
+
+    public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+        if (!this.state.compareAndSet(PENDING, TIMED_OUT)) {
+            //the result won the race and is being dispatched:
+            return RESPONSE_HANDLED;
+        }
+        AsyncRequestTimeoutException ex = new AsyncRequestTimeoutException();
+        try {
+            render(request, ex);
+        } finally {
+            this.timeoutRendered.countDown();
+        }
+        //becomes the concurrent result, so that a late result is discarded:
+        return ex;
+    }
+
+    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+    }
+
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, DeferredResult<T> deferredResult) {
+    }
+
+    public <T> void preProcess(NativeWebRequest request, DeferredResult<T> deferredResult) {
+    }
+
+    public <T> void postProcess(NativeWebRequest request, DeferredResult<T> deferredResult, Object concurrentResult) {
+        complete(request, concurrentResult);
+    }
+
+    public <T> boolean handleTimeout(NativeWebRequest request, DeferredResult<T> deferredResult) {
+        //the DeferredResult only accepts one result; this one is rendered by postProcess on this thread:
+        deferredResult.setErrorResult(new AsyncRequestTimeoutException());
+        return false;
+    }
+
+    public <T> void afterCompletion(NativeWebRequest request, DeferredResult<T> deferredResult) {
+    }
+
+    private void complete(NativeWebRequest request, Object result) {
+        if (this.state.compareAndSet(PENDING, COMPLETED)) {
+            if (result instanceof Exception) {
+                render(request, (Exception) result);
+            }
+        } else if (this.state.get() == TIMED_OUT) {
+            //a timeout is being rendered - Spring may dispatch this result as soon as we return, so wait for it:
+            try {
+                this.timeoutRendered.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void render(NativeWebRequest webRequest, Exception ex) {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        HttpServletResponse response = webRequest.getNativeResponse(HttpServletResponse.class);
+        if (this.exceptionHandler.resolveException(request, response, this.handler, ex) == null) {
+            //not resolved - left to the exception resolvers of the async dispatch
+            return;
+        }
+        request.setAttribute(RestExceptionHandler.RENDERED_ATTRIBUTE, Boolean.TRUE);
+        try {
+            //don't hold the response back until the async dispatch completes it:
+            response.flushBuffer();
+        } catch (IOException e) {
+            log.debug("Unable to flush the rendered error response.", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+/**
+ * Rendered by the {@link AsyncRestErrorInterceptor} when an asynchronous request times out before its
+ * {@code Callable} or {@code DeferredResult} produced a result.  The {@code DefaultRestErrorResolver} maps it to
+ * {@code 503 Service Unavailable} by default; like any other exception it can be mapped differently, globally or per
+ * handler.
+ * <p/>
+ * The exception is created on the timeout path only, and carries no stack trace.
+ */
+public class AsyncRequestTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AsyncRequestTimeoutException() {
+        super();
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        //the stack of a container timeout thread says nothing about the request:
+        return this;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+import com.stormpath.spring.web.servlet.handler.RestExceptionHandler;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Completes the async dispatch of a request whose error was already rendered by the
+ * {@link AsyncRestErrorInterceptor}, without invoking the rest of the filter chain or the {@code DispatcherServlet}.
+ * All other requests pass through unchanged.
+ * <p/>
+ * Map it in front of the {@code DispatcherServlet} for {@code ASYNC} dispatches:
+ * <pre>
+ * &lt;filter&gt;
+ *     &lt;filter-name&gt;asyncRestErrorFilter&lt;/filter-name&gt;
+ *     &lt;filter-class&gt;com.stormpath.spring.web.servlet.handler.async.AsyncRestErrorFilter&lt;/filter-class&gt;
+ *     &lt;async-supported&gt;true&lt;/async-supported&gt;
+ * &lt;/filter&gt;
+ * &lt;filter-mapping&gt;
+ *     &lt;filter-name&gt;asyncRestErrorFilter&lt;/filter-name&gt;
+ *     &lt;servlet-name&gt;rest&lt;/servlet-name&gt;
+ *     &lt;dispatcher&gt;ASYNC&lt;/dispatcher&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre>
+ */
+public class AsyncRestErrorFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request) && request.getAttribute(RestExceptionHandler.RENDERED_ATTRIBUTE) != null) {
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+import com.stormpath.spring.web.servlet.handler.RestExceptionHandler;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * {@code HandlerInterceptor} that renders the errors of asynchronous requests ({@code Callable} and
+ * {@code DeferredResult} return values) through a {@link RestExceptionHandler} on the thread that completes them.
+ * <p/>
+ * By default, Spring MVC hands a failed {@code Callable} or {@code DeferredResult} back to the container, which
+ * dispatches the request to the {@code DispatcherServlet} again only to rethrow the exception and resolve it there, and
+ * a timed out request is answered with the container's default {@code 503} error page.  With this interceptor
+ * registered:
+ * <ul>
+ *     <li>An exception produced by a {@code Callable} (or set as the error result of a {@code DeferredResult}) is
+ *     resolved with the handler's exception mappings and rendered by the {@code RestExceptionHandler} on the thread
+ *     that produced it, and flushed immediately.</li>
+ *     <li>A request that times out is resolved as an {@link AsyncRequestTimeoutException} ({@code 503} by default)
+ *     and rendered on the container's timeout thread.  If the timeout races with a result, only whichever comes
+ *     first is rendered.</li>
+ * </ul>
+ * The servlet container still performs the async dispatch Spring requests after every result; with the
+ * {@link AsyncRestErrorFilter} mapped for {@code ASYNC} dispatches it completes without reaching the
+ * {@code DispatcherServlet}.  Without the filter, the {@code RestExceptionHandler} recognizes the rendered response
+ * and returns immediately.
+ * <p/>
+ * Register it like any other interceptor, for example:
+ * <pre>
+ * &lt;mvc:interceptors&gt;
+ *     &lt;bean class="com.stormpath.spring.web.servlet.handler.async.AsyncRestErrorInterceptor"&gt;
+ *         &lt;property name="exceptionHandler" ref="restExceptionResolver"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/mvc:interceptors&gt;
+ * </pre>
+ * Spring 3.2 has no {@code CompletableFuture} return value support; complete a {@code DeferredResult} from the future
+ * instead.
+ *
+ * @see AsyncRestErrorFilter
+ */
+public class AsyncRestErrorInterceptor extends HandlerInterceptorAdapter implements InitializingBean {
+
+    private static final Object KEY = AsyncRestErrorInterceptor.class.getName();
+
+    private RestExceptionHandler exceptionHandler;
+
+    public RestExceptionHandler getExceptionHandler() {
+        return exceptionHandler;
+    }
+
+    public void setExceptionHandler(RestExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(this.exceptionHandler, "exceptionHandler property is required.");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        if (!asyncManager.hasConcurrentResult()) {
+            //bound to the handler so that its exception mappings apply:
+            AsyncErrorRenderer renderer = new AsyncErrorRenderer(this.exceptionHandler, handler);
+            asyncManager.registerCallableInterceptor(KEY, renderer);
+            asyncManager.registerDeferredResultInterceptor(KEY, renderer);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+import com.stormpath.spring.web.servlet.handler.DefaultRestErrorResolver;
+import com.stormpath.spring.web.servlet.handler.RestError;
+import com.stormpath.spring.web.servlet.handler.RestErrorListener;
+import com.stormpath.spring.web.servlet.handler.RestErrorTimings;
+import com.stormpath.spring.web.servlet.handler.RestExceptionHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncErrorRendererTest {
+
+    private static final Callable<String> TASK = new Callable<String>() {
+        public String call() {
+            return "ok";
+        }
+    };
+
+    private BlockingListener listener;
+    private AsyncErrorRenderer renderer;
+    private MockHttpServletResponse response;
+    private ServletWebRequest webRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400");
+        definitions.put("Throwable", "500");
+
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+
+        listener = new BlockingListener();
+
+        RestExceptionHandler exceptionHandler = new RestExceptionHandler();
+        exceptionHandler.setErrorResolver(resolver);
+        exceptionHandler.setMessageConverters(
+                new HttpMessageConverter<?>[]{new MappingJacksonHttpMessageConverter()});
+        exceptionHandler.setErrorListener(listener);
+        exceptionHandler.afterPropertiesSet();
+
+        renderer = new AsyncErrorRenderer(exceptionHandler, null);
+        response = new MockHttpServletResponse();
+        webRequest = new ServletWebRequest(new MockHttpServletRequest(), response);
+    }
+
+    @Test
+    public void testResultLosingToTimeoutWaitsForTimeoutRendering() throws Exception {
+        listener.block();
+        Thread timeout = new Thread(new Runnable() {
+            public void run() {
+                renderer.handleTimeout(webRequest, TASK);
+            }
+        });
+        timeout.start();
+        assertTrue(listener.rendering.await(10, TimeUnit.SECONDS));
+
+        final CountDownLatch completed = new CountDownLatch(1);
+        Thread result = new Thread(new Runnable() {
+            public void run() {
+                renderer.postProcess(webRequest, TASK, new IllegalArgumentException());
+                completed.countDown();
+            }
+        });
+        result.start();
+
+        //the timeout is still being rendered:
+        assertFalse(completed.await(200, TimeUnit.MILLISECONDS));
+
+        listener.release.countDown();
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        timeout.join(10000);
+        assertEquals(1, listener.rendered.get());
+        assertEquals(503, response.getStatus());
+    }
+
+    @Test
+    public void testResultWinningTheRaceIsRendered() throws Exception {
+        renderer.postProcess(webRequest, TASK, new IllegalArgumentException());
+        assertEquals(400, response.getStatus());
+
+        //the timeout comes too late and must neither render nor block:
+        assertSame(CallableProcessingInterceptor.RESPONSE_HANDLED, renderer.handleTimeout(webRequest, TASK));
+        assertEquals(1, listener.rendered.get());
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testRepeatedCompletionDoesNotBlock() throws Exception {
+        renderer.postProcess(webRequest, TASK, new IllegalArgumentException());
+        renderer.postProcess(webRequest, TASK, new IllegalStateException());
+        assertEquals(1, listener.rendered.get());
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testResultAfterRenderedTimeoutDoesNotBlock() throws Exception {
+        Object timeoutResult = renderer.handleTimeout(webRequest, TASK);
+        assertTrue(timeoutResult instanceof AsyncRequestTimeoutException);
+
+        renderer.postProcess(webRequest, TASK, new IllegalArgumentException());
+        assertEquals(1, listener.rendered.get());
+        assertEquals(503, response.getStatus());
+    }
+
+    @Test
+    public void testInterruptedWaitRestoresInterruptFlag() throws Exception {
+        listener.block();
+        Thread timeout = new Thread(new Runnable() {
+            public void run() {
+                renderer.handleTimeout(webRequest, TASK);
+            }
+        });
+        timeout.start();
+        assertTrue(listener.rendering.await(10, TimeUnit.SECONDS));
+
+        try {
+            Thread.currentThread().interrupt();
+            renderer.postProcess(webRequest, TASK, new IllegalArgumentException());
+            assertTrue(Thread.interrupted());
+        } finally {
+            listener.release.countDown();
+            timeout.join(10000);
+        }
+        assertEquals(1, listener.rendered.get());
+    }
+
+    /**
+     * Optionally blocks the rendering thread until released, to hold a timeout mid-rendering.
+     */
+    static class BlockingListener implements RestErrorListener {
+
+        final AtomicInteger rendered = new AtomicInteger();
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean blocking;
+
+        void block() {
+            this.blocking = true;
+        }
+
+        public boolean isEnabled() {
+            return true;
+        }
+
+        public void errorResolved(ServletWebRequest request, Exception ex, String mappingKey, RestError error,
+                                  long resolveNanos) {
+        }
+
+        public void errorRendered(ServletWebRequest request, RestError error, MediaType mediaType, long bodyLength,
+                                  RestErrorTimings timings) {
+            rendered.incrementAndGet();
+            rendering.countDown();
+            if (blocking) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code MockHttpServletRequest} with the Servlet 3.0 async methods, recording the dispatches requested through its
+ * {@code AsyncContext}.
+ */
+class AsyncMockHttpServletRequest extends MockHttpServletRequest {
+
+    private volatile boolean asyncStarted;
+    private volatile Context asyncContext;
+
+    final AtomicInteger dispatches = new AtomicInteger();
+    private final CountDownLatch dispatched = new CountDownLatch(1);
+
+    AsyncMockHttpServletRequest() {
+        super("GET", "/");
+        addHeader("Accept", "application/json");
+    }
+
+    boolean awaitDispatch() throws InterruptedException {
+        return this.dispatched.await(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Notifies the {@code AsyncListener}s of a timeout, as the container does on its own thread.
+     */
+    void timeout() throws IOException {
+        for (AsyncListener listener : this.asyncContext.listeners) {
+            listener.onTimeout(new AsyncEvent(this.asyncContext));
+        }
+    }
+
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    public AsyncContext startAsync() {
+        return startAsync(this, null);
+    }
+
+    public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+        this.asyncStarted = true;
+        this.asyncContext = new Context(request, response);
+        return this.asyncContext;
+    }
+
+    public boolean isAsyncStarted() {
+        return this.asyncStarted;
+    }
+
+    public boolean isAsyncSupported() {
+        return true;
+    }
+
+    public AsyncContext getAsyncContext() {
+        return this.asyncContext;
+    }
+
+    public DispatcherType getDispatcherType() {
+        return DispatcherType.REQUEST;
+    }
+
+    public boolean authenticate(HttpServletResponse response) throws IOException, ServletException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void login(String username, String password) throws ServletException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void logout() throws ServletException {
+        throw new UnsupportedOperationException();
+    }
+
+    public Collection<Part> getParts() throws IOException, ServletException {
+        throw new UnsupportedOperationException();
+    }
+
+    public Part getPart(String name) throws IOException, ServletException {
+        throw new UnsupportedOperationException();
+    }
+
+    private class Context implements AsyncContext {
+
+        private final ServletRequest request;
+        private final ServletResponse response;
+        private final List<AsyncListener> listeners = new CopyOnWriteArrayList<AsyncListener>();
+
+        Context(ServletRequest request, ServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        public ServletRequest getRequest() {
+            return this.request;
+        }
+
+        public ServletResponse getResponse() {
+            return this.response;
+        }
+
+        public boolean hasOriginalRequestAndResponse() {
+            return true;
+        }
+
+        public void dispatch() {
+            dispatches.incrementAndGet();
+            asyncStarted = false;
+            dispatched.countDown();
+        }
+
+        public void dispatch(String path) {
+            dispatch();
+        }
+
+        public void dispatch(ServletContext context, String path) {
+            dispatch();
+        }
+
+        public void complete() {
+            asyncStarted = false;
+        }
+
+        public void start(Runnable run) {
+            run.run();
+        }
+
+        public void addListener(AsyncListener listener) {
+            this.listeners.add(listener);
+        }
+
+        public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+            this.listeners.add(listener);
+        }
+
+        public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setTimeout(long timeout) {
+        }
+
+        public long getTimeout() {
+            return 0;
+        }
+    }
+}
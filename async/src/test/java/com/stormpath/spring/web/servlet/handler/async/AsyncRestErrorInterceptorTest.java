@@ -0,0 +1,363 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.async;
+
+import com.stormpath.spring.web.servlet.handler.DefaultRestErrorResolver;
+import com.stormpath.spring.web.servlet.handler.RestError;
+import com.stormpath.spring.web.servlet.handler.RestErrorListener;
+import com.stormpath.spring.web.servlet.handler.RestErrorMapping;
+import com.stormpath.spring.web.servlet.handler.RestErrorTimings;
+import com.stormpath.spring.web.servlet.handler.RestExceptionHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncRestErrorInterceptorTest {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 400;
+
+    private ExecutorService executor;
+    private RenderingListener listener;
+    private RestExceptionHandler exceptionHandler;
+    private AsyncRestErrorInterceptor interceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(THREADS);
+        listener = new RenderingListener();
+
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400");
+        definitions.put("Throwable", "500");
+
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+
+        exceptionHandler = new RestExceptionHandler();
+        exceptionHandler.setErrorResolver(resolver);
+        exceptionHandler.setMessageConverters(
+                new HttpMessageConverter<?>[]{new MappingJacksonHttpMessageConverter()});
+        exceptionHandler.setErrorListener(listener);
+        exceptionHandler.afterPropertiesSet();
+
+        interceptor = new AsyncRestErrorInterceptor();
+        interceptor.setExceptionHandler(exceptionHandler);
+        interceptor.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private WebAsyncManager startRequest(AsyncMockHttpServletRequest request, MockHttpServletResponse response,
+                                         String methodName) throws Exception {
+        HandlerMethod handler = new HandlerMethod(new AsyncController(), methodName);
+        assertTrue(interceptor.preHandle(request, response, handler));
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setTaskExecutor(new TaskExecutorAdapter(executor));
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+        return asyncManager;
+    }
+
+    private static Callable<String> failing(final Exception ex) {
+        return new Callable<String>() {
+            public String call() throws Exception {
+                throw ex;
+            }
+        };
+    }
+
+    private void assertError(int status, MockHttpServletResponse response) throws Exception {
+        assertEquals(status, response.getStatus());
+        assertTrue(response.isCommitted());
+        assertEquals("{\"status\":" + status + ",\"code\":" + status + "}", response.getContentAsString());
+    }
+
+    /**
+     * Performs the async dispatch the container would, and asserts that it completes without reaching the servlet.
+     */
+    private void assertDispatchShortCircuited(AsyncMockHttpServletRequest request, MockHttpServletResponse response)
+            throws Exception {
+        assertTrue(request.awaitDispatch());
+        assertNotNull(request.getAttribute(RestExceptionHandler.RENDERED_ATTRIBUTE));
+        MockFilterChain chain = new MockFilterChain();
+        new AsyncRestErrorFilter().doFilter(request, response, chain);
+        assertNull("the async dispatch reached the servlet", chain.getRequest());
+    }
+
+    @Test
+    public void testCallableFailureRenderedOnCompletingThread() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        startRequest(request, response, "handle").startCallableProcessing(failing(new IllegalArgumentException()));
+
+        assertDispatchShortCircuited(request, response);
+        assertError(400, response);
+        assertEquals(1, request.dispatches.get());
+        assertEquals(1, listener.renderCount(request));
+        assertTrue(listener.renderThread(request).startsWith("pool-"));
+    }
+
+    @Test
+    public void testCallableFailureUsesHandlerMappings() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        startRequest(request, response, "conflict").startCallableProcessing(failing(new IllegalStateException()));
+
+        assertDispatchShortCircuited(request, response);
+        assertError(409, response);
+    }
+
+    @Test
+    public void testCallableSuccessIsNotRendered() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        startRequest(request, response, "handle").startCallableProcessing(new Callable<String>() {
+            public String call() {
+                return "ok";
+            }
+        });
+
+        assertTrue(request.awaitDispatch());
+        assertNull(request.getAttribute(RestExceptionHandler.RENDERED_ATTRIBUTE));
+        assertFalse(response.isCommitted());
+        MockFilterChain chain = new MockFilterChain();
+        new AsyncRestErrorFilter().doFilter(request, response, chain);
+        assertSame(request, chain.getRequest());
+    }
+
+    @Test
+    public void testCallableTimeoutRenderedOnTimeoutThread() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        final CountDownLatch release = new CountDownLatch(1);
+        WebAsyncManager asyncManager = startRequest(request, response, "handle");
+        asyncManager.startCallableProcessing(new Callable<String>() {
+            public String call() throws Exception {
+                release.await();
+                return "late";
+            }
+        });
+
+        request.timeout();
+        assertDispatchShortCircuited(request, response);
+        assertError(503, response);
+        assertEquals(Thread.currentThread().getName(), listener.renderThread(request));
+        assertTrue(asyncManager.getConcurrentResult() instanceof AsyncRequestTimeoutException);
+
+        //the late result is discarded:
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, request.dispatches.get());
+        assertEquals(1, listener.renderCount(request));
+        assertTrue(asyncManager.getConcurrentResult() instanceof AsyncRequestTimeoutException);
+    }
+
+    @Test
+    public void testDeferredResultErrorRenderedOnCompletingThread() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        final DeferredResult<String> deferredResult = new DeferredResult<String>();
+        startRequest(request, response, "handle").startDeferredResultProcessing(deferredResult);
+
+        executor.submit(new Runnable() {
+            public void run() {
+                deferredResult.setErrorResult(new IllegalArgumentException());
+            }
+        });
+
+        assertDispatchShortCircuited(request, response);
+        assertError(400, response);
+        assertTrue(listener.renderThread(request).startsWith("pool-"));
+    }
+
+    @Test
+    public void testDeferredResultTimeout() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        DeferredResult<String> deferredResult = new DeferredResult<String>();
+        startRequest(request, response, "handle").startDeferredResultProcessing(deferredResult);
+
+        request.timeout();
+        assertDispatchShortCircuited(request, response);
+        assertError(503, response);
+        assertEquals(Thread.currentThread().getName(), listener.renderThread(request));
+        assertFalse(deferredResult.setResult("late"));
+        assertEquals(1, request.dispatches.get());
+    }
+
+    @Test
+    public void testRenderedDispatchWithoutFilterIsNotResolvedAgain() throws Exception {
+        AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        startRequest(request, response, "handle").startCallableProcessing(failing(new IllegalArgumentException()));
+        assertTrue(request.awaitDispatch());
+
+        //without the filter, the dispatch rethrows the result and reaches the exception handler again:
+        assertNotNull(exceptionHandler.resolveException(request, response, null, new IllegalArgumentException()));
+        assertEquals(1, listener.renderCount(request));
+        assertEquals(0, exceptionHandler.getCommittedResponseCount());
+    }
+
+    @Test
+    public void testConcurrentCompletionsAndTimeouts() throws Exception {
+        ExecutorService timeouts = Executors.newFixedThreadPool(THREADS);
+        final List<AsyncMockHttpServletRequest> requests = new ArrayList<AsyncMockHttpServletRequest>();
+        List<MockHttpServletResponse> responses = new ArrayList<MockHttpServletResponse>();
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                final AsyncMockHttpServletRequest request = new AsyncMockHttpServletRequest();
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                requests.add(request);
+                responses.add(response);
+                WebAsyncManager asyncManager = startRequest(request, response, "handle");
+                if (i % 2 == 0) {
+                    asyncManager.startCallableProcessing(new Callable<String>() {
+                        public String call() throws Exception {
+                            start.await();
+                            throw new IllegalArgumentException();
+                        }
+                    });
+                } else {
+                    final DeferredResult<String> deferredResult = new DeferredResult<String>();
+                    asyncManager.startDeferredResultProcessing(deferredResult);
+                    executor.submit(new Runnable() {
+                        public void run() {
+                            try {
+                                start.await();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            deferredResult.setErrorResult(new IllegalArgumentException());
+                        }
+                    });
+                }
+                if (i % 3 == 0) {
+                    //race a timeout against the result:
+                    timeouts.submit(new Callable<Void>() {
+                        public Void call() throws Exception {
+                            start.await();
+                            request.timeout();
+                            return null;
+                        }
+                    });
+                }
+            }
+            start.countDown();
+
+            for (int i = 0; i < REQUESTS; i++) {
+                AsyncMockHttpServletRequest request = requests.get(i);
+                MockHttpServletResponse response = responses.get(i);
+                assertDispatchShortCircuited(request, response);
+                int status = response.getStatus();
+                assertTrue(String.valueOf(status), status == 400 || (status == 503 && i % 3 == 0));
+                assertError(status, response);
+            }
+            timeouts.shutdown();
+            assertTrue(timeouts.awaitTermination(10, TimeUnit.SECONDS));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            for (AsyncMockHttpServletRequest request : requests) {
+                assertEquals(1, request.dispatches.get());
+                assertEquals(1, listener.renderCount(request));
+            }
+        } finally {
+            timeouts.shutdownNow();
+        }
+    }
+
+    public static class AsyncController {
+
+        public void handle() {
+        }
+
+        @RestErrorMapping(value = IllegalStateException.class, definition = "409")
+        public void conflict() {
+        }
+    }
+
+    static class RenderingListener implements RestErrorListener {
+
+        private final ConcurrentMap<HttpServletRequest, AtomicInteger> counts =
+                new ConcurrentHashMap<HttpServletRequest, AtomicInteger>();
+        private final ConcurrentMap<HttpServletRequest, String> threads =
+                new ConcurrentHashMap<HttpServletRequest, String>();
+
+        int renderCount(HttpServletRequest request) {
+            AtomicInteger count = counts.get(request);
+            return count != null ? count.get() : 0;
+        }
+
+        String renderThread(HttpServletRequest request) {
+            return threads.get(request);
+        }
+
+        public boolean isEnabled() {
+            return true;
+        }
+
+        public void errorResolved(ServletWebRequest request, Exception ex, String mappingKey, RestError error,
+                                  long resolveNanos) {
+        }
+
+        public void errorRendered(ServletWebRequest request, RestError error, MediaType mediaType, long bodyLength,
+                                  RestErrorTimings timings) {
+            HttpServletRequest key = request.getRequest();
+            AtomicInteger count = counts.get(key);
+            if (count == null) {
+                AtomicInteger existing = counts.putIfAbsent(key, count = new AtomicInteger());
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+            count.incrementAndGet();
+            threads.put(key, Thread.currentThread().getName());
+        }
+    }
+}
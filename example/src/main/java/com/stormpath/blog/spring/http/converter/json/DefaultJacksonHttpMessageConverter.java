@@ -3,10 +3,16 @@ package com.stormpath.blog.spring.http.converter.json;
 import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonLocation;
 import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonStreamContext;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.type.TypeFactory;
 import org.codehaus.jackson.type.JavaType;
+import org.codehaus.jackson.util.JsonParserDelegate;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
@@ -15,8 +21,14 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.util.Assert;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Replaces Spring's {@link org.springframework.http.converter.json.MappingJacksonHttpMessageConverter}, which is
@@ -26,6 +38,12 @@ import java.nio.charset.Charset;
  *     When using Spring MVC for REST, how do you enable Jackson to pretty-print rendered JSON?</a> and the latest
  *     <a href="https://gist.github.com/2423129">Spring Framework incarnation supporting pretty printing</a>
  *     (not yet released at the time of writing).
+ * <p/>
+ * Request bodies are parsed as a stream, without buffering them, and are rejected as soon as they exceed the
+ * {@link #setMaxBodySize(long) maximum size} or {@link #setMaxDepth(int) nesting depth}.  Any body that cannot be
+ * read, including bodies that are valid JSON but cannot be mapped to the target type, results in a
+ * {@link JsonReadException} carrying the line, column and JSON path of the problem; bodies exceeding the maximum
+ * size result in its {@link JsonBodyTooLargeException} subclass.
  *
  * @author Les Hazlewood
  */
@@ -34,9 +52,18 @@ public class DefaultJacksonHttpMessageConverter extends AbstractHttpMessageConve
     public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
 
     private ObjectMapper objectMapper = new ObjectMapper();
+
+    //ObjectMapper.canSerialize/canDeserialize build (and lock) Jackson's serializer caches on every call, so the
+    //answers are cached per class.  Cleared whenever the ObjectMapper is replaced:
+    private final ConcurrentMap<Class<?>, Boolean> serializable = new ConcurrentHashMap<Class<?>, Boolean>();
+    private final ConcurrentMap<Class<?>, Boolean> deserializable = new ConcurrentHashMap<Class<?>, Boolean>();
+
     private boolean prefixJson = false;
     private boolean prettyPrint = false;
 
+    private long maxBodySize = 1024 * 1024;
+    private int maxDepth = 64;
+
     /**
      * Construct a new {@code DefaultJacksonHttpMessageConverter}.
      */
@@ -46,13 +73,28 @@ public class DefaultJacksonHttpMessageConverter extends AbstractHttpMessageConve
 
     @Override
     public boolean canRead(Class<?> clazz, MediaType mediaType) {
-        JavaType javaType = getJavaType(clazz);
-        return objectMapper.canDeserialize(javaType) && canRead(mediaType);
+        if (!canRead(mediaType)) {
+            return false;
+        }
+        Boolean result = deserializable.get(clazz);
+        if (result == null) {
+            result = objectMapper.canDeserialize(getJavaType(clazz));
+            deserializable.putIfAbsent(clazz, result);
+        }
+        return result;
     }
 
     @Override
     public boolean canWrite(Class<?> clazz, MediaType mediaType) {
-        return objectMapper.canSerialize(clazz) && canWrite(mediaType);
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        Boolean result = serializable.get(clazz);
+        if (result == null) {
+            result = objectMapper.canSerialize(clazz);
+            serializable.putIfAbsent(clazz, result);
+        }
+        return result;
     }
 
     /**
@@ -81,13 +123,70 @@ public class DefaultJacksonHttpMessageConverter extends AbstractHttpMessageConve
     protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
             throws IOException, HttpMessageNotReadableException {
         JavaType javaType = getJavaType(clazz);
+
+        long contentLength = inputMessage.getHeaders().getContentLength();
+        if (this.maxBodySize > 0 && contentLength > this.maxBodySize) {
+            //reject before reading anything:
+            throw new JsonBodyTooLargeException(this.maxBodySize, null, null);
+        }
+
+        InputStream body = inputMessage.getBody();
+        if (this.maxBodySize > 0) {
+            body = new SizeLimitingInputStream(body, this.maxBodySize);
+        }
+        JsonParser parser = null;
         try {
-            return objectMapper.readValue(inputMessage.getBody(), javaType);
-        } catch (JsonParseException ex) {
-            throw new HttpMessageNotReadableException("Could not read JSON: " + ex.getMessage(), ex);
+            parser = objectMapper.getJsonFactory().createJsonParser(body);
+            if (this.maxDepth > 0) {
+                parser = new DepthLimitingJsonParser(parser, this.maxDepth);
+            }
+            return objectMapper.readValue(parser, javaType);
+        } catch (BodySizeExceededException ex) {
+            //the parser reads ahead in blocks, so only the path reached (if any - the factory reads ahead to detect
+            //the encoding before the parser exists) is meaningful, not the location of the failed read:
+            String path = parser != null ? getPath(parser.getParsingContext()) : null;
+            throw new JsonBodyTooLargeException(this.maxBodySize, path, ex);
+        } catch (JsonProcessingException ex) {
+            //the parser context is more precise than a mapping exception's reference chain, which lacks the
+            //indices of collection elements:
+            JsonLocation location = ex.getLocation();
+            if (location == null && parser != null) {
+                location = parser.getCurrentLocation();
+            }
+            int line = location != null ? location.getLineNr() : -1;
+            int column = location != null ? location.getColumnNr() : -1;
+            String path = parser != null ? getPath(parser.getParsingContext()) : null;
+            throw new JsonReadException(null, line, column, path, ex);
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
         }
     }
 
+    /**
+     * Returns the JSON path of the parser's current position, for example {@code $.items[2].name}.
+     */
+    private static String getPath(JsonStreamContext context) {
+        List<JsonStreamContext> contexts = new ArrayList<JsonStreamContext>();
+        for (JsonStreamContext c = context; c != null && !c.inRoot(); c = c.getParent()) {
+            contexts.add(c);
+        }
+        StringBuilder sb = new StringBuilder("$");
+        for (int i = contexts.size() - 1; i >= 0; i--) {
+            JsonStreamContext c = contexts.get(i);
+            if (c.inArray()) {
+                //an array that was just opened has no current element yet (getCurrentIndex() reports 0 for it):
+                if (c.getEntryCount() > 0) {
+                    sb.append('[').append(c.getCurrentIndex()).append(']');
+                }
+            } else if (c.getCurrentName() != null) {
+                sb.append('.').append(c.getCurrentName());
+            }
+        }
+        return sb.toString();
+    }
+
     @Override
     protected boolean supports(Class<?> clazz) {
         // should not be called, since we override canRead/Write instead
@@ -142,6 +241,38 @@ public class DefaultJacksonHttpMessageConverter extends AbstractHttpMessageConve
     public void setObjectMapper(ObjectMapper objectMapper) {
         Assert.notNull(objectMapper, "'objectMapper' must not be null");
         this.objectMapper = objectMapper;
+        this.serializable.clear();
+        this.deserializable.clear();
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Sets the maximum number of bytes a request body may have.  Bodies declaring a larger {@code Content-Length} are
+     * rejected before they are read, others as soon as the limit is exceeded while parsing.  Defaults to 1 MB; a
+     * value of {@code 0} or less disables the limit.
+     *
+     * @param maxBodySize the maximum number of bytes a request body may have.
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the maximum nesting depth of objects and arrays in a request body, which protects deserializers from
+     * deeply nested, hostile payloads.  The limit applies to the whole body, including the values of properties that
+     * are ignored rather than mapped.  Defaults to {@code 64}; a value of {@code 0} or less disables the limit.
+     *
+     * @param maxDepth the maximum nesting depth of objects and arrays in a request body.
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
     }
 
     public boolean isPrettyPrint() {
@@ -163,5 +294,100 @@ public class DefaultJacksonHttpMessageConverter extends AbstractHttpMessageConve
     public void setPrefixJson(boolean prefixJson) {
         this.prefixJson = prefixJson;
     }
-}
 
+    /**
+     * Signals that the request body exceeded the maximum size.  Jackson propagates {@code IOException}s raised by the
+     * underlying stream unchanged.
+     */
+    private static final class BodySizeExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class SizeLimitingInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long count;
+
+        SizeLimitingInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            this.count += n;
+            if (this.count > this.maxSize) {
+                throw new BodySizeExceededException();
+            }
+        }
+    }
+
+    private static final class DepthLimitingJsonParser extends JsonParserDelegate {
+
+        private final int maxDepth;
+        private int depth;
+
+        DepthLimitingJsonParser(JsonParser parser, int maxDepth) {
+            super(parser);
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            JsonToken token = super.nextToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                if (++this.depth > this.maxDepth) {
+                    throw new JsonParseException("Maximum nesting depth of " + this.maxDepth + " exceeded",
+                            getCurrentLocation());
+                }
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                this.depth--;
+            }
+            return token;
+        }
+
+        /**
+         * Skips the children through {@link #nextToken()} rather than the underlying parser, so the nesting of values
+         * that are not mapped (e.g. those of ignored properties) counts towards the limit as well.
+         */
+        @Override
+        public JsonParser skipChildren() throws IOException {
+            JsonToken token = getCurrentToken();
+            if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+                return this;
+            }
+            int open = 1;
+            while (open > 0) {
+                token = nextToken();
+                if (token == null) {
+                    //end of input - reported by the caller's next read, as by the underlying parser
+                    return this;
+                }
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    open++;
+                } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    open--;
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.stormpath.blog.spring.http.converter.json;
+
+/**
+ * Thrown by the {@link DefaultJacksonHttpMessageConverter} when a request body exceeds its
+ * {@link DefaultJacksonHttpMessageConverter#setMaxBodySize(long) maximum size}.
+ * <p/>
+ * The body is rejected before it is fully read, so the {@link #getLine() line} and {@link #getColumn() column} are
+ * always unknown ({@code -1}); the {@link #getPath() path} is the position the parser had reached, or {@code null}
+ * if the body was rejected based on its {@code Content-Length}.
+ */
+public class JsonBodyTooLargeException extends JsonReadException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBodySize;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxBodySize the maximum number of bytes a request body may have
+     * @param path        the JSON path reached when the limit was exceeded, or {@code null} if unknown
+     * @param cause       the underlying exception, or {@code null} if there is none
+     */
+    public JsonBodyTooLargeException(long maxBodySize, String path, Throwable cause) {
+        super("Request body exceeds the maximum size of " + maxBodySize + " bytes", -1, -1, path, cause);
+        this.maxBodySize = maxBodySize;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+}
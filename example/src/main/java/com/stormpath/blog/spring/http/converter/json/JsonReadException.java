@@ -0,0 +1,99 @@
+package com.stormpath.blog.spring.http.converter.json;
+
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Thrown by the {@link DefaultJacksonHttpMessageConverter} when a request body is not valid JSON, cannot be mapped to
+ * the target type, or exceeds the converter's size or nesting depth limits.
+ * <p/>
+ * The location of the problem is available as JavaBeans properties ({@code line}, {@code column} and {@code path}),
+ * so an exception mapping can render them directly, for example
+ * {@code msg=Malformed JSON at line {line} column {column} near {path}}.  The {@link #getReason() reason} is
+ * Jackson's description of the problem, which may name internal classes, so it belongs in the developer message
+ * ({@code devMsg={reason}}) rather than the message shown to end users.  The reason and the
+ * {@link #getMessage() message} are only formatted when first requested.
+ */
+public class JsonReadException extends HttpMessageNotReadableException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String LOCATION_SUFFIX = "\n at [Source";
+    private static final String PATH_SUFFIX = " (through reference chain";
+
+    private final int line;
+    private final int column;
+    private final String path;
+
+    private String reason;
+    private String message;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param reason the reason the body could not be read, or {@code null} to derive it from the cause
+     * @param line   the line of the problem (1-based), or {@code -1} if unknown
+     * @param column the column of the problem (1-based), or {@code -1} if unknown
+     * @param path   the JSON path of the problem, for example {@code $.items[2].name}
+     * @param cause  the underlying parsing or mapping exception
+     */
+    public JsonReadException(String reason, int line, int column, String path, Throwable cause) {
+        super(null, cause);
+        this.reason = reason;
+        this.line = line;
+        this.column = column;
+        this.path = path;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the reason the body could not be read, without location information.
+     *
+     * @return the reason the body could not be read, without location information.
+     */
+    public String getReason() {
+        if (this.reason == null) {
+            Throwable cause = getCause();
+            String msg = cause != null ? cause.getMessage() : null;
+            if (msg == null) {
+                msg = "Invalid JSON";
+            }
+            //Jackson appends the location and reference chain, which are available as properties instead:
+            int end = msg.indexOf(LOCATION_SUFFIX);
+            if (end >= 0) {
+                msg = msg.substring(0, end);
+            }
+            end = msg.indexOf(PATH_SUFFIX);
+            if (end >= 0) {
+                msg = msg.substring(0, end);
+            }
+            this.reason = msg;
+        }
+        return this.reason;
+    }
+
+    @Override
+    public String getMessage() {
+        if (this.message == null) {
+            StringBuilder sb = new StringBuilder("Could not read JSON: ").append(getReason());
+            if (this.line > 0) {
+                sb.append(" at line ").append(this.line).append(", column ").append(this.column);
+            }
+            if (this.path != null) {
+                sb.append(" (").append(this.path).append(')');
+            }
+            this.message = sb.toString();
+        }
+        return this.message;
+    }
+}
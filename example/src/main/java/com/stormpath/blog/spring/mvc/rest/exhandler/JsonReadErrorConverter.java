@@ -0,0 +1,64 @@
+package com.stormpath.blog.spring.mvc.rest.exhandler;
+
+import com.stormpath.blog.spring.http.converter.json.JsonReadException;
+import com.stormpath.spring.web.servlet.handler.MapRestErrorConverter;
+import com.stormpath.spring.web.servlet.handler.RestError;
+
+import java.util.Map;
+
+/**
+ * {@code MapRestErrorConverter} that also renders the location of unreadable request bodies.  When the resolved
+ * error was caused by a {@link JsonReadException}, its {@code line} and {@code column} (if known) and its JSON
+ * {@code path} (if known) are added to the response body, so clients can point at the problem without parsing the
+ * message.
+ */
+public class JsonReadErrorConverter extends MapRestErrorConverter {
+
+    private static final String DEFAULT_LINE_KEY = "line";
+    private static final String DEFAULT_COLUMN_KEY = "column";
+    private static final String DEFAULT_PATH_KEY = "path";
+
+    private String lineKey = DEFAULT_LINE_KEY;
+    private String columnKey = DEFAULT_COLUMN_KEY;
+    private String pathKey = DEFAULT_PATH_KEY;
+
+    @Override
+    public Map<String, Object> convert(RestError re) {
+        Map<String, Object> m = super.convert(re);
+        if (re.getThrowable() instanceof JsonReadException) {
+            JsonReadException ex = (JsonReadException) re.getThrowable();
+            if (ex.getLine() > 0) {
+                m.put(getLineKey(), ex.getLine());
+                m.put(getColumnKey(), ex.getColumn());
+            }
+            if (ex.getPath() != null) {
+                m.put(getPathKey(), ex.getPath());
+            }
+        }
+        return m;
+    }
+
+    public String getLineKey() {
+        return lineKey;
+    }
+
+    public void setLineKey(String lineKey) {
+        this.lineKey = lineKey;
+    }
+
+    public String getColumnKey() {
+        return columnKey;
+    }
+
+    public void setColumnKey(String columnKey) {
+        this.columnKey = columnKey;
+    }
+
+    public String getPathKey() {
+        return pathKey;
+    }
+
+    public void setPathKey(String pathKey) {
+        this.pathKey = pathKey;
+    }
+}
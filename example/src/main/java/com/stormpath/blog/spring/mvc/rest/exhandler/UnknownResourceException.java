@@ -1,11 +1,24 @@
 package com.stormpath.blog.spring.mvc.rest.exhandler;
 
+import com.stormpath.spring.web.servlet.handler.DefaultRestErrorResolver;
+import com.stormpath.spring.web.servlet.handler.RestError;
+import com.stormpath.spring.web.servlet.handler.RestException;
+import org.springframework.http.HttpStatus;
+
 /**
  * Simulated business-logic exception indicating a desired business entity or record cannot be found.
+ * <p/>
+ * As a {@link RestException}, it carries its own 404 error template and does not fill in a stack trace, so the
+ * frequent 'not found' case is cheap to create and resolve.
  */
-public class UnknownResourceException extends RuntimeException {
+public class UnknownResourceException extends RestException {
+
+    private static final RestError TEMPLATE = new RestError.Builder()
+            .setStatus(HttpStatus.NOT_FOUND)
+            .setMessage(DefaultRestErrorResolver.DEFAULT_EXCEPTION_MESSAGE_VALUE)
+            .build();
 
     public UnknownResourceException(String msg) {
-        super(msg);
+        super(TEMPLATE, msg);
     }
 }
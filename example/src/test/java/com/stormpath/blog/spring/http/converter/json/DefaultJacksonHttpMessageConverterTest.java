@@ -0,0 +1,197 @@
+package com.stormpath.blog.spring.http.converter.json;
+
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DefaultJacksonHttpMessageConverterTest {
+
+    private DefaultJacksonHttpMessageConverter converter;
+
+    @Before
+    public void setUp() {
+        converter = new DefaultJacksonHttpMessageConverter();
+    }
+
+    private Object read(Class<?> type, String json) throws IOException {
+        return converter.read(type, new JsonInputMessage(json, false));
+    }
+
+    private JsonReadException readFailure(Class<?> type, String json) throws IOException {
+        try {
+            read(type, json);
+        } catch (JsonReadException ex) {
+            return ex;
+        }
+        fail("Expected a JsonReadException for " + json);
+        return null;
+    }
+
+    private static String nested(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('[');
+        }
+        sb.append('1');
+        for (int i = 0; i < depth; i++) {
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testReadsValidBody() throws IOException {
+        Order order = (Order) read(Order.class, "{\"items\": [{\"quantity\": 1}, {\"quantity\": 2}]}");
+        assertEquals(2, order.items.size());
+        assertEquals(2, order.items.get(1).quantity);
+    }
+
+    @Test
+    public void testMalformedBodyReportsLocation() throws IOException {
+        JsonReadException ex = readFailure(Order.class, "{\n  \"items\": [\n    {\"quantity\": 1},\n    }\n]}");
+        assertEquals(4, ex.getLine());
+        assertTrue(ex.getColumn() > 0);
+        assertEquals("$.items[1]", ex.getPath());
+        //the location is not repeated in the reason:
+        assertFalse(ex.getReason().contains("[Source"));
+        assertTrue(ex.getMessage().endsWith("at line 4, column " + ex.getColumn() + " ($.items[1])"));
+    }
+
+    @Test
+    public void testUnmappableBodyReportsPath() throws IOException {
+        JsonReadException ex = readFailure(Order.class,
+                "{\"items\": [{\"quantity\": 1}, {\"quantity\": \"many\"}]}");
+        assertEquals(1, ex.getLine());
+        assertEquals("$.items[1].quantity", ex.getPath());
+        assertFalse(ex.getReason().contains("reference chain"));
+    }
+
+    @Test
+    public void testDepthLimit() throws IOException {
+        converter.setMaxDepth(3);
+        assertEquals(1, ((List<?>) read(List.class, nested(3))).size());
+
+        JsonReadException ex = readFailure(List.class, nested(4));
+        assertFalse(ex instanceof JsonBodyTooLargeException);
+        assertEquals("Maximum nesting depth of 3 exceeded", ex.getReason());
+        //the array that exceeded the limit:
+        assertEquals("$[0][0][0]", ex.getPath());
+    }
+
+    @Test
+    public void testDepthLimitCoversSkippedChildren() throws IOException {
+        converter.getObjectMapper().configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        converter.setMaxDepth(3);
+        //the values of unknown properties are skipped without being deserialized, and the depth must be restored
+        //after each of them:
+        Order order = (Order) read(Order.class,
+                "{\"a\": [[1]], \"b\": [{\"x\": 1}], \"c\": [[1]], \"items\": [{\"quantity\": 1}]}");
+        assertEquals(1, order.items.size());
+        JsonReadException ex = readFailure(Order.class,
+                "{\"a\": [[1]], \"b\": [[1]], \"items\": [{\"quantity\": [1]}]}");
+        assertEquals("Maximum nesting depth of 3 exceeded", ex.getReason());
+        assertEquals("$.items[0].quantity", ex.getPath());
+
+        //skipped values are limited as well:
+        ex = readFailure(Order.class, "{\"a\": [[1]], \"b\": [[[[1]]]], \"items\": [{\"quantity\": 1}]}");
+        assertEquals("Maximum nesting depth of 3 exceeded", ex.getReason());
+        assertEquals("$.b[0][0]", ex.getPath());
+    }
+
+    @Test
+    public void testSkippedChildrenOfTruncatedBody() throws IOException {
+        converter.getObjectMapper().configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        JsonReadException ex = readFailure(Order.class, "{\"a\": [[1], ");
+        assertFalse(ex instanceof JsonBodyTooLargeException);
+    }
+
+    @Test
+    public void testDefaultDepthLimit() throws IOException {
+        assertNotNull(read(List.class, nested(64)));
+        assertEquals("Maximum nesting depth of 64 exceeded", readFailure(List.class, nested(65)).getReason());
+    }
+
+    @Test
+    public void testSizeLimitUsesContentLength() throws IOException {
+        converter.setMaxBodySize(16);
+        JsonInputMessage message = new JsonInputMessage("[1, 2, 3, 4, 5, 6, 7, 8, 9]", true);
+        try {
+            converter.read(List.class, message);
+            fail("Expected a JsonBodyTooLargeException");
+        } catch (JsonBodyTooLargeException ex) {
+            assertEquals(16, ex.getMaxBodySize());
+            assertEquals(-1, ex.getLine());
+            assertNull(ex.getPath());
+            assertEquals("Request body exceeds the maximum size of 16 bytes", ex.getReason());
+        }
+        //rejected before reading anything:
+        assertFalse(message.bodyRequested);
+    }
+
+    @Test
+    public void testSizeLimitWhileStreaming() throws IOException {
+        converter.setMaxBodySize(16);
+        assertEquals(3, ((List<?>) read(List.class, "[1, 2, 3]")).size());
+
+        JsonReadException ex = readFailure(List.class, "[1, 2, 3, 4, 5, 6, 7, 8, 9]");
+        assertTrue(ex instanceof JsonBodyTooLargeException);
+        assertEquals(-1, ex.getLine());
+        assertEquals(-1, ex.getColumn());
+    }
+
+    @Test
+    public void testLimitsCanBeDisabled() throws IOException {
+        converter.setMaxBodySize(0);
+        converter.setMaxDepth(0);
+        assertNotNull(read(List.class, nested(1000)));
+    }
+
+    @Test
+    public void testMapsAreReadable() throws IOException {
+        assertTrue(converter.canRead(Map.class, MediaType.APPLICATION_JSON));
+        assertEquals(1, ((Map<?, ?>) read(Map.class, "{\"a\": 1}")).get("a"));
+    }
+
+    public static class Order {
+        public List<Item> items;
+    }
+
+    public static class Item {
+        public int quantity;
+    }
+
+    private static class JsonInputMessage implements HttpInputMessage {
+
+        private final byte[] body;
+        private final HttpHeaders headers = new HttpHeaders();
+        private boolean bodyRequested;
+
+        JsonInputMessage(String json, boolean declareLength) {
+            this.body = json.getBytes(DefaultJacksonHttpMessageConverter.DEFAULT_CHARSET);
+            this.headers.setContentType(MediaType.APPLICATION_JSON);
+            if (declareLength) {
+                this.headers.setContentLength(this.body.length);
+            }
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            bodyRequested = true;
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.stormpath.blog.spring.mvc.rest.exhandler;
+
+import com.stormpath.blog.spring.http.converter.json.JsonBodyTooLargeException;
+import com.stormpath.blog.spring.http.converter.json.JsonReadException;
+import com.stormpath.spring.web.servlet.handler.DefaultRestErrorResolver;
+import com.stormpath.spring.web.servlet.handler.RestError;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JsonReadErrorConverterTest {
+
+    private DefaultRestErrorResolver resolver;
+    private JsonReadErrorConverter converter;
+
+    @Before
+    public void setUp() throws Exception {
+        //the mappings configured in rest-servlet.xml:
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("com.stormpath.blog.spring.http.converter.json.JsonReadException",
+                "400, msg=Malformed JSON at line {line} column {column} near {path}, devMsg={reason}");
+        definitions.put("com.stormpath.blog.spring.http.converter.json.JsonBodyTooLargeException",
+                "413, msg=Request body too large, devMsg={reason}");
+        definitions.put("Throwable", "500");
+        resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+
+        converter = new JsonReadErrorConverter();
+    }
+
+    private Map<?, ?> convert(Exception ex) {
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+        RestError error = resolver.resolveError(request, null, ex);
+        return converter.convert(error);
+    }
+
+    @Test
+    public void testRendersLocationFields() {
+        Exception cause = new IllegalArgumentException(
+                "Unrecognized field \"foo\" (Class com.example.internal.Order)\n at [Source: x; line: 3, column: 7]");
+        Map<?, ?> body = convert(new JsonReadException(null, 3, 7, "$.items[1].foo", cause));
+
+        assertEquals(400, body.get("status"));
+        assertEquals("Malformed JSON at line 3 column 7 near $.items[1].foo", body.get("message"));
+        assertEquals("Unrecognized field \"foo\" (Class com.example.internal.Order)", body.get("developerMessage"));
+        assertEquals(3, body.get("line"));
+        assertEquals(7, body.get("column"));
+        assertEquals("$.items[1].foo", body.get("path"));
+    }
+
+    @Test
+    public void testTooLargeBodyOmitsUnknownLocation() {
+        Map<?, ?> body = convert(new JsonBodyTooLargeException(1024, null, null));
+
+        assertEquals(413, body.get("status"));
+        assertEquals("Request body too large", body.get("message"));
+        assertEquals("Request body exceeds the maximum size of 1024 bytes", body.get("developerMessage"));
+        assertFalse(body.containsKey("line"));
+        assertFalse(body.containsKey("column"));
+        assertFalse(body.containsKey("path"));
+    }
+
+    @Test
+    public void testOtherErrorsAreUnchanged() {
+        converter.setPathKey("jsonPath");
+        Map<?, ?> body = convert(new IllegalStateException());
+
+        assertEquals(500, body.get("status"));
+        assertFalse(body.containsKey("line"));
+        assertFalse(body.containsKey("jsonPath"));
+    }
+}
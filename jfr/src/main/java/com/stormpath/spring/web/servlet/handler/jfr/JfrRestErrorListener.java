@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.jfr;
+
+import com.stormpath.spring.web.servlet.handler.RestError;
+import com.stormpath.spring.web.servlet.handler.RestErrorListener;
+import com.stormpath.spring.web.servlet.handler.RestErrorTimings;
+import jdk.jfr.EventType;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * {@link RestErrorListener} that emits Java Flight Recorder events, so error hot paths can be profiled in production
+ * and correlated with GC, lock and I/O events in the same recording:
+ * <ul>
+ *     <li>{@code com.stormpath.spring.RestErrorResolved}: exception class, matched mapping key, status, code and
+ *     resolution time, emitted by the {@code DefaultRestErrorResolver}</li>
+ *     <li>{@code com.stormpath.spring.RestErrorRendered}: exception class, status, code, media type, body size and the
+ *     duration of each phase, emitted by the {@code RestExceptionHandler}</li>
+ * </ul>
+ * Register the same instance as the {@code errorListener} of both.  While no recording enables these events, the
+ * listener reports itself as disabled and neither component measures or allocates anything for it.
+ * <p/>
+ * The events are configured and their stack traces captured through the recording's settings as usual, for example
+ * {@code com.stormpath.spring.RestErrorResolved#stackTrace=true} in a {@code .jfc} file.  Like any event, they are
+ * enabled in every recording whose settings do not mention them, including recordings started with the JDK's
+ * {@code default.jfc}; set {@code com.stormpath.spring.RestErrorRendered#enabled=false} (and likewise for
+ * {@code RestErrorResolved}) to keep a continuous recording from enabling them.  Since the durations are
+ * measured by the emitting components rather than the events themselves, the thresholds below which events are
+ * dropped are configured here instead of with the JFR {@code threshold} setting.
+ */
+public class JfrRestErrorListener implements RestErrorListener {
+
+    private static final EventType RESOLVED = EventType.getEventType(RestErrorResolvedEvent.class);
+    private static final EventType RENDERED = EventType.getEventType(RestErrorRenderedEvent.class);
+
+    private long resolveThresholdNanos = 0;
+    private long renderThresholdNanos = 0;
+
+    @Override
+    public boolean isEnabled() {
+        return RESOLVED.isEnabled() || RENDERED.isEnabled();
+    }
+
+    @Override
+    public void errorResolved(ServletWebRequest request, Exception ex, String mappingKey, RestError error,
+                              long resolveNanos) {
+        if (!RESOLVED.isEnabled() || resolveNanos < this.resolveThresholdNanos) {
+            return;
+        }
+        RestErrorResolvedEvent event = new RestErrorResolvedEvent();
+        event.exceptionClass = ex.getClass();
+        event.mappingKey = mappingKey;
+        if (error != null) {
+            event.status = error.getStatus().value();
+            event.code = error.getCode();
+        }
+        event.resolveDuration = resolveNanos;
+        event.commit();
+    }
+
+    @Override
+    public void errorRendered(ServletWebRequest request, RestError error, MediaType mediaType, long bodyLength,
+                              RestErrorTimings timings) {
+        if (!RENDERED.isEnabled() || total(timings) < this.renderThresholdNanos) {
+            return;
+        }
+        RestErrorRenderedEvent event = new RestErrorRenderedEvent();
+        Throwable throwable = error.getThrowable();
+        event.exceptionClass = throwable != null ? throwable.getClass() : null;
+        event.status = error.getStatus().value();
+        event.code = error.getCode();
+        event.mediaType = mediaType != null ? mediaType.toString() : null;
+        event.bodySize = bodyLength;
+        event.resolveDuration = timings.getResolveNanos();
+        event.messageDuration = timings.getMessageNanos();
+        event.negotiateDuration = timings.getNegotiateNanos();
+        event.writeDuration = timings.getWriteNanos();
+        event.commit();
+    }
+
+    private static long total(RestErrorTimings timings) {
+        return Math.max(timings.getResolveNanos(), 0) + Math.max(timings.getMessageNanos(), 0) +
+                Math.max(timings.getNegotiateNanos(), 0) + Math.max(timings.getWriteNanos(), 0);
+    }
+
+    public long getResolveThresholdNanos() {
+        return resolveThresholdNanos;
+    }
+
+    /**
+     * Sets the minimum resolution time, in nanoseconds, for which a {@code RestErrorResolved} event is emitted.
+     * Defaults to {@code 0} (every resolution).
+     *
+     * @param resolveThresholdNanos the minimum resolution time for which an event is emitted.
+     */
+    public void setResolveThresholdNanos(long resolveThresholdNanos) {
+        this.resolveThresholdNanos = resolveThresholdNanos;
+    }
+
+    public long getRenderThresholdNanos() {
+        return renderThresholdNanos;
+    }
+
+    /**
+     * Sets the minimum total time of all measured phases, in nanoseconds, for which a {@code RestErrorRendered} event
+     * is emitted.  Defaults to {@code 0} (every rendered error).
+     *
+     * @param renderThresholdNanos the minimum total time of all measured phases for which an event is emitted.
+     */
+    public void setRenderThresholdNanos(long renderThresholdNanos) {
+        this.renderThresholdNanos = renderThresholdNanos;
+    }
+}
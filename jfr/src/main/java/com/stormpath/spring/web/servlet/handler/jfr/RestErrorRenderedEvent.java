@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emitted when the {@code RestExceptionHandler} wrote an error body.  Phases that were not measured are {@code -1}.
+ * Stack traces are not recorded unless the recording's {@code stackTrace} setting enables them for this event.
+ */
+@Name(RestErrorRenderedEvent.NAME)
+@Label("REST Error Rendered")
+@Category({"Spring MVC", "REST Errors"})
+@Description("A RestError was written to the response")
+@StackTrace(false)
+class RestErrorRenderedEvent extends Event {
+
+    static final String NAME = "com.stormpath.spring.RestErrorRendered";
+
+    @Label("Exception Class")
+    Class<?> exceptionClass;
+
+    @Label("Status")
+    int status;
+
+    @Label("Code")
+    int code;
+
+    @Label("Media Type")
+    String mediaType;
+
+    @Label("Body Size")
+    @Description("The body size, or -1 if the body was streamed")
+    @DataAmount
+    long bodySize;
+
+    @Label("Resolve Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long resolveDuration;
+
+    @Label("Message Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long messageDuration;
+
+    @Label("Negotiate Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long negotiateDuration;
+
+    @Label("Write Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeDuration;
+}
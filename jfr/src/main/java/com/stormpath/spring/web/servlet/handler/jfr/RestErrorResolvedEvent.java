@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emitted when the {@code DefaultRestErrorResolver} resolved an exception.  Stack traces are not recorded unless the
+ * recording's {@code stackTrace} setting enables them for this event.
+ */
+@Name(RestErrorResolvedEvent.NAME)
+@Label("REST Error Resolved")
+@Category({"Spring MVC", "REST Errors"})
+@Description("An exception was resolved to a RestError")
+@StackTrace(false)
+class RestErrorResolvedEvent extends Event {
+
+    static final String NAME = "com.stormpath.spring.RestErrorResolved";
+
+    @Label("Exception Class")
+    Class<?> exceptionClass;
+
+    @Label("Mapping Key")
+    @Description("The matched exception mapping, if any")
+    String mappingKey;
+
+    @Label("Status")
+    @Description("The resolved HTTP status, or 0 if the exception was not resolved")
+    int status;
+
+    @Label("Code")
+    int code;
+
+    @Label("Resolve Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long resolveDuration;
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler.jfr;
+
+import com.stormpath.spring.web.servlet.handler.RestError;
+import com.stormpath.spring.web.servlet.handler.RestErrorTimings;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JfrRestErrorListenerTest {
+
+    private JfrRestErrorListener listener;
+    private ServletWebRequest request;
+    private RestError error;
+    private Recording recording;
+
+    @Before
+    public void setUp() {
+        listener = new JfrRestErrorListener();
+        request = new ServletWebRequest(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse());
+        error = new RestError.Builder().setStatus(HttpStatus.CONFLICT).setCode(40901)
+                .setThrowable(new IllegalStateException()).build();
+    }
+
+    @After
+    public void tearDown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void startRecording(boolean resolved, boolean rendered) {
+        recording = new Recording();
+        //events are enabled by default, so each one is set explicitly:
+        enable(RestErrorResolvedEvent.NAME, resolved);
+        enable(RestErrorRenderedEvent.NAME, rendered);
+        recording.start();
+    }
+
+    private void enable(String eventName, boolean enabled) {
+        if (enabled) {
+            recording.enable(eventName);
+        } else {
+            recording.disable(eventName);
+        }
+    }
+
+    private List<RecordedEvent> stopRecording() throws Exception {
+        recording.stop();
+        Path file = Files.createTempFile("rest-errors", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> filter(List<RecordedEvent> events, String eventName) {
+        List<RecordedEvent> filtered = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(eventName)) {
+                filtered.add(event);
+            }
+        }
+        return filtered;
+    }
+
+    private static RestErrorTimings timings(long resolve, long message, long negotiate, long write) {
+        RestErrorTimings timings = new RestErrorTimings();
+        timings.setResolveNanos(resolve);
+        timings.setMessageNanos(message);
+        timings.setNegotiateNanos(negotiate);
+        timings.setWriteNanos(write);
+        return timings;
+    }
+
+    @Test
+    public void testDisabledWithoutRecording() {
+        assertFalse(listener.isEnabled());
+    }
+
+    @Test
+    public void testEnabledByEitherEvent() {
+        startRecording(false, false);
+        assertFalse(listener.isEnabled());
+        recording.close();
+
+        startRecording(true, false);
+        assertTrue(listener.isEnabled());
+        recording.close();
+
+        startRecording(false, true);
+        assertTrue(listener.isEnabled());
+        recording.close();
+        recording = null;
+
+        assertFalse(listener.isEnabled());
+    }
+
+    @Test
+    public void testResolvedEvent() throws Exception {
+        startRecording(true, false);
+        listener.errorResolved(request, new IllegalStateException(), "IllegalStateException", error, 1234);
+        //unresolved errors are reported without status and code:
+        listener.errorResolved(request, new IllegalArgumentException(), null, null, 99);
+
+        List<RecordedEvent> events = filter(stopRecording(), RestErrorResolvedEvent.NAME);
+        assertEquals(2, events.size());
+
+        RecordedEvent event = events.get(0);
+        assertEquals(IllegalStateException.class.getName(), event.getClass("exceptionClass").getName());
+        assertEquals("IllegalStateException", event.getString("mappingKey"));
+        assertEquals(409, event.getInt("status"));
+        assertEquals(40901, event.getInt("code"));
+        assertEquals(1234, event.getDuration("resolveDuration").toNanos());
+
+        event = events.get(1);
+        assertEquals(IllegalArgumentException.class.getName(), event.getClass("exceptionClass").getName());
+        assertNull(event.getString("mappingKey"));
+        assertEquals(0, event.getInt("status"));
+    }
+
+    @Test
+    public void testRenderedEvent() throws Exception {
+        startRecording(false, true);
+        listener.errorRendered(request, error, MediaType.APPLICATION_JSON, 42, timings(10, -1, 30, 40));
+
+        List<RecordedEvent> events = filter(stopRecording(), RestErrorRenderedEvent.NAME);
+        assertEquals(1, events.size());
+
+        RecordedEvent event = events.get(0);
+        assertEquals(IllegalStateException.class.getName(), event.getClass("exceptionClass").getName());
+        assertEquals(409, event.getInt("status"));
+        assertEquals(40901, event.getInt("code"));
+        assertEquals("application/json", event.getString("mediaType"));
+        assertEquals(42, event.getLong("bodySize"));
+        assertEquals(10, event.getDuration("resolveDuration").toNanos());
+        assertEquals(30, event.getDuration("negotiateDuration").toNanos());
+        assertEquals(40, event.getDuration("writeDuration").toNanos());
+    }
+
+    @Test
+    public void testOnlyEnabledEventsAreEmitted() throws Exception {
+        startRecording(true, false);
+        listener.errorResolved(request, new IllegalStateException(), "IllegalStateException", error, 1234);
+        listener.errorRendered(request, error, MediaType.APPLICATION_JSON, 42, timings(10, 20, 30, 40));
+
+        List<RecordedEvent> events = stopRecording();
+        assertEquals(1, filter(events, RestErrorResolvedEvent.NAME).size());
+        assertTrue(filter(events, RestErrorRenderedEvent.NAME).isEmpty());
+    }
+
+    @Test
+    public void testThresholds() throws Exception {
+        listener.setResolveThresholdNanos(1000);
+        listener.setRenderThresholdNanos(1000);
+        startRecording(true, true);
+
+        listener.errorResolved(request, new IllegalStateException(), "IllegalStateException", error, 999);
+        listener.errorResolved(request, new IllegalStateException(), "IllegalStateException", error, 1000);
+        //unmeasured phases (-1) do not count towards the total:
+        listener.errorRendered(request, error, null, -1, timings(500, -1, -1, 499));
+        listener.errorRendered(request, error, null, -1, timings(500, -1, -1, 500));
+
+        List<RecordedEvent> events = stopRecording();
+        assertEquals(1, filter(events, RestErrorResolvedEvent.NAME).size());
+        assertEquals(1, filter(events, RestErrorRenderedEvent.NAME).size());
+    }
+}
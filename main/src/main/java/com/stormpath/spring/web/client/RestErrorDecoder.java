@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.client;
+
+import com.stormpath.spring.web.servlet.handler.MapRestErrorConverter;
+import com.stormpath.spring.web.servlet.handler.RestError;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes RESTful error bodies rendered by a {@link MapRestErrorConverter} back into {@link RestError} instances.
+ * <p/>
+ * The body is read with a streaming JSON parser directly into a {@link RestError.Builder}; no intermediate
+ * {@code Map} or tree is created and nested values under unknown keys are skipped without being materialized.  The key
+ * names default to those of {@link MapRestErrorConverter} and may be customized with the setter methods or copied from
+ * an existing converter via {@link #RestErrorDecoder(MapRestErrorConverter)}.
+ * <p/>
+ * Bodies that are not JSON objects decode to a {@code RestError} containing only the HTTP status of the response.
+ * Instances are thread-safe once configured.  This class requires Jackson on the classpath.
+ */
+public class RestErrorDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(RestErrorDecoder.class);
+
+    private static final String DEFAULT_STATUS_KEY = "status";
+    private static final String DEFAULT_CODE_KEY = "code";
+    private static final String DEFAULT_MESSAGE_KEY = "message";
+    private static final String DEFAULT_DEVELOPER_MESSAGE_KEY = "developerMessage";
+    private static final String DEFAULT_MORE_INFO_URL_KEY = "moreInfoUrl";
+
+    private JsonFactory jsonFactory = new JsonFactory();
+
+    private String statusKey = DEFAULT_STATUS_KEY;
+    private String codeKey = DEFAULT_CODE_KEY;
+    private String messageKey = DEFAULT_MESSAGE_KEY;
+    private String developerMessageKey = DEFAULT_DEVELOPER_MESSAGE_KEY;
+    private String moreInfoUrlKey = DEFAULT_MORE_INFO_URL_KEY;
+
+    public RestErrorDecoder() {
+    }
+
+    /**
+     * Creates a decoder that reads the same key names the specified converter writes.
+     *
+     * @param converter the converter used to render the error bodies to decode
+     */
+    public RestErrorDecoder(MapRestErrorConverter converter) {
+        Assert.notNull(converter, "converter argument cannot be null.");
+        this.statusKey = converter.getStatusKey();
+        this.codeKey = converter.getCodeKey();
+        this.messageKey = converter.getMessageKey();
+        this.developerMessageKey = converter.getDeveloperMessageKey();
+        this.moreInfoUrlKey = converter.getMoreInfoUrlKey();
+    }
+
+    /**
+     * Decodes the specified error body.
+     *
+     * @param body           the response body, may be {@code null}.  The stream is not closed.
+     * @param httpStatusCode the HTTP status code of the response, used if the body does not specify a known status
+     * @return the decoded {@code RestError}, never {@code null}
+     * @throws IOException if the body could not be read
+     */
+    public RestError decode(InputStream body, int httpStatusCode) throws IOException {
+        RestError.Builder builder = new RestError.Builder().setStatus(toHttpStatus(httpStatusCode));
+        if (body == null) {
+            return builder.build();
+        }
+
+        JsonParser parser = this.jsonFactory.createJsonParser(body);
+        //the caller owns the stream, whatever the factory's default:
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return builder.build();
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (token != JsonToken.VALUE_NULL) {
+                    apply(builder, name, parser);
+                }
+            }
+        } catch (JsonParseException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to parse error body as a JSON object; decoding the HTTP status only.", e);
+            }
+        } finally {
+            parser.close();
+        }
+
+        return builder.build();
+    }
+
+    private void apply(RestError.Builder builder, String name, JsonParser parser) throws IOException {
+        if (this.statusKey.equals(name)) {
+            HttpStatus status = toHttpStatus(parser.getValueAsInt());
+            if (status != null) {
+                builder.setStatus(status);
+            }
+        } else if (this.codeKey.equals(name)) {
+            builder.setCode(parser.getValueAsInt());
+        } else if (this.messageKey.equals(name)) {
+            builder.setMessage(parser.getText());
+        } else if (this.developerMessageKey.equals(name)) {
+            builder.setDeveloperMessage(parser.getText());
+        } else if (this.moreInfoUrlKey.equals(name)) {
+            builder.setMoreInfoUrl(parser.getText());
+        }
+    }
+
+    /**
+     * Returns the {@code HttpStatus} for the specified status code.  Codes without a corresponding {@code HttpStatus}
+     * constant fall back to the generic status of their series ({@code 400} or {@code 500}).
+     *
+     * @param statusCode the HTTP status code
+     * @return the corresponding {@code HttpStatus}, or {@code null} if {@code statusCode} is neither a known status nor
+     *         an error status
+     */
+    static HttpStatus toHttpStatus(int statusCode) {
+        HttpStatus status = RestError.findHttpStatus(statusCode);
+        if (status != null) {
+            return status;
+        }
+        if (statusCode >= 400 && statusCode < 500) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        if (statusCode >= 500 && statusCode < 600) {
+            return HttpStatus.INTERNAL_SERVER_ERROR;
+        }
+        return null;
+    }
+
+    public JsonFactory getJsonFactory() {
+        return jsonFactory;
+    }
+
+    public void setJsonFactory(JsonFactory jsonFactory) {
+        Assert.notNull(jsonFactory, "'jsonFactory' must not be null");
+        this.jsonFactory = jsonFactory;
+    }
+
+    public String getStatusKey() {
+        return statusKey;
+    }
+
+    public void setStatusKey(String statusKey) {
+        this.statusKey = statusKey;
+    }
+
+    public String getCodeKey() {
+        return codeKey;
+    }
+
+    public void setCodeKey(String codeKey) {
+        this.codeKey = codeKey;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public void setMessageKey(String messageKey) {
+        this.messageKey = messageKey;
+    }
+
+    public String getDeveloperMessageKey() {
+        return developerMessageKey;
+    }
+
+    public void setDeveloperMessageKey(String developerMessageKey) {
+        this.developerMessageKey = developerMessageKey;
+    }
+
+    public String getMoreInfoUrlKey() {
+        return moreInfoUrlKey;
+    }
+
+    public void setMoreInfoUrlKey(String moreInfoUrlKey) {
+        this.moreInfoUrlKey = moreInfoUrlKey;
+    }
+}
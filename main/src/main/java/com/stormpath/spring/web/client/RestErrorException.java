@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.client;
+
+import com.stormpath.spring.web.servlet.handler.RestError;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Thrown by {@link RestErrorResponseErrorHandler} when a remote service responds with a RESTful error.  Subclasses
+ * may be mapped to specific (status, code) combinations to allow callers to catch typed exceptions; they must declare
+ * a public constructor accepting a single {@link RestError} argument.
+ */
+public class RestErrorException extends RestClientException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RestError restError;
+
+    public RestErrorException(RestError restError) {
+        super(toMessage(restError));
+        this.restError = restError;
+    }
+
+    private static String toMessage(RestError restError) {
+        if (restError == null) {
+            throw new IllegalArgumentException("RestError argument cannot be null.");
+        }
+        String message = restError.getMessage();
+        return message != null ? restError.getStatus().value() + ": " + message : restError.getStatus().toString();
+    }
+
+    /**
+     * Returns the error returned by the remote service.  If the response body was not decoded, only the
+     * {@link RestError#getStatus() status} is available.
+     *
+     * @return the error returned by the remote service.
+     */
+    public RestError getRestError() {
+        return restError;
+    }
+
+    public int getStatusCode() {
+        return restError.getStatus().value();
+    }
+
+    public int getCode() {
+        return restError.getCode();
+    }
+}
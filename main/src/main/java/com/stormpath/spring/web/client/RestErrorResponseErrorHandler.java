@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.client;
+
+import com.stormpath.spring.web.servlet.handler.RestError;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResponseErrorHandler;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ResponseErrorHandler} for {@code RestTemplate}s calling services that render errors with a
+ * {@link com.stormpath.spring.web.servlet.handler.RestExceptionHandler RestExceptionHandler}.  Any {@code 4xx} or
+ * {@code 5xx} response is decoded with a {@link RestErrorDecoder} and thrown as a {@link RestErrorException}.
+ * <h3>Typed Exceptions</h3>
+ * {@link #setExceptionMappings(java.util.Map) exceptionMappings} maps a status, or a status and application-specific
+ * code, to a {@code RestErrorException} subclass:
+ * <pre>
+ * &lt;property name="exceptionMappings"&gt;
+ *     &lt;map&gt;
+ *         &lt;entry key="404" value="com.company.client.NotFoundException"/&gt;
+ *         &lt;entry key="409:40901" value="com.company.client.DuplicateUsernameException"/&gt;
+ *     &lt;/map&gt;
+ * &lt;/property&gt;
+ * </pre>
+ * A {@code status:code} mapping takes precedence over a {@code status} mapping.  Mappings are looked up by the raw status
+ * of the response, so statuses without an {@code HttpStatus} constant (such as {@code 499}) may be mapped as well,
+ * even though the thrown exception's {@code RestError} reports the generic status of their series.  Mappings are
+ * compiled into a table
+ * indexed by status when set, so the lookup for each error is an array access and, at most, a binary search over the
+ * codes mapped for that status.
+ * <h3>Status-only Decoding</h3>
+ * Callers that only need the status can set {@link #setDecodeBody(boolean) decodeBody} to {@code false}: the response
+ * body is then never read or parsed, and the thrown exception carries a {@code RestError} with only the status.  Bodies
+ * whose {@code Content-Type} is not JSON are never parsed either.
+ */
+public class RestErrorResponseErrorHandler implements ResponseErrorHandler {
+
+    private static final int MIN_ERROR_STATUS = 400;
+    private static final int MAX_ERROR_STATUS = 599;
+
+    private RestErrorDecoder decoder = new RestErrorDecoder();
+    private boolean decodeBody = true;
+
+    private Map<String, Class<? extends RestErrorException>> exceptionMappings = Collections.emptyMap();
+
+    //indexed by (status - MIN_ERROR_STATUS):
+    private volatile StatusMapping[] statusMappings = new StatusMapping[MAX_ERROR_STATUS - MIN_ERROR_STATUS + 1];
+
+    public boolean hasError(ClientHttpResponse response) throws IOException {
+        int status = response.getRawStatusCode();
+        return status >= MIN_ERROR_STATUS && status <= MAX_ERROR_STATUS;
+    }
+
+    public void handleError(ClientHttpResponse response) throws IOException {
+        int status = response.getRawStatusCode();
+        RestError error;
+        if (this.decodeBody && isJson(response.getHeaders().getContentType())) {
+            error = this.decoder.decode(response.getBody(), status);
+        } else {
+            error = new RestError.Builder().setStatus(RestErrorDecoder.toHttpStatus(status)).build();
+        }
+        throw createException(error, status);
+    }
+
+    private boolean isJson(MediaType contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String subtype = contentType.getSubtype();
+        return "json".equals(subtype) || subtype.endsWith("+json");
+    }
+
+    /**
+     * Creates the exception to throw for the specified error, as determined by the
+     * {@link #setExceptionMappings(java.util.Map) exceptionMappings} for the error's status.
+     *
+     * @param error the decoded error
+     * @return the exception to throw for the specified error.
+     */
+    protected RestErrorException createException(RestError error) {
+        return createException(error, error.getStatus().value());
+    }
+
+    /**
+     * Creates the exception to throw for the specified error, as determined by the
+     * {@link #setExceptionMappings(java.util.Map) exceptionMappings} for the raw status of the response.
+     *
+     * @param error  the decoded error
+     * @param status the raw status code of the response
+     * @return the exception to throw for the specified error.
+     */
+    protected RestErrorException createException(RestError error, int status) {
+        Constructor<? extends RestErrorException> ctor = null;
+
+        StatusMapping mapping = status >= MIN_ERROR_STATUS && status <= MAX_ERROR_STATUS ?
+                this.statusMappings[status - MIN_ERROR_STATUS] : null;
+        if (mapping != null) {
+            ctor = mapping.getConstructor(error.getCode());
+        }
+        if (ctor == null) {
+            return new RestErrorException(error);
+        }
+
+        try {
+            return ctor.newInstance(error);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Unable to instantiate " + ctor.getDeclaringClass().getName(), cause);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to instantiate " + ctor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    public RestErrorDecoder getDecoder() {
+        return decoder;
+    }
+
+    public void setDecoder(RestErrorDecoder decoder) {
+        Assert.notNull(decoder, "'decoder' must not be null");
+        this.decoder = decoder;
+    }
+
+    public boolean isDecodeBody() {
+        return decodeBody;
+    }
+
+    /**
+     * Sets whether or not error response bodies should be decoded.  If {@code false}, bodies are never read and thrown
+     * exceptions only carry the response status.  Defaults to {@code true}.
+     *
+     * @param decodeBody whether or not error response bodies should be decoded.
+     */
+    public void setDecodeBody(boolean decodeBody) {
+        this.decodeBody = decodeBody;
+    }
+
+    public Map<String, Class<? extends RestErrorException>> getExceptionMappings() {
+        return exceptionMappings;
+    }
+
+    /**
+     * Sets the {@code RestErrorException} subclasses to throw for specific errors, keyed by {@code status} (for example
+     * {@code 404}) or {@code status:code} (for example {@code 409:40901}).
+     *
+     * @param exceptionMappings the {@code RestErrorException} subclasses to throw for specific errors
+     * @throws IllegalArgumentException if a key is malformed or a class lacks a public {@code (RestError)} constructor
+     */
+    public void setExceptionMappings(Map<String, Class<? extends RestErrorException>> exceptionMappings) {
+        StatusMapping[] compiled = new StatusMapping[MAX_ERROR_STATUS - MIN_ERROR_STATUS + 1];
+        if (exceptionMappings != null) {
+            for (Map.Entry<String, Class<? extends RestErrorException>> entry : exceptionMappings.entrySet()) {
+                compile(compiled, entry.getKey(), entry.getValue());
+            }
+        }
+        for (int i = 0; i < compiled.length; i++) {
+            if (compiled[i] != null) {
+                compiled[i].sort();
+            }
+        }
+        this.exceptionMappings = exceptionMappings != null ? exceptionMappings :
+                Collections.<String, Class<? extends RestErrorException>>emptyMap();
+        this.statusMappings = compiled;
+    }
+
+    private void compile(StatusMapping[] table, String key, Class<? extends RestErrorException> clazz) {
+        Constructor<? extends RestErrorException> ctor = ClassUtils.getConstructorIfAvailable(clazz, RestError.class);
+        if (ctor == null) {
+            throw new IllegalArgumentException("Exception mapping class [" + clazz.getName() + "] must declare a " +
+                    "public constructor accepting a single " + RestError.class.getName() + " argument.");
+        }
+
+        String[] parts = StringUtils.delimitedListToStringArray(StringUtils.trimAllWhitespace(key), ":");
+        int status;
+        Integer code = null;
+        try {
+            status = Integer.parseInt(parts[0]);
+            if (parts.length == 2) {
+                code = Integer.valueOf(parts[1]);
+            } else if (parts.length != 1) {
+                throw new NumberFormatException(key);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Exception mapping key [" + key + "] must be of the form " +
+                    "'status' or 'status:code'.", e);
+        }
+        if (status < MIN_ERROR_STATUS || status > MAX_ERROR_STATUS) {
+            throw new IllegalArgumentException("Exception mapping key [" + key + "] must specify a 4xx or 5xx status.");
+        }
+
+        int index = status - MIN_ERROR_STATUS;
+        if (table[index] == null) {
+            table[index] = new StatusMapping();
+        }
+        if (code == null) {
+            table[index].statusConstructor = ctor;
+        } else {
+            table[index].add(code, ctor);
+        }
+    }
+
+    /**
+     * The compiled mappings for a single status.
+     */
+    private static final class StatusMapping {
+
+        private Constructor<? extends RestErrorException> statusConstructor;
+
+        private final List<CodeMapping> pending = new ArrayList<CodeMapping>();
+        private int[] codes = new int[0];
+        private Constructor<? extends RestErrorException>[] codeConstructors = newConstructors(0);
+
+        void add(int code, Constructor<? extends RestErrorException> ctor) {
+            this.pending.add(new CodeMapping(code, ctor));
+        }
+
+        void sort() {
+            Collections.sort(this.pending);
+            this.codes = new int[this.pending.size()];
+            this.codeConstructors = newConstructors(this.pending.size());
+            for (int i = 0; i < this.codes.length; i++) {
+                this.codes[i] = this.pending.get(i).code;
+                this.codeConstructors[i] = this.pending.get(i).ctor;
+            }
+            this.pending.clear();
+        }
+
+        Constructor<? extends RestErrorException> getConstructor(int code) {
+            if (this.codes.length > 0) {
+                int i = Arrays.binarySearch(this.codes, code);
+                if (i >= 0) {
+                    return this.codeConstructors[i];
+                }
+            }
+            return this.statusConstructor;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Constructor<? extends RestErrorException>[] newConstructors(int length) {
+            return (Constructor<? extends RestErrorException>[]) new Constructor<?>[length];
+        }
+    }
+
+    private static final class CodeMapping implements Comparable<CodeMapping> {
+
+        private final int code;
+        private final Constructor<? extends RestErrorException> ctor;
+
+        CodeMapping(int code, Constructor<? extends RestErrorException> ctor) {
+            this.code = code;
+            this.ctor = ctor;
+        }
+
+        public int compareTo(CodeMapping o) {
+            return this.code < o.code ? -1 : (this.code == o.code ? 0 : 1);
+        }
+    }
+}
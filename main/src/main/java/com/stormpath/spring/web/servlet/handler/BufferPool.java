@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free pool of reusable byte arrays in a fixed set of size classes, used to render error bodies into memory
+ * before writing them to the response in a single call.
+ * <p/>
+ * {@link #acquire(int)} returns a buffer of the smallest size class that can hold the requested number of bytes.
+ * Requests larger than the largest size class cannot be served; callers are expected to fall back to streaming.  At
+ * most {@link #setMaxPooledPerClass(int) maxPooledPerClass} released buffers are retained per size class; any others
+ * are left to the garbage collector.
+ */
+public class BufferPool {
+
+    private static final int[] DEFAULT_SIZE_CLASSES = {512, 2048, 8192};
+
+    private int[] sizeClasses;
+    private int maxPooledPerClass = 32;
+
+    private Queue<byte[]>[] pools;
+    private AtomicInteger[] pooledCounts;
+
+    public BufferPool() {
+        setSizeClasses(DEFAULT_SIZE_CLASSES);
+    }
+
+    public int[] getSizeClasses() {
+        return sizeClasses.clone();
+    }
+
+    /**
+     * Sets the buffer sizes, in bytes, served by this pool.  Defaults to {@code 512}, {@code 2048} and {@code 8192}.
+     * The largest size class is the largest body that can be buffered.
+     *
+     * @param sizeClasses the buffer sizes, in bytes, served by this pool.
+     */
+    public void setSizeClasses(int[] sizeClasses) {
+        if (sizeClasses == null || sizeClasses.length == 0) {
+            throw new IllegalArgumentException("At least one size class is required.");
+        }
+        int[] sorted = sizeClasses.clone();
+        Arrays.sort(sorted);
+        if (sorted[0] <= 0) {
+            throw new IllegalArgumentException("Size classes must be positive.");
+        }
+        @SuppressWarnings("unchecked")
+        Queue<byte[]>[] newPools = (Queue<byte[]>[]) new Queue<?>[sorted.length];
+        AtomicInteger[] newCounts = new AtomicInteger[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            newPools[i] = new ConcurrentLinkedQueue<byte[]>();
+            newCounts[i] = new AtomicInteger();
+        }
+        this.sizeClasses = sorted;
+        this.pools = newPools;
+        this.pooledCounts = newCounts;
+    }
+
+    public int getMaxPooledPerClass() {
+        return maxPooledPerClass;
+    }
+
+    /**
+     * Sets the maximum number of released buffers retained per size class.  Defaults to {@code 32}.
+     *
+     * @param maxPooledPerClass the maximum number of released buffers retained per size class.
+     */
+    public void setMaxPooledPerClass(int maxPooledPerClass) {
+        this.maxPooledPerClass = maxPooledPerClass;
+    }
+
+    /**
+     * Returns the size, in bytes, of the largest buffer this pool can provide.
+     *
+     * @return the size, in bytes, of the largest buffer this pool can provide.
+     */
+    public int getMaxBufferSize() {
+        return this.sizeClasses[this.sizeClasses.length - 1];
+    }
+
+    /**
+     * Returns a buffer that can hold at least {@code minCapacity} bytes, or {@code null} if {@code minCapacity}
+     * exceeds the {@link #getMaxBufferSize() largest size class}.
+     *
+     * @param minCapacity the minimum number of bytes the buffer must hold
+     * @return a buffer that can hold at least {@code minCapacity} bytes, or {@code null} if no size class is large
+     *         enough.
+     */
+    public byte[] acquire(int minCapacity) {
+        int index = indexOf(minCapacity);
+        if (index < 0) {
+            return null;
+        }
+        byte[] buffer = this.pools[index].poll();
+        if (buffer != null) {
+            this.pooledCounts[index].decrementAndGet();
+            return buffer;
+        }
+        return new byte[this.sizeClasses[index]];
+    }
+
+    /**
+     * Returns a buffer previously obtained from {@link #acquire(int)} to the pool.  Buffers that do not match a size
+     * class, or whose size class is already full, are discarded.
+     *
+     * @param buffer the buffer to return to the pool
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int index = Arrays.binarySearch(this.sizeClasses, buffer.length);
+        if (index < 0) {
+            return;
+        }
+        if (this.pooledCounts[index].incrementAndGet() <= this.maxPooledPerClass) {
+            this.pools[index].offer(buffer);
+        } else {
+            this.pooledCounts[index].decrementAndGet();
+        }
+    }
+
+    private int indexOf(int capacity) {
+        for (int i = 0; i < this.sizeClasses.length; i++) {
+            if (this.sizeClasses[i] >= capacity) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
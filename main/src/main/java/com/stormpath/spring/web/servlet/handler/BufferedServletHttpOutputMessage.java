@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link HttpOutputMessage} that renders the body into a pooled buffer and, once {@link #complete() complete}, writes
+ * the headers, an exact {@code Content-Length} and the body to the servlet response in a single write.  Bodies larger
+ * than the pool's largest buffer are spilled: the buffered bytes are written and the remainder is streamed directly to
+ * the response as usual.
+ * <p/>
+ * Instances are single-use and not thread-safe.
+ */
+class BufferedServletHttpOutputMessage implements HttpOutputMessage {
+
+    private final HttpServletResponse servletResponse;
+    private final BufferPool bufferPool;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final BufferingOutputStream body = new BufferingOutputStream();
+
+    private byte[] buffer;
+    private int count;
+    private OutputStream spilled;
+    private boolean headersWritten;
+
+    BufferedServletHttpOutputMessage(HttpServletResponse servletResponse, BufferPool bufferPool) {
+        this.servletResponse = servletResponse;
+        this.bufferPool = bufferPool;
+    }
+
+    public HttpHeaders getHeaders() {
+        return this.headers;
+    }
+
+    public OutputStream getBody() {
+        return this.body;
+    }
+
+    /**
+     * Returns {@code true} if the body has not exceeded the largest pooled buffer, i.e. it is still held entirely in
+     * memory.
+     *
+     * @return {@code true} if the body is held entirely in memory.
+     */
+    boolean isBuffered() {
+        return this.spilled == null;
+    }
+
+    /**
+     * Returns the number of bytes written to the body so far.
+     *
+     * @return the number of bytes written to the body so far.
+     */
+    int getBodyLength() {
+        return this.count;
+    }
+
+    /**
+     * Returns a copy of the buffered body.  Only meaningful while the body {@link #isBuffered() is buffered} and before
+     * it is {@link #complete() complete}.
+     *
+     * @return a copy of the buffered body.
+     */
+    byte[] copyBody() {
+        return this.buffer != null ? Arrays.copyOf(this.buffer, this.count) : new byte[0];
+    }
+
+    /**
+     * Writes the buffered response (or the remainder of a spilled response) to the servlet response and returns the
+     * buffer to the pool.
+     *
+     * @throws IOException if the response could not be written
+     */
+    void complete() throws IOException {
+        try {
+            if (this.spilled == null) {
+                writeHeaders();
+                this.servletResponse.setContentLength(this.count);
+                if (this.count > 0) {
+                    this.servletResponse.getOutputStream().write(this.buffer, 0, this.count);
+                }
+            } else {
+                this.spilled.flush();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the buffer to the pool without writing anything.  Safe to call after {@link #complete()}.
+     */
+    void release() {
+        byte[] b = this.buffer;
+        this.buffer = null;
+        this.bufferPool.release(b);
+    }
+
+    private void writeHeaders() {
+        if (this.headersWritten) {
+            return;
+        }
+        this.headersWritten = true;
+        for (Map.Entry<String, List<String>> entry : this.headers.entrySet()) {
+            String name = entry.getKey();
+            if ("Content-Length".equalsIgnoreCase(name) || "Content-Type".equalsIgnoreCase(name)) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                this.servletResponse.addHeader(name, value);
+            }
+        }
+        MediaType contentType = this.headers.getContentType();
+        if (contentType != null) {
+            this.servletResponse.setContentType(contentType.toString());
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) throws IOException {
+        if (this.buffer != null && this.buffer.length >= minCapacity) {
+            return;
+        }
+        byte[] larger = this.bufferPool.acquire(minCapacity);
+        if (larger == null) {
+            spill();
+            return;
+        }
+        if (this.buffer != null) {
+            System.arraycopy(this.buffer, 0, larger, 0, this.count);
+            this.bufferPool.release(this.buffer);
+        }
+        this.buffer = larger;
+    }
+
+    private void spill() throws IOException {
+        writeHeaders();
+        this.spilled = this.servletResponse.getOutputStream();
+        if (this.count > 0) {
+            this.spilled.write(this.buffer, 0, this.count);
+        }
+        release();
+    }
+
+    private final class BufferingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            if (spilled == null) {
+                ensureCapacity(count + 1);
+            }
+            if (spilled != null) {
+                spilled.write(b);
+            } else {
+                buffer[count] = (byte) b;
+            }
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spilled == null) {
+                ensureCapacity(count + len);
+            }
+            if (spilled != null) {
+                spilled.write(b, off, len);
+            } else {
+                System.arraycopy(b, off, buffer, count, len);
+            }
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            //converters flush when done writing - only meaningful once the body no longer fits in memory:
+            if (spilled != null) {
+                spilled.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Detects exceptions caused by the client disconnecting, such as Tomcat's {@code ClientAbortException}, Jetty's
+ * {@code EofException} or a plain {@code IOException} reporting a broken pipe.  Container exception types are matched
+ * by name, so no container classes are required, and the result is cached per exception class.
+ */
+class ClientAbortDetector {
+
+    static final Set<String> DEFAULT_EXCEPTION_NAMES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "org.apache.catalina.connector.ClientAbortException",
+            "org.apache.coyote.CloseNowException",
+            "org.eclipse.jetty.io.EofException",
+            "org.mortbay.jetty.EofException",
+            "com.caucho.vfs.ClientDisconnectException",
+            "weblogic.servlet.internal.ClientAbortException"
+    )));
+
+    private static final int MAX_CAUSE_DEPTH = 8;
+    private static final int MAX_CACHED_CLASSES = 256;
+
+    private final Set<String> exceptionNames;
+    private final ConcurrentMap<Class<?>, Boolean> classes = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    ClientAbortDetector(Set<String> exceptionNames) {
+        this.exceptionNames = exceptionNames;
+    }
+
+    /**
+     * Returns {@code true} if the specified exception, or one of its causes, indicates that the client disconnected.
+     */
+    boolean isClientAbort(Throwable t) {
+        for (int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (isClientAbortType(t.getClass())) {
+                return true;
+            }
+            if (t instanceof IOException && isClientAbortMessage(t.getMessage())) {
+                return true;
+            }
+            Throwable cause = t.getCause();
+            t = cause != t ? cause : null;
+        }
+        return false;
+    }
+
+    private boolean isClientAbortType(Class<?> clazz) {
+        Boolean result = this.classes.get(clazz);
+        if (result == null) {
+            result = Boolean.FALSE;
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                if (this.exceptionNames.contains(c.getName())) {
+                    result = Boolean.TRUE;
+                    break;
+                }
+            }
+            if (this.classes.size() < MAX_CACHED_CLASSES) {
+                this.classes.putIfAbsent(clazz, result);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isClientAbortMessage(String message) {
+        return message != null &&
+                (message.contains("Broken pipe") || message.contains("Connection reset by peer") ||
+                        message.contains("connection was aborted"));
+    }
+}
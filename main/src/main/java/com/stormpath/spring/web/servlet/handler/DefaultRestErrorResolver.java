@@ -21,23 +21,73 @@ import org.springframework.beans.TypeMismatchException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.MessageSource;
 import org.springframework.context.MessageSourceAware;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.mvc.multiaction.NoSuchRequestHandlingMethodException;
 
+import java.lang.reflect.Method;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Default {@code RestErrorResolver} implementation that converts discovered Exceptions to
  * {@link RestError} instances.
+ * <p/>
+ * The global {@link #setExceptionMappingDefinitions(java.util.Map) exceptionMappingDefinitions} may be overridden
+ * per controller class or per handler method with the {@link RestErrorMapping} and {@link RestErrorMappings}
+ * annotations.  The effective mappings for a handler are compiled the first time that handler fails and are cached
+ * for the lifetime of this resolver.
+ * <p/>
+ * When several mappings match an exception at the same depth (for example a user-specified
+ * {@code HttpMessageNotReadableException} and the fully qualified default for the same class), the first one wins:
+ * method-level mappings, then class-level mappings, then the user-specified
+ * {@link #setExceptionMappingDefinitions(java.util.Map) exceptionMappingDefinitions} and finally the defaults.
+ * <b>Note:</b> prior versions iterated the defaults first, so a default won such ties against a user-specified
+ * mapping of the same class.
+ * <p/>
+ * Configured messages (and the {@code MessageSource} messages they refer to) may contain {@code {property}}
+ * placeholders, for example {@code msg=User {username} not found}.  Each placeholder is replaced with the value of
+ * the named JavaBeans property of the exception being resolved, so exceptions only need to carry their data rather
+ * than pre-formatted message strings.  Patterns are compiled once and cached; property accessors are introspected once
+ * per exception class.  Exception messages ({@code _exmsg}) are never treated as templates.
+ * <p/>
+ * The message and developer message of resolved errors are computed (including any {@code MessageSource} lookups
+ * and {@code _trace} rendering) only when first accessed, so a {@link RestErrorConverter} that omits them, such as a
+ * {@link MapRestErrorConverter} configured for a less verbose profile, avoids that cost entirely.
+ * <p/>
+ * Exceptions extending {@link RestException} carry their own template and are resolved without consulting the
+ * mappings at all.
+ * <p/>
+ * A developer message of {@code _trace} (for example {@code devMsg=_trace}, or a
+ * {@link #setDefaultDeveloperMessage(String) defaultDeveloperMessage} of {@code _trace} in non-production
+ * environments) renders the exception's stack trace with the configured {@link StackTraceRenderer}.
+ * <p/>
+ * Definitions may specify {@code maxAge=seconds} and {@code retryAfter=seconds} attributes, for example
+ * {@code 410, maxAge=86400} or {@code 503, retryAfter=30}.  The {@link RestExceptionHandler} renders these as
+ * {@code Cache-Control}/{@code Expires} and {@code Retry-After} response headers respectively, allowing caches and
+ * well-behaved clients to absorb repeated requests that would otherwise fail again.  These attributes are only
+ * recognized in their explicit {@code name=value} form.
+ * <p/>
+ * Exceptions caused by a {@code java.sql.SQLException} (such as Spring's {@code DataAccessException}s) may also be
+ * resolved by the SQLException's {@link #setSqlStateMappingDefinitions(java.util.Map) SQLState} or
+ * {@link #setVendorCodeMappingDefinitions(java.util.Map) vendor code}, for example to map unique violations to
+ * {@code 409} but deadlocks to {@code 503} with a {@code retryAfter}.  These mappings are compiled into primitive
+ * {@code int} keyed hash tables and are consulted before the exception class mappings.
  *
  * @author Les Hazlewood
  */
@@ -45,27 +95,71 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
 
     public static final String DEFAULT_EXCEPTION_MESSAGE_VALUE = "_exmsg";
     public static final String DEFAULT_MESSAGE_VALUE = "_msg";
+    public static final String DEFAULT_STACK_TRACE_VALUE = "_trace";
 
     private static final Logger log = LoggerFactory.getLogger(DefaultRestErrorResolver.class);
 
+    private static final int MAX_CACHED_MESSAGE_TEMPLATES = 1024;
+    private static final int MAX_CACHED_MESSAGES = 4096;
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+    private static final int MAX_CACHED_HANDLERS = 4096;
+
     private Map<String, RestError> exceptionMappings = Collections.emptyMap();
 
     private Map<String, String> exceptionMappingDefinitions = Collections.emptyMap();
 
+    private Map<String, String> sqlStateMappingDefinitions = Collections.emptyMap();
+    private Map<String, String> vendorCodeMappingDefinitions = Collections.emptyMap();
+    private SqlErrorMappings sqlErrorMappings;
+
+    //effective mappings keyed by the identity of the handler's java.lang.reflect.Method (or handler class), each
+    //chaining the mappings per bean type, compiled on first use.  Copied on write, as handlers are finite and the
+    //table is only written the first time each handler fails:
+    private volatile Map<Object, HandlerMappings> handlerExceptionMappings =
+            new IdentityHashMap<Object, HandlerMappings>();
+
+    //compiled templates keyed by mapping definition, so identical definitions share a single instance:
+    private final ConcurrentMap<String, RestError> templates = new ConcurrentHashMap<String, RestError>();
+
+    //templates with the default code and more info URL applied, keyed by template:
+    private final ConcurrentMap<RestError, RestError> effectiveTemplates = new ConcurrentHashMap<RestError, RestError>();
+
+    //compiled message patterns keyed by the (localized) pattern text:
+    private final ConcurrentMap<String, MessageTemplate> messageTemplates =
+            new ConcurrentHashMap<String, MessageTemplate>();
+
+    //MessageSource lookups keyed by message code and locale, unless cacheMessages is disabled:
+    private final ConcurrentMap<MessageKey, String> messages = new ConcurrentHashMap<MessageKey, String>();
+
+    private final ExceptionPropertyAccessor exceptionPropertyAccessor = new ExceptionPropertyAccessor();
+
     private MessageSource messageSource;
     private LocaleResolver localeResolver;
 
     private String defaultMoreInfoUrl;
     private boolean defaultEmptyCodeToStatus;
     private String defaultDeveloperMessage;
+    private StackTraceRenderer stackTraceRenderer = new StackTraceRenderer();
+    private boolean cacheMessages = false;
+    private RestErrorListener errorListener;
+
+    //whether a subclass overrides getRestErrorTemplate, in which case the matched mapping key can't be reported:
+    private final boolean customTemplateLookup;
+    //whether a subclass overrides getMappingKey, in which case the mappings can't be passed down to it:
+    private final boolean customMappingKey;
 
     public DefaultRestErrorResolver() {
         this.defaultEmptyCodeToStatus = true;
         this.defaultDeveloperMessage = DEFAULT_EXCEPTION_MESSAGE_VALUE;
+        Method lookup = ReflectionUtils.findMethod(getClass(), "getRestErrorTemplate", Object.class, Exception.class);
+        this.customTemplateLookup = lookup.getDeclaringClass() != DefaultRestErrorResolver.class;
+        lookup = ReflectionUtils.findMethod(getClass(), "getMappingKey", Object.class, Exception.class);
+        this.customMappingKey = lookup.getDeclaringClass() != DefaultRestErrorResolver.class;
     }
 
     public void setMessageSource(MessageSource messageSource) {
         this.messageSource = messageSource;
+        this.messages.clear();
     }
 
     public void setLocaleResolver(LocaleResolver resolver) {
@@ -76,30 +170,124 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
         this.exceptionMappingDefinitions = exceptionMappingDefinitions;
     }
 
+    /**
+     * Sets the mappings applied to exceptions caused by a {@code java.sql.SQLException}, keyed by five character
+     * SQLState (for example {@code 23505}, unique violation) or two character SQLState class (for example {@code 40},
+     * transaction rollback).  Values use the same format as the
+     * {@link #setExceptionMappingDefinitions(java.util.Map) exceptionMappingDefinitions}, for example
+     * {@code 409, 40901, msg=Already exists} or {@code 503, retryAfter=1}.
+     * <p/>
+     * These mappings, like the {@link #setVendorCodeMappingDefinitions(java.util.Map) vendor code mappings}, take
+     * precedence over the exception class mappings, so {@code DataIntegrityViolationException}s, deadlocks and lock
+     * timeouts may each be resolved differently.  Vendor codes are matched first, then full SQLStates, then SQLState
+     * classes.
+     *
+     * @param sqlStateMappingDefinitions the mappings applied to exceptions caused by a {@code SQLException}, keyed by
+     *                                   SQLState or SQLState class.
+     */
+    public void setSqlStateMappingDefinitions(Map<String, String> sqlStateMappingDefinitions) {
+        this.sqlStateMappingDefinitions = sqlStateMappingDefinitions != null ? sqlStateMappingDefinitions :
+                Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * Sets the mappings applied to exceptions caused by a {@code java.sql.SQLException}, keyed by the driver's vendor
+     * error code, for example {@code 1213} (MySQL deadlock).  See
+     * {@link #setSqlStateMappingDefinitions(java.util.Map)}.
+     *
+     * @param vendorCodeMappingDefinitions the mappings applied to exceptions caused by a {@code SQLException}, keyed
+     *                                     by vendor error code.
+     */
+    public void setVendorCodeMappingDefinitions(Map<String, String> vendorCodeMappingDefinitions) {
+        this.vendorCodeMappingDefinitions = vendorCodeMappingDefinitions != null ? vendorCodeMappingDefinitions :
+                Collections.<String, String>emptyMap();
+    }
+
     public void setDefaultMoreInfoUrl(String defaultMoreInfoUrl) {
         this.defaultMoreInfoUrl = defaultMoreInfoUrl;
+        this.effectiveTemplates.clear();
     }
 
     public void setDefaultEmptyCodeToStatus(boolean defaultEmptyCodeToStatus) {
         this.defaultEmptyCodeToStatus = defaultEmptyCodeToStatus;
+        this.effectiveTemplates.clear();
     }
 
     public void setDefaultDeveloperMessage(String defaultDeveloperMessage) {
         this.defaultDeveloperMessage = defaultDeveloperMessage;
     }
 
+    public boolean isCacheMessages() {
+        return cacheMessages;
+    }
+
+    /**
+     * Sets whether or not configured messages resolved via the {@code MessageSource} should be cached per message
+     * code and locale.  Common {@code MessageSource} implementations synchronize internally on every lookup, which
+     * serializes concurrently failing requests; with this enabled, each message is looked up only once and subsequent
+     * lookups are served from a lock-free cache.  Exception messages ({@code _exmsg}) are never cached.
+     * <p/>
+     * Defaults to {@code false}, since the resolver cannot tell whether the {@code MessageSource} reloads its messages
+     * at runtime.  Enable it for a {@code MessageSource} with static messages (for example a
+     * {@code ResourceBundleMessageSource}, or a {@code ReloadableResourceBundleMessageSource} with a negative
+     * {@code cacheSeconds}); changed messages are otherwise never picked up.  The cache is cleared whenever the
+     * {@code MessageSource} is replaced or the mappings are re-initialized.
+     *
+     * @param cacheMessages whether or not resolved messages should be cached.
+     */
+    public void setCacheMessages(boolean cacheMessages) {
+        this.cacheMessages = cacheMessages;
+        this.messages.clear();
+    }
+
+    public RestErrorListener getErrorListener() {
+        return errorListener;
+    }
+
+    /**
+     * Sets the listener notified of every resolved exception, along with its matched mapping key and resolution time.
+     * Defaults to {@code null}.
+     *
+     * @param errorListener the listener notified of every resolved exception.
+     */
+    public void setErrorListener(RestErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    public StackTraceRenderer getStackTraceRenderer() {
+        return stackTraceRenderer;
+    }
+
+    /**
+     * Sets the renderer used for {@value #DEFAULT_STACK_TRACE_VALUE} developer messages.
+     *
+     * @param stackTraceRenderer the renderer used for {@value #DEFAULT_STACK_TRACE_VALUE} developer messages.
+     */
+    public void setStackTraceRenderer(StackTraceRenderer stackTraceRenderer) {
+        this.stackTraceRenderer = stackTraceRenderer;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
 
-        //populate with some defaults:
-        Map<String, String> definitions = createDefaultExceptionMappingDefinitions();
+        this.templates.clear();
 
-        //add in user-specified mappings (will override defaults as necessary):
+        //user-specified mappings first (they override defaults as necessary, and win ties against defaults matching at
+        //the same depth, for example HttpMessageNotReadableException vs. its fully qualified default):
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
         if (this.exceptionMappingDefinitions != null && !this.exceptionMappingDefinitions.isEmpty()) {
             definitions.putAll(this.exceptionMappingDefinitions);
         }
 
+        //then populate with some defaults:
+        putAbsent(definitions, createDefaultExceptionMappingDefinitions());
+
         this.exceptionMappings = toRestErrors(definitions);
+        this.sqlErrorMappings = SqlErrorMappings.compile(toRestErrors(this.sqlStateMappingDefinitions),
+                toRestErrors(this.vendorCodeMappingDefinitions));
+        this.handlerExceptionMappings = new IdentityHashMap<Object, HandlerMappings>();
+        this.effectiveTemplates.clear();
+        this.messages.clear();
     }
 
     protected final Map<String,String> createDefaultExceptionMappingDefinitions() {
@@ -129,6 +317,13 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
         // 415
         applyDef(m, HttpMediaTypeNotSupportedException.class, HttpStatus.UNSUPPORTED_MEDIA_TYPE);
 
+        // 503
+        //async request timeouts, only available with Servlet 3 async support (Spring 4.2+, or the async module):
+        applyDef(m, "org.springframework.web.context.request.async.AsyncRequestTimeoutException",
+                HttpStatus.SERVICE_UNAVAILABLE);
+        applyDef(m, "com.stormpath.spring.web.servlet.handler.async.AsyncRequestTimeoutException",
+                HttpStatus.SERVICE_UNAVAILABLE);
+
         return m;
     }
 
@@ -147,27 +342,96 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
     @Override
     public RestError resolveError(ServletWebRequest request, Object handler, Exception ex) {
 
-        RestError template = getRestErrorTemplate(ex);
-        if (template == null) {
-            return null;
+        RestErrorListener listener = this.errorListener;
+        if (listener == null || !listener.isEnabled()) {
+            RestError template = getRestErrorTemplate(handler, ex);
+            if (template == null) {
+                return null;
+            }
+            return resolveError(template, request, ex);
         }
 
-        RestError.Builder builder = new RestError.Builder();
+        long start = System.nanoTime();
+        String[] mappingKey = new String[1];
+        RestError template = lookUpTemplate(handler, ex, mappingKey);
+        return resolveTemplate(request, ex, template, mappingKey[0], start);
+    }
+
+    /**
+     * Looks up the template of the specified exception like {@link #getRestErrorTemplate(Object, Exception)}, storing
+     * the key of the matched mapping in the first element of {@code mappingKey} unless a subclass customizes the
+     * lookup.
+     */
+    RestError lookUpTemplate(Object handler, Exception ex, String[] mappingKey) {
+        return this.customTemplateLookup ? getRestErrorTemplate(handler, ex) :
+                findRestErrorTemplate(handler, ex, mappingKey);
+    }
+
+    /**
+     * Resolves the error of an exception whose template has already been looked up (and possibly cached by the
+     * caller), notifying the {@link #setErrorListener(RestErrorListener) errorListener} exactly like
+     * {@link #resolveError(ServletWebRequest, Object, Exception)} does.
+     *
+     * @param start the {@code System.nanoTime()} at which the resolution started
+     * @return the resolved error, or {@code null} if the template is {@code null}.
+     */
+    RestError resolveTemplate(ServletWebRequest request, Exception ex, RestError template, String mappingKey,
+                              long start) {
+        RestError error = template != null ? resolveError(template, request, ex) : null;
+        RestErrorListener listener = this.errorListener;
+        if (listener != null && listener.isEnabled()) {
+            listener.errorResolved(request, ex, mappingKey, error, System.nanoTime() - start);
+        }
+        return error;
+    }
+
+    /**
+     * Creates the runtime {@code RestError} for the specified exception based on its config-time template.
+     *
+     * @param template the config-time template returned by {@link #getRestErrorTemplate(Object, Exception)}
+     * @param request  the current request
+     * @param ex       the exception being resolved
+     * @return the runtime {@code RestError} to render.
+     */
+    protected RestError resolveError(RestError template, ServletWebRequest request, Exception ex) {
+
+        //the built error shares the effective template's status, code, etc. unless a subclass changes them:
+        RestError.Builder builder = new RestError.Builder(getEffectiveTemplate(template));
         builder.setStatus(getStatusValue(template, request, ex));
         builder.setCode(getCode(template, request, ex));
         builder.setMoreInfoUrl(getMoreInfoUrl(template, request, ex));
+        builder.setMaxAge(getMaxAge(template, request, ex));
+        builder.setRetryAfter(getRetryAfter(template, request, ex));
         builder.setThrowable(ex);
+        //resolved (and localized) on first access, so they cost nothing if the response does not include them:
+        builder.setMessage(null);
+        builder.setDeveloperMessage(null);
 
-        String msg = getMessage(template, request, ex);
-        if (msg != null) {
-            builder.setMessage(msg);
+        return new LazyRestError(builder.build(), template, request, ex);
+    }
+
+    /**
+     * Returns the specified template with this resolver's default code and more info URL applied, i.e. the values
+     * {@link #getCode(RestError, ServletWebRequest, Exception) getCode} and
+     * {@link #getMoreInfoUrl(RestError, ServletWebRequest, Exception) getMoreInfoUrl} return by default.  Templates are
+     * immutable, so the result is computed once per template.
+     */
+    private RestError getEffectiveTemplate(RestError template) {
+        RestError effective = this.effectiveTemplates.get(template);
+        if (effective != null) {
+            return effective;
         }
-        msg = getDeveloperMessage(template, request, ex);
-        if (msg != null) {
-            builder.setDeveloperMessage(msg);
+        int code = template.getCode();
+        if (code <= 0 && this.defaultEmptyCodeToStatus) {
+            code = template.getStatus().value();
         }
-
-        return builder.build();
+        String moreInfoUrl = template.getMoreInfoUrl() != null ? template.getMoreInfoUrl() : this.defaultMoreInfoUrl;
+        effective = new RestError.Builder(template).setCode(code).setMoreInfoUrl(moreInfoUrl).build();
+        //guard against unbounded growth if templates are created dynamically:
+        if (this.effectiveTemplates.size() < MAX_CACHED_TEMPLATES) {
+            this.effectiveTemplates.putIfAbsent(template, effective);
+        }
+        return effective;
     }
 
     protected int getStatusValue(RestError template, ServletWebRequest request, Exception ex) {
@@ -190,11 +454,27 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
         return moreInfoUrl;
     }
 
+    protected int getMaxAge(RestError template, ServletWebRequest request, Exception ex) {
+        return template.getMaxAge();
+    }
+
+    protected int getRetryAfter(RestError template, ServletWebRequest request, Exception ex) {
+        return template.getRetryAfter();
+    }
+
     protected String getMessage(RestError template, ServletWebRequest request, Exception ex) {
         return getMessage(template.getMessage(), request, ex);
     }
 
     protected String getDeveloperMessage(RestError template, ServletWebRequest request, Exception ex) {
+        String devMsg = getDeveloperMessagePattern(template);
+        if (DEFAULT_STACK_TRACE_VALUE.equalsIgnoreCase(devMsg)) {
+            return stackTraceRenderer != null ? stackTraceRenderer.render(ex) : null;
+        }
+        return getMessage(devMsg, request, ex);
+    }
+
+    private String getDeveloperMessagePattern(RestError template) {
         String devMsg = template.getDeveloperMessage();
         if (devMsg == null && defaultDeveloperMessage != null) {
             devMsg = defaultDeveloperMessage;
@@ -202,7 +482,7 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
         if (DEFAULT_MESSAGE_VALUE.equals(devMsg)) {
             devMsg = template.getMessage();
         }
-        return getMessage(devMsg, request, ex);
+        return devMsg;
     }
 
     /**
@@ -213,56 +493,322 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
      *         status message should be returned.
      */
     protected String getMessage(String msg, ServletWebRequest webRequest, Exception ex) {
+        Locale locale = null;
+        if (msg != null && messageSource != null && localeResolver != null) {
+            locale = localeResolver.resolveLocale(webRequest.getRequest());
+        }
+        return getMessage(msg, locale, ex);
+    }
+
+    private String getMessage(String msg, Locale locale, Exception ex) {
 
         if (msg != null) {
             if (msg.equalsIgnoreCase("null") || msg.equalsIgnoreCase("off")) {
                 return null;
             }
+            boolean exceptionMessage = false;
             if (msg.equalsIgnoreCase(DEFAULT_EXCEPTION_MESSAGE_VALUE)) {
                 msg = ex.getMessage();
+                exceptionMessage = true;
             }
             if (messageSource != null) {
-                Locale locale = null;
-                if (localeResolver != null) {
-                    locale = localeResolver.resolveLocale(webRequest.getRequest());
-                }
-                msg = messageSource.getMessage(msg, null, msg, locale);
+                msg = getSourceMessage(msg, locale, !exceptionMessage && this.cacheMessages);
+            }
+            if (!exceptionMessage && msg != null) {
+                msg = formatMessage(msg, ex);
             }
         }
 
         return msg;
     }
 
+    private String getSourceMessage(String code, Locale locale, boolean cache) {
+        if (code == null || !cache) {
+            return this.messageSource.getMessage(code, null, code, locale);
+        }
+        MessageKey key = new MessageKey(code, locale);
+        String msg = this.messages.get(key);
+        if (msg == null) {
+            msg = this.messageSource.getMessage(code, null, code, locale);
+            //guard against unbounded growth with many locales:
+            if (msg != null && this.messages.size() < MAX_CACHED_MESSAGES) {
+                this.messages.putIfAbsent(key, msg);
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Replaces any {@code {property}} placeholders in the specified (already localized) message with the values of
+     * the corresponding exception properties.
+     *
+     * @param msg the message pattern
+     * @param ex  the exception whose properties are referenced by the pattern
+     * @return the formatted message
+     */
+    protected String formatMessage(String msg, Exception ex) {
+        if (msg.indexOf('{') < 0) {
+            return msg;
+        }
+        MessageTemplate template = this.messageTemplates.get(msg);
+        if (template == null) {
+            template = MessageTemplate.compile(msg);
+            //guard against unbounded growth if a MessageSource returns dynamic text:
+            if (this.messageTemplates.size() < MAX_CACHED_MESSAGE_TEMPLATES) {
+                this.messageTemplates.putIfAbsent(msg, template);
+            }
+        }
+        return template.render(ex, this.exceptionPropertyAccessor);
+    }
+
     /**
      * Returns the config-time 'template' RestError instance configured for the specified Exception, or
      * {@code null} if a match was not found.
      * <p/>
-     * The config-time template is used as the basis for the RestError constructed at runtime.
-     * @param ex
+     * The config-time template is used as the basis for the RestError constructed at runtime.  A
+     * {@link RestException} provides its own template, in which case the mappings are not consulted.
+     * @param handler the executed handler, or {@code null} if none was chosen at the time of the exception
+     * @param ex the exception to resolve
      * @return the template to use for the RestError instance to be constructed.
      */
-    private RestError getRestErrorTemplate(Exception ex) {
-        Map<String, RestError> mappings = this.exceptionMappings;
+    protected RestError getRestErrorTemplate(Object handler, Exception ex) {
+        return findRestErrorTemplate(handler, ex, null);
+    }
+
+    /**
+     * Implements {@link #getRestErrorTemplate(Object, Exception)}, storing the key of the matched mapping (if any) in
+     * the first element of {@code mappingKey} unless it is {@code null}.
+     */
+    private RestError findRestErrorTemplate(Object handler, Exception ex, String[] mappingKey) {
+        if (ex instanceof RestException) {
+            //self-describing - no need to search the mappings:
+            return ((RestException) ex).getRestError();
+        }
+        SqlErrorMappings sqlMappings = this.sqlErrorMappings;
+        if (sqlMappings != null) {
+            SQLException sqlEx = SqlErrorMappings.findSQLException(ex);
+            SqlErrorMappings.Mapping mapping = sqlEx != null ? sqlMappings.find(sqlEx) : null;
+            if (mapping != null) {
+                RestError template = mapping.getTemplate();
+                if (log.isDebugEnabled()) {
+                    log.debug("Resolving to RestError template '" + template + "' for exception of type [" +
+                            ex.getClass().getName() + "], based on " + mapping.getKey());
+                }
+                if (mappingKey != null) {
+                    mappingKey[0] = mapping.getKey();
+                }
+                return template;
+            }
+        }
+        //looked up once and passed down:
+        Map<String, RestError> mappings = getExceptionMappings(handler);
+        String dominantMapping = this.customMappingKey ? getMappingKey(handler, ex) : getMappingKey(mappings, ex);
+        if (dominantMapping == null) {
+            return null;
+        }
+        if (mappingKey != null) {
+            mappingKey[0] = dominantMapping;
+        }
+        RestError template = mappings.get(dominantMapping);
+        if (template != null && log.isDebugEnabled()) {
+            log.debug("Resolving to RestError template '" + template + "' for exception of type [" + ex.getClass().getName() +
+                    "], based on exception mapping [" + dominantMapping + "]");
+        }
+        return template;
+    }
+
+    /**
+     * Resolves the specified exception without a request, for warming up: compiles and caches its template, the
+     * effective template and the handler's mappings, and eagerly resolves the messages in the specified locale (which
+     * primes the {@code MessageSource} and message pattern caches).  The {@link #setErrorListener(RestErrorListener)
+     * errorListener} is not notified.
+     *
+     * @return the resolved error, or {@code null} if no mapping matches the exception.
+     */
+    RestError warmUp(Object handler, Exception ex, Locale locale) {
+        RestError template = lookUpTemplate(handler, ex, null);
+        if (template == null) {
+            return null;
+        }
+        String devMsg = getDeveloperMessagePattern(template);
+        if (DEFAULT_STACK_TRACE_VALUE.equalsIgnoreCase(devMsg)) {
+            devMsg = stackTraceRenderer != null ? stackTraceRenderer.render(ex) : null;
+        } else {
+            devMsg = getMessage(devMsg, locale, ex);
+        }
+        return new RestError.Builder(getEffectiveTemplate(template))
+                .setMessage(getMessage(template.getMessage(), locale, ex))
+                .setDeveloperMessage(devMsg)
+                .setThrowable(ex)
+                .build();
+    }
+
+    /**
+     * Returns {@code true} if the specified exception may be resolved by a SQLState or vendor code mapping, in which
+     * case its template depends on more than its class.
+     */
+    boolean isSqlMappingCandidate(Exception ex) {
+        return this.sqlErrorMappings != null && SqlErrorMappings.findSQLException(ex) != null;
+    }
+
+    /**
+     * Returns the key of the exception mapping that most closely matches the specified exception (the mapped class
+     * nearest to the exception's own class in its hierarchy), or {@code null} if no mapping matches.
+     *
+     * @param handler the executed handler, or {@code null} if none was chosen at the time of the exception
+     * @param ex      the exception to resolve
+     * @return the key of the closest matching exception mapping, or {@code null} if no mapping matches.
+     */
+    protected String getMappingKey(Object handler, Exception ex) {
+        return getMappingKey(getExceptionMappings(handler), ex);
+    }
+
+    private String getMappingKey(Map<String, RestError> mappings, Exception ex) {
+        //mappings matching at the same depth are resolved in favor of the first one, so handler-specific mappings are
+        //iterated before the global ones:
         if (CollectionUtils.isEmpty(mappings)) {
             return null;
         }
-        RestError template = null;
         String dominantMapping = null;
         int deepest = Integer.MAX_VALUE;
-        for (Map.Entry<String, RestError> entry : mappings.entrySet()) {
-            String key = entry.getKey();
+        for (String key : mappings.keySet()) {
             int depth = getDepth(key, ex);
             if (depth >= 0 && depth < deepest) {
                 deepest = depth;
                 dominantMapping = key;
-                template = entry.getValue();
             }
         }
-        if (template != null && log.isDebugEnabled()) {
-            log.debug("Resolving to RestError template '" + template + "' for exception of type [" + ex.getClass().getName() +
-                    "], based on exception mapping [" + dominantMapping + "]");
+        return dominantMapping;
+    }
+
+    /**
+     * Returns the effective exception mappings for the specified handler: the global mappings merged with any
+     * {@link RestErrorMapping} declarations on the handler class and handler method.  Method-level mappings are
+     * iterated first, followed by class-level and then global mappings, so that a handler-specific mapping wins over a
+     * global mapping matching at the same depth (for example {@code Throwable} vs. {@code java.lang.Throwable}).  The
+     * result is compiled once per handler method and bean type (or per {@code java.lang.reflect.Method}, or handler
+     * class if the handler is neither) and cached; subsequent calls only perform an identity lookup and compare bean
+     * types by reference.
+     *
+     * @param handler the executed handler, or {@code null} if none was chosen at the time of the exception
+     * @return the effective exception mappings for the specified handler.
+     */
+    protected Map<String, RestError> getExceptionMappings(Object handler) {
+        if (handler == null) {
+            return this.exceptionMappings;
+        }
+        //an inherited handler method may be shared by several controllers with different class-level mappings, so
+        //the mappings are keyed by the method and then by the bean type.  Spring may create a HandlerMethod per
+        //request, but its Method and bean type are always the same instances:
+        Object key;
+        Class<?> beanType;
+        if (handler instanceof HandlerMethod) {
+            key = ((HandlerMethod) handler).getMethod();
+            beanType = ((HandlerMethod) handler).getBeanType();
+        } else if (handler instanceof Method) {
+            key = handler;
+            beanType = ((Method) handler).getDeclaringClass();
+        } else {
+            key = ClassUtils.getUserClass(handler);
+            beanType = (Class<?>) key;
+        }
+        for (HandlerMappings each = this.handlerExceptionMappings.get(key); each != null; each = each.next) {
+            if (each.beanType == beanType) {
+                return each.mappings;
+            }
+        }
+        return putExceptionMappings(key, beanType, handler);
+    }
+
+    private synchronized Map<String, RestError> putExceptionMappings(Object key, Class<?> beanType, Object handler) {
+        Map<Object, HandlerMappings> table = this.handlerExceptionMappings;
+        //compiled concurrently by another thread, or for an equal copy of the same Method:
+        Map<String, RestError> mappings = null;
+        for (Map.Entry<Object, HandlerMappings> entry : table.entrySet()) {
+            if (entry.getKey().equals(key)) {
+                for (HandlerMappings each = entry.getValue(); each != null; each = each.next) {
+                    if (each.beanType == beanType) {
+                        mappings = each.mappings;
+                    }
+                }
+            }
+        }
+        if (mappings == null) {
+            mappings = createExceptionMappings(handler);
+        }
+        //guard against unbounded growth if a caller creates a new Method instance per request:
+        if (table.size() < MAX_CACHED_HANDLERS) {
+            table = new IdentityHashMap<Object, HandlerMappings>(table);
+            table.put(key, new HandlerMappings(beanType, mappings, table.get(key)));
+            this.handlerExceptionMappings = table;
+        }
+        return mappings;
+    }
+
+    private Map<String, RestError> createExceptionMappings(Object handler) {
+        Class<?> handlerClass;
+        Method method = null;
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            handlerClass = ClassUtils.getUserClass(handlerMethod.getBeanType());
+            method = handlerMethod.getMethod();
+        } else if (handler instanceof Method) {
+            //a handler method whose return value is rendered by a RestErrorReturnValueHandler:
+            method = (Method) handler;
+            handlerClass = method.getDeclaringClass();
+        } else {
+            handlerClass = ClassUtils.getUserClass(handler);
+        }
+
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        if (method != null) {
+            applyAnnotatedDefs(definitions, AnnotationUtils.findAnnotation(method, RestErrorMappings.class),
+                    AnnotationUtils.findAnnotation(method, RestErrorMapping.class));
+        }
+        Map<String, String> classDefinitions = new LinkedHashMap<String, String>();
+        applyAnnotatedDefs(classDefinitions, AnnotationUtils.findAnnotation(handlerClass, RestErrorMappings.class),
+                AnnotationUtils.findAnnotation(handlerClass, RestErrorMapping.class));
+        putAbsent(definitions, classDefinitions);
+
+        if (definitions.isEmpty()) {
+            //no overrides - share the global mappings:
+            return this.exceptionMappings;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Applying handler-specific exception mappings " + definitions + " for handler [" +
+                    (method != null ? method : handlerClass) + "]");
+        }
+
+        //handler-specific mappings first, so they win ties against global mappings:
+        Map<String, RestError> mappings = new LinkedHashMap<String, RestError>(toRestErrors(definitions));
+        putAbsent(mappings, this.exceptionMappings);
+        return mappings;
+    }
+
+    private static <V> void putAbsent(Map<String, V> m, Map<String, V> defaults) {
+        for (Map.Entry<String, V> entry : defaults.entrySet()) {
+            if (!m.containsKey(entry.getKey())) {
+                m.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void applyAnnotatedDefs(Map<String, String> m, RestErrorMappings mappings, RestErrorMapping mapping) {
+        if (mappings != null) {
+            for (RestErrorMapping each : mappings.value()) {
+                applyAnnotatedDef(m, each);
+            }
+        }
+        if (mapping != null) {
+            applyAnnotatedDef(m, mapping);
+        }
+    }
+
+    private void applyAnnotatedDef(Map<String, String> m, RestErrorMapping mapping) {
+        for (Class<? extends Throwable> clazz : mapping.value()) {
+            m.put(clazz.getName(), mapping.definition());
         }
-        return template;
     }
 
     /**
@@ -297,7 +843,14 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
         for (Map.Entry<String, String> entry : smap.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
-            RestError template = toRestError(value);
+            RestError template = this.templates.get(value);
+            if (template == null) {
+                template = toRestError(value);
+                RestError existing = this.templates.putIfAbsent(value, template);
+                if (existing != null) {
+                    template = existing;
+                }
+            }
             map.put(key, template);
         }
 
@@ -351,6 +904,10 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
                 } else if ("infoUrl".equalsIgnoreCase(pairKey)) {
                     builder.setMoreInfoUrl(pairValue);
                     moreInfoSet = true;
+                } else if ("maxAge".equalsIgnoreCase(pairKey)) {
+                    builder.setMaxAge(getRequiredInt(pairKey, pairValue));
+                } else if ("retryAfter".equalsIgnoreCase(pairKey)) {
+                    builder.setRetryAfter(getRequiredInt(pairKey, pairValue));
                 }
             } else {
                 //not a key/value pair - use heuristics to determine what value is being set:
@@ -416,4 +973,92 @@ public class DefaultRestErrorResolver implements RestErrorResolver, MessageSourc
             return 0;
         }
     }
+
+    /**
+     * {@code RestError} that resolves its message and developer message the first time they are accessed.
+     */
+    private final class LazyRestError extends RestError {
+
+        private final RestError template;
+        private final ServletWebRequest request;
+        private final Exception ex;
+
+        private String message;
+        private boolean messageResolved;
+        private String developerMessage;
+        private boolean developerMessageResolved;
+
+        LazyRestError(RestError source, RestError template, ServletWebRequest request, Exception ex) {
+            super(source);
+            this.template = template;
+            this.request = request;
+            this.ex = ex;
+        }
+
+        @Override
+        public String getMessage() {
+            if (!this.messageResolved) {
+                this.message = DefaultRestErrorResolver.this.getMessage(this.template, this.request, this.ex);
+                this.messageResolved = true;
+            }
+            return this.message;
+        }
+
+        @Override
+        public String getDeveloperMessage() {
+            if (!this.developerMessageResolved) {
+                this.developerMessage =
+                        DefaultRestErrorResolver.this.getDeveloperMessage(this.template, this.request, this.ex);
+                this.developerMessageResolved = true;
+            }
+            return this.developerMessage;
+        }
+    }
+
+    /**
+     * The effective mappings of a handler method (or handler class) for one bean type, chained to those of any other
+     * bean types sharing the method.  Immutable.
+     */
+    private static final class HandlerMappings {
+
+        private final Class<?> beanType;
+        private final Map<String, RestError> mappings;
+        private final HandlerMappings next;
+
+        HandlerMappings(Class<?> beanType, Map<String, RestError> mappings, HandlerMappings next) {
+            this.beanType = beanType;
+            this.mappings = mappings;
+            this.next = next;
+        }
+    }
+
+    private static final class MessageKey {
+
+        private final String code;
+        private final Locale locale;
+        private final int hashCode;
+
+        MessageKey(String code, Locale locale) {
+            this.code = code;
+            this.locale = locale;
+            this.hashCode = 31 * code.hashCode() + (locale != null ? locale.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MessageKey)) {
+                return false;
+            }
+            MessageKey other = (MessageKey) o;
+            return this.code.equals(other.code) && ObjectUtils.nullSafeEquals(this.locale, other.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects when the error path is overloaded, so the {@link RestExceptionHandler} can switch to a cheaper, degraded
+ * rendering mode.
+ * <p/>
+ * The detector tracks the number of errors per second and an exponentially weighted moving average of the time the
+ * handler spends on each error.  Degraded mode is entered when either value reaches its {@code enter} threshold and is
+ * only left once both values have dropped to their (lower) {@code exit} thresholds and degraded mode has lasted at
+ * least {@link #setMinDegradedMillis(long) minDegradedMillis}, so the mode does not flap around a single threshold.
+ * A threshold of {@code 0} disables that criterion.  State is re-evaluated at most once per second and recording an
+ * error never locks.
+ * <p/>
+ * Note that:
+ * <ul>
+ *     <li>The error thresholds are absolute rates, not ratios: the detector only sees errors, not the requests that
+ *     succeed.  Size them relative to the capacity of a single instance.</li>
+ *     <li>The latency average only receives samples from errors, so every second without errors counts as a sample of
+ *     {@code 0}.  This lets the average (and with it degraded mode) recover once errors stop, but also means that the
+ *     latency criterion reflects recent errors only.  While degraded, errors are cheap to handle, which lowers the
+ *     average as well; {@code minDegradedMillis} keeps the mode from ending too early.</li>
+ *     <li>In degraded mode, the {@link RestExceptionHandler} renders a precomputed JSON body for clients that accept
+ *     JSON and no body at all for other clients; the response status is always set.</li>
+ * </ul>
+ */
+@ManagedResource(description = "REST error path degraded mode")
+public class DegradedModeDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(DegradedModeDetector.class);
+
+    private static final long ONE_SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double EWMA_WEIGHT = 0.1;
+
+    private long enterErrorsPerSecond = 500;
+    private long exitErrorsPerSecond = 100;
+    private long enterLatencyMillis = 0;
+    private long exitLatencyMillis = 0;
+    private long minDegradedMillis = 10000;
+
+    private final AtomicLong second = new AtomicLong(System.nanoTime() / ONE_SECOND_NANOS);
+    private final AtomicLong errorsThisSecond = new AtomicLong();
+    //Double bits of the average error latency in nanoseconds:
+    private final AtomicLong averageLatency = new AtomicLong(Double.doubleToLongBits(0));
+
+    private volatile long errorsLastSecond;
+    private volatile boolean degraded;
+    private volatile long degradedSince;
+
+    /**
+     * Returns {@code true} if the error path is currently degraded.
+     *
+     * @return {@code true} if the error path is currently degraded.
+     */
+    @ManagedAttribute(description = "Whether or not error responses are currently degraded")
+    public boolean isDegraded() {
+        return isDegraded(System.nanoTime());
+    }
+
+    boolean isDegraded(long now) {
+        if (!this.degraded) {
+            return false;
+        }
+        //errors may have stopped altogether, so degraded mode must also be able to end without recordError calls:
+        rollover(now);
+        return this.degraded;
+    }
+
+    /**
+     * Records an error that took the specified number of nanoseconds to handle.
+     *
+     * @param nanos the number of nanoseconds the error took to handle
+     */
+    public void recordError(long nanos) {
+        recordError(nanos, System.nanoTime());
+    }
+
+    void recordError(long nanos, long now) {
+        rollover(now);
+        this.errorsThisSecond.incrementAndGet();
+
+        long bits;
+        long updated;
+        do {
+            bits = this.averageLatency.get();
+            double average = Double.longBitsToDouble(bits);
+            updated = Double.doubleToLongBits(average + EWMA_WEIGHT * (nanos - average));
+        } while (!this.averageLatency.compareAndSet(bits, updated));
+    }
+
+    private void rollover(long now) {
+        long currentSecond = now / ONE_SECOND_NANOS;
+        long recordedSecond = this.second.get();
+        if (currentSecond != recordedSecond && this.second.compareAndSet(recordedSecond, currentSecond)) {
+            //only the thread that rolls the second over evaluates the state:
+            long errors = this.errorsThisSecond.getAndSet(0);
+            long elapsedSeconds = currentSecond - recordedSecond;
+            this.errorsLastSecond = elapsedSeconds == 1 ? errors : 0;
+            long idleSeconds = errors > 0 ? elapsedSeconds - 1 : elapsedSeconds;
+            if (idleSeconds > 0) {
+                decayLatency(idleSeconds);
+            }
+            evaluate(now);
+        }
+    }
+
+    /**
+     * Applies a latency sample of {@code 0} for each of the specified number of seconds without errors.
+     */
+    private void decayLatency(long idleSeconds) {
+        double factor = Math.pow(1 - EWMA_WEIGHT, idleSeconds);
+        long bits;
+        long updated;
+        do {
+            bits = this.averageLatency.get();
+            updated = Double.doubleToLongBits(Double.longBitsToDouble(bits) * factor);
+        } while (!this.averageLatency.compareAndSet(bits, updated));
+    }
+
+    private void evaluate(long now) {
+        long rate = this.errorsLastSecond;
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis((long) Double.longBitsToDouble(this.averageLatency.get()));
+        if (!this.degraded) {
+            if ((this.enterErrorsPerSecond > 0 && rate >= this.enterErrorsPerSecond) ||
+                    (this.enterLatencyMillis > 0 && latencyMillis >= this.enterLatencyMillis)) {
+                this.degradedSince = now;
+                this.degraded = true;
+                log.warn("Entering degraded error mode: " + rate + " errors/s, " + latencyMillis +
+                        " ms average error latency.");
+            }
+        } else if ((this.enterErrorsPerSecond <= 0 || rate <= this.exitErrorsPerSecond) &&
+                (this.enterLatencyMillis <= 0 || latencyMillis <= this.exitLatencyMillis) &&
+                TimeUnit.NANOSECONDS.toMillis(now - this.degradedSince) >= this.minDegradedMillis) {
+            this.degraded = false;
+            log.info("Leaving degraded error mode: " + rate + " errors/s, " + latencyMillis +
+                    " ms average error latency.");
+        }
+    }
+
+    @ManagedAttribute(description = "Errors recorded during the last complete second")
+    public long getErrorsPerSecond() {
+        return errorsLastSecond;
+    }
+
+    @ManagedAttribute(description = "Moving average of the time spent handling an error, in milliseconds")
+    public double getAverageLatencyMillis() {
+        return Double.longBitsToDouble(this.averageLatency.get()) / 1000000d;
+    }
+
+    public long getEnterErrorsPerSecond() {
+        return enterErrorsPerSecond;
+    }
+
+    /**
+     * Sets the number of errors per second at which degraded mode is entered.  This is an absolute rate, regardless of
+     * the number of requests served.  Defaults to {@code 500}.
+     *
+     * @param enterErrorsPerSecond the number of errors per second at which degraded mode is entered.
+     */
+    public void setEnterErrorsPerSecond(long enterErrorsPerSecond) {
+        this.enterErrorsPerSecond = enterErrorsPerSecond;
+    }
+
+    public long getExitErrorsPerSecond() {
+        return exitErrorsPerSecond;
+    }
+
+    /**
+     * Sets the number of errors per second at or below which degraded mode may be left.  Defaults to {@code 100}.
+     *
+     * @param exitErrorsPerSecond the number of errors per second at or below which degraded mode may be left.
+     */
+    public void setExitErrorsPerSecond(long exitErrorsPerSecond) {
+        this.exitErrorsPerSecond = exitErrorsPerSecond;
+    }
+
+    public long getEnterLatencyMillis() {
+        return enterLatencyMillis;
+    }
+
+    /**
+     * Sets the average error latency, in milliseconds, at which degraded mode is entered.  Defaults to {@code 0}
+     * (disabled).
+     *
+     * @param enterLatencyMillis the average error latency at which degraded mode is entered.
+     */
+    public void setEnterLatencyMillis(long enterLatencyMillis) {
+        this.enterLatencyMillis = enterLatencyMillis;
+    }
+
+    public long getExitLatencyMillis() {
+        return exitLatencyMillis;
+    }
+
+    /**
+     * Sets the average error latency, in milliseconds, at or below which degraded mode may be left.  Only relevant if
+     * {@link #setEnterLatencyMillis(long) enterLatencyMillis} is set.
+     *
+     * @param exitLatencyMillis the average error latency at or below which degraded mode may be left.
+     */
+    public void setExitLatencyMillis(long exitLatencyMillis) {
+        this.exitLatencyMillis = exitLatencyMillis;
+    }
+
+    public long getMinDegradedMillis() {
+        return minDegradedMillis;
+    }
+
+    /**
+     * Sets the minimum number of milliseconds degraded mode lasts once entered.  Defaults to {@code 10000}.
+     *
+     * @param minDegradedMillis the minimum number of milliseconds degraded mode lasts once entered.
+     */
+    public void setMinDegradedMillis(long minDegradedMillis) {
+        this.minDegradedMillis = minDegradedMillis;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records the outcome of every request with an {@link ErrorRateTracker}.  Requests whose errors were already recorded
+ * by the {@link RestExceptionHandler} are skipped; requests that completed with an exception no resolver handled count
+ * as {@code 500} failures, and all others count as successes.
+ * <pre>
+ * &lt;mvc:interceptors&gt;
+ *     &lt;bean class="com.stormpath.spring.web.servlet.handler.ErrorRateInterceptor"&gt;
+ *         &lt;property name="errorRateTracker" ref="errorRateTracker"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/mvc:interceptors&gt;
+ * </pre>
+ */
+public class ErrorRateInterceptor extends HandlerInterceptorAdapter implements InitializingBean {
+
+    private ErrorRateTracker errorRateTracker;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(this.errorRateTracker, "errorRateTracker property is required.");
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) throws Exception {
+        if (request.getAttribute(ErrorRateTracker.RECORDED_ATTRIBUTE) != null) {
+            return;
+        }
+        if (ex != null) {
+            this.errorRateTracker.recordFailure(handler, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } else {
+            this.errorRateTracker.recordSuccess(handler);
+        }
+    }
+
+    public ErrorRateTracker getErrorRateTracker() {
+        return errorRateTracker;
+    }
+
+    public void setErrorRateTracker(ErrorRateTracker errorRateTracker) {
+        this.errorRateTracker = errorRateTracker;
+    }
+}
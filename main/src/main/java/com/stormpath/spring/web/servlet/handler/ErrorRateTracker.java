@@ -0,0 +1,347 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks the error ratio of each handler over sliding time windows, so that components such as autoscalers or load
+ * shedders can react to an endpoint's error spike locally, without a round-trip to a metrics backend.
+ * <p/>
+ * Errors are recorded by the {@link RestExceptionHandler} (see its {@code errorRateTracker} property) and all other
+ * requests by an {@link ErrorRateInterceptor}; both must reference the same tracker.  Responses with a status below
+ * {@link #setMinErrorStatus(int) minErrorStatus} ({@code 500} by default) count as successful, since client errors
+ * typically do not consume the service's error budget.
+ * <p/>
+ * Each handler (and the aggregate of all handlers) is counted in a preallocated ring of
+ * {@link #setBucketSeconds(int) bucketSeconds}-long buckets, by default 360 buckets of 10 seconds, which supports
+ * windows of up to one hour.  Recording and querying never lock.  The
+ * {@link #getBurnRate(String, int) burn rate} is the error ratio divided by the error budget
+ * ({@code 1 - sloTarget}): a burn rate of {@code 1} consumes the budget exactly as fast as the SLO allows.
+ * <p/>
+ * If an {@code MBeanExporter} with annotation support is configured (for example via
+ * {@code <context:mbean-export/>}), the aggregate ratios and burn rates for the 1 minute, 5 minute and 1 hour windows,
+ * as well as per-handler queries, are exposed via JMX.  The configuration properties must be set before the first
+ * request is recorded.
+ */
+@ManagedResource(description = "REST error rates per handler")
+public class ErrorRateTracker {
+
+    /**
+     * Request attribute set once the current request has been recorded, to prevent it being recorded twice.
+     */
+    public static final String RECORDED_ATTRIBUTE = ErrorRateTracker.class.getName() + ".RECORDED";
+
+    public static final int ONE_MINUTE = 60;
+    public static final int FIVE_MINUTES = 5 * ONE_MINUTE;
+    public static final int ONE_HOUR = 60 * ONE_MINUTE;
+
+    static final String ALL_HANDLERS = "*";
+    static final String NO_HANDLER = "(none)";
+    static final String OTHER_HANDLERS = "(other)";
+
+    private int bucketSeconds = 10;
+    private int buckets = ONE_HOUR / 10;
+    private double sloTarget = 0.999;
+    private int minErrorStatus = 500;
+    private int maxHandlers = 1024;
+
+    private final AtomicReference<SlidingWindowCounter> all = new AtomicReference<SlidingWindowCounter>();
+
+    //keyed by HandlerMethod.getMethod() (or the Method itself) or handler class:
+    private final ConcurrentMap<Object, SlidingWindowCounter> handlerCounters =
+            new ConcurrentHashMap<Object, SlidingWindowCounter>();
+    private final ConcurrentMap<String, SlidingWindowCounter> namedCounters =
+            new ConcurrentHashMap<String, SlidingWindowCounter>();
+
+    /**
+     * Records a successful request for the specified handler.
+     *
+     * @param handler the executed handler (a {@code HandlerMethod}, the handler method's {@code java.lang.reflect.Method}
+     *                or a handler object), may be {@code null}
+     */
+    public void recordSuccess(Object handler) {
+        record(handler, false);
+    }
+
+    /**
+     * Records a failed request for the specified handler.  The failure counts as an error only if {@code status} is at
+     * least {@link #setMinErrorStatus(int) minErrorStatus}.
+     *
+     * @param handler the executed handler (a {@code HandlerMethod}, the handler method's {@code java.lang.reflect.Method}
+     *                or a handler object), may be {@code null}
+     * @param status  the response status
+     */
+    public void recordFailure(Object handler, int status) {
+        record(handler, status >= this.minErrorStatus);
+    }
+
+    private void record(Object handler, boolean error) {
+        long now = System.currentTimeMillis();
+        getCounter(handler).record(error, now);
+        getAllCounter().record(error, now);
+    }
+
+    private SlidingWindowCounter getAllCounter() {
+        SlidingWindowCounter counter = this.all.get();
+        if (counter == null) {
+            counter = createCounter();
+            if (!this.all.compareAndSet(null, counter)) {
+                counter = this.all.get();
+            }
+        }
+        return counter;
+    }
+
+    private SlidingWindowCounter getCounter(Object handler) {
+        Object key = handler instanceof HandlerMethod ? ((HandlerMethod) handler).getMethod() :
+                handler instanceof Method ? handler :
+                handler != null ? ClassUtils.getUserClass(handler) : NO_HANDLER;
+        SlidingWindowCounter counter = this.handlerCounters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        String name = toName(handler);
+        if (this.handlerCounters.size() >= this.maxHandlers) {
+            name = OTHER_HANDLERS;
+        }
+        counter = this.namedCounters.get(name);
+        if (counter == null) {
+            counter = createCounter();
+            SlidingWindowCounter existing = this.namedCounters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        if (!OTHER_HANDLERS.equals(name)) {
+            this.handlerCounters.putIfAbsent(key, counter);
+        }
+        return counter;
+    }
+
+    private SlidingWindowCounter createCounter() {
+        return new SlidingWindowCounter(this.bucketSeconds * 1000L, this.buckets);
+    }
+
+    /**
+     * Returns the name the specified handler's counts are reported under, for example {@code UserController#getUser}.
+     *
+     * @param handler the handler, may be {@code null}
+     * @return the name the specified handler's counts are reported under.
+     */
+    protected String toName(Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            return ClassUtils.getShortName(ClassUtils.getUserClass(handlerMethod.getBeanType())) + "#" +
+                    handlerMethod.getMethod().getName();
+        }
+        if (handler instanceof Method) {
+            Method method = (Method) handler;
+            return ClassUtils.getShortName(method.getDeclaringClass()) + "#" + method.getName();
+        }
+        return handler != null ? ClassUtils.getShortName(ClassUtils.getUserClass(handler)) : NO_HANDLER;
+    }
+
+    private long[] getCounts(String handlerName, int windowSeconds) {
+        SlidingWindowCounter counter = handlerName == null || ALL_HANDLERS.equals(handlerName) ?
+                this.all.get() : this.namedCounters.get(handlerName);
+        if (counter == null) {
+            return new long[]{0, 0};
+        }
+        return counter.getCounts(windowSeconds * 1000L, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the number of requests recorded for the specified handler within the specified window.
+     *
+     * @param handlerName   the handler name as returned by {@link #getHandlerNames()}, or {@code null} for all handlers
+     * @param windowSeconds the window size in seconds, at most {@code buckets * bucketSeconds}
+     * @return the number of requests recorded within the window
+     */
+    public long getRequestCount(String handlerName, int windowSeconds) {
+        long[] counts = getCounts(handlerName, windowSeconds);
+        return counts[0] + counts[1];
+    }
+
+    /**
+     * Returns the number of errors recorded for the specified handler within the specified window.
+     *
+     * @param handlerName   the handler name as returned by {@link #getHandlerNames()}, or {@code null} for all handlers
+     * @param windowSeconds the window size in seconds, at most {@code buckets * bucketSeconds}
+     * @return the number of errors recorded within the window
+     */
+    public long getErrorCount(String handlerName, int windowSeconds) {
+        return getCounts(handlerName, windowSeconds)[1];
+    }
+
+    /**
+     * Returns the ratio of errors to requests for the specified handler within the specified window, or {@code 0} if
+     * no requests were recorded.
+     *
+     * @param handlerName   the handler name as returned by {@link #getHandlerNames()}, or {@code null} for all handlers
+     * @param windowSeconds the window size in seconds, at most {@code buckets * bucketSeconds}
+     * @return the error ratio, between {@code 0} and {@code 1}
+     */
+    @ManagedOperation(description = "Error ratio of a handler ('*' for all) over the specified number of seconds")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "handlerName", description = "Handler name, or '*' for all handlers"),
+            @ManagedOperationParameter(name = "windowSeconds", description = "Window size in seconds")
+    })
+    public double getErrorRatio(String handlerName, int windowSeconds) {
+        long[] counts = getCounts(handlerName, windowSeconds);
+        long total = counts[0] + counts[1];
+        return total > 0 ? (double) counts[1] / total : 0;
+    }
+
+    /**
+     * Returns the rate at which the specified handler consumed its error budget within the specified window: the
+     * error ratio divided by {@code 1 - sloTarget}.
+     *
+     * @param handlerName   the handler name as returned by {@link #getHandlerNames()}, or {@code null} for all handlers
+     * @param windowSeconds the window size in seconds, at most {@code buckets * bucketSeconds}
+     * @return the error budget burn rate
+     */
+    @ManagedOperation(description = "Error budget burn rate of a handler ('*' for all) over the specified number of seconds")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "handlerName", description = "Handler name, or '*' for all handlers"),
+            @ManagedOperationParameter(name = "windowSeconds", description = "Window size in seconds")
+    })
+    public double getBurnRate(String handlerName, int windowSeconds) {
+        return getErrorRatio(handlerName, windowSeconds) / (1 - this.sloTarget);
+    }
+
+    @ManagedAttribute(description = "Names of the tracked handlers")
+    public String[] getHandlerNames() {
+        Set<String> names = new TreeSet<String>(this.namedCounters.keySet());
+        return names.toArray(new String[names.size()]);
+    }
+
+    @ManagedAttribute(description = "Error ratio of all handlers over the last minute")
+    public double getErrorRatio1m() {
+        return getErrorRatio(null, ONE_MINUTE);
+    }
+
+    @ManagedAttribute(description = "Error ratio of all handlers over the last 5 minutes")
+    public double getErrorRatio5m() {
+        return getErrorRatio(null, FIVE_MINUTES);
+    }
+
+    @ManagedAttribute(description = "Error ratio of all handlers over the last hour")
+    public double getErrorRatio1h() {
+        return getErrorRatio(null, ONE_HOUR);
+    }
+
+    @ManagedAttribute(description = "Error budget burn rate of all handlers over the last minute")
+    public double getBurnRate1m() {
+        return getBurnRate(null, ONE_MINUTE);
+    }
+
+    @ManagedAttribute(description = "Error budget burn rate of all handlers over the last 5 minutes")
+    public double getBurnRate5m() {
+        return getBurnRate(null, FIVE_MINUTES);
+    }
+
+    @ManagedAttribute(description = "Error budget burn rate of all handlers over the last hour")
+    public double getBurnRate1h() {
+        return getBurnRate(null, ONE_HOUR);
+    }
+
+    public int getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * Sets the duration of each time bucket, in seconds.  Defaults to {@code 10}.
+     *
+     * @param bucketSeconds the duration of each time bucket, in seconds.
+     */
+    public void setBucketSeconds(int bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Sets the number of time buckets kept per handler.  The longest supported window is
+     * {@code buckets * bucketSeconds}.  Defaults to {@code 360} (one hour of 10 second buckets).
+     *
+     * @param buckets the number of time buckets kept per handler.
+     */
+    public void setBuckets(int buckets) {
+        this.buckets = buckets;
+    }
+
+    @ManagedAttribute(description = "Target ratio of successful requests")
+    public double getSloTarget() {
+        return sloTarget;
+    }
+
+    /**
+     * Sets the target ratio of successful requests, for example {@code 0.999}, used to compute burn rates.  Defaults
+     * to {@code 0.999}.
+     *
+     * @param sloTarget the target ratio of successful requests, greater than or equal to {@code 0} and less than
+     *                  {@code 1}
+     */
+    public void setSloTarget(double sloTarget) {
+        if (sloTarget < 0 || sloTarget >= 1) {
+            throw new IllegalArgumentException("sloTarget must be >= 0 and < 1.");
+        }
+        this.sloTarget = sloTarget;
+    }
+
+    public int getMinErrorStatus() {
+        return minErrorStatus;
+    }
+
+    /**
+     * Sets the lowest response status counted as an error.  Defaults to {@code 500}.
+     *
+     * @param minErrorStatus the lowest response status counted as an error.
+     */
+    public void setMinErrorStatus(int minErrorStatus) {
+        this.minErrorStatus = minErrorStatus;
+    }
+
+    public int getMaxHandlers() {
+        return maxHandlers;
+    }
+
+    /**
+     * Sets the maximum number of handlers tracked individually; any others are counted together under
+     * {@code (other)}.  Defaults to {@code 1024}.
+     *
+     * @param maxHandlers the maximum number of handlers tracked individually.
+     */
+    public void setMaxHandlers(int maxHandlers) {
+        this.maxHandlers = maxHandlers;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads JavaBeans properties from exceptions for {@link MessageTemplate} rendering.  The readable properties of each
+ * exception class are introspected once and their accessor {@link Method}s are cached, so rendering a template only
+ * costs a map lookup and a method invocation per placeholder.
+ */
+final class ExceptionPropertyAccessor {
+
+    private final ConcurrentMap<Class<?>, Map<String, Method>> accessors =
+            new ConcurrentHashMap<Class<?>, Map<String, Method>>();
+
+    /**
+     * Returns the value of the specified property, or {@code null} if the property does not exist or is not readable.
+     * Use {@link #isReadable(Class, String)} to distinguish between the two.
+     */
+    Object getValue(Object source, String property) {
+        Method method = getAccessors(source.getClass()).get(property);
+        return method != null ? ReflectionUtils.invokeMethod(method, source) : null;
+    }
+
+    boolean isReadable(Class<?> clazz, String property) {
+        return getAccessors(clazz).containsKey(property);
+    }
+
+    private Map<String, Method> getAccessors(Class<?> clazz) {
+        Map<String, Method> methods = this.accessors.get(clazz);
+        if (methods == null) {
+            methods = introspect(clazz);
+            Map<String, Method> existing = this.accessors.putIfAbsent(clazz, methods);
+            if (existing != null) {
+                methods = existing;
+            }
+        }
+        return methods;
+    }
+
+    private static Map<String, Method> introspect(Class<?> clazz) {
+        PropertyDescriptor[] descriptors = BeanUtils.getPropertyDescriptors(clazz);
+        Map<String, Method> methods = new HashMap<String, Method>(descriptors.length * 2);
+        for (PropertyDescriptor descriptor : descriptors) {
+            Method readMethod = descriptor.getReadMethod();
+            if (readMethod != null) {
+                ReflectionUtils.makeAccessible(readMethod);
+                methods.put(descriptor.getName(), readMethod);
+            }
+        }
+        return Collections.unmodifiableMap(methods);
+    }
+}
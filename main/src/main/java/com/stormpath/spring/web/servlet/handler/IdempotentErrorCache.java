@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores rendered error responses per idempotency key, so retries of a request that failed deterministically (for
+ * example with a {@code 409} or {@code 422}) can be answered without running the failing operation again.
+ * <p/>
+ * When a request carrying an {@link #setHeaderName(String) Idempotency-Key} header fails with one of the
+ * {@link #setReplayableStatuses(java.util.Set) replayable statuses}, the {@link RestExceptionHandler} configured with
+ * this cache renders the error into a buffer and stores its status, headers and body.  An
+ * {@link IdempotentErrorReplayInterceptor} then replays the stored response for retries before the handler is invoked.
+ * Entries are keyed by the request method, URI, authenticated principal and idempotency key, expire after
+ * {@link #setTimeToLiveSeconds(long) timeToLiveSeconds} and at most {@link #setMaxEntries(int) maxEntries} are kept;
+ * errors are not stored while the cache is full of unexpired entries.  Bodies too large for the handler's
+ * {@link BufferPool} are not stored either.
+ */
+public class IdempotentErrorCache {
+
+    public static final String DEFAULT_HEADER_NAME = "Idempotency-Key";
+
+    /**
+     * Response header added to replayed responses.
+     */
+    public static final String REPLAYED_HEADER_NAME = "Idempotent-Replayed";
+
+    private static final int[] DEFAULT_REPLAYABLE_STATUSES = {400, 404, 409, 410, 422};
+
+    private String headerName = DEFAULT_HEADER_NAME;
+    //indexed by status code:
+    private boolean[] replayable = new boolean[600];
+    private int maxEntries = 10000;
+    private long timeToLiveSeconds = 3600;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicBoolean purging = new AtomicBoolean();
+
+    public IdempotentErrorCache() {
+        for (int status : DEFAULT_REPLAYABLE_STATUSES) {
+            this.replayable[status] = true;
+        }
+    }
+
+    /**
+     * Returns the cache key for the specified request, or {@code null} if it has no idempotency key.
+     *
+     * @param request the current request
+     * @return the cache key for the specified request, or {@code null} if it has no idempotency key.
+     */
+    protected String getKey(HttpServletRequest request) {
+        String idempotencyKey = request.getHeader(this.headerName);
+        if (!StringUtils.hasText(idempotencyKey)) {
+            return null;
+        }
+        Principal principal = request.getUserPrincipal();
+        //header values and URIs cannot contain line breaks, so the parts cannot run into each other:
+        return new StringBuilder(128).append(request.getMethod()).append('\n')
+                .append(request.getRequestURI()).append('\n')
+                .append(principal != null ? principal.getName() : "").append('\n')
+                .append(idempotencyKey).toString();
+    }
+
+    /**
+     * Returns {@code true} if the response for the specified error should be stored for the specified request.
+     *
+     * @param request the current request
+     * @param error   the resolved error
+     * @return {@code true} if the response for the specified error should be stored.
+     */
+    boolean isStorable(HttpServletRequest request, RestError error) {
+        int status = error.getStatus().value();
+        return status < this.replayable.length && this.replayable[status] &&
+                request.getHeader(this.headerName) != null;
+    }
+
+    /**
+     * Stores a rendered error response for the specified request.
+     */
+    void store(HttpServletRequest request, RestError error, HttpHeaders headers, byte[] body) {
+        String key = getKey(request);
+        if (key == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (this.entries.size() >= this.maxEntries) {
+            purgeExpired(now);
+            if (this.entries.size() >= this.maxEntries) {
+                return;
+            }
+        }
+        long expires = now + TimeUnit.SECONDS.toNanos(this.timeToLiveSeconds);
+        this.entries.put(key, new Entry(error.getStatus().value(), error.getMaxAge(), error.getRetryAfter(),
+                copy(headers), body, expires));
+    }
+
+    /**
+     * Writes the stored error response for the specified request, if there is one.
+     *
+     * @param request  the current request
+     * @param response the current response
+     * @return {@code true} if a stored response was written, {@code false} otherwise.
+     * @throws IOException if the response could not be written
+     */
+    public boolean replay(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (this.entries.isEmpty()) {
+            return false;
+        }
+        String key = getKey(request);
+        if (key == null) {
+            return false;
+        }
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (System.nanoTime() - entry.expires >= 0) {
+            this.entries.remove(key, entry);
+            return false;
+        }
+
+        response.setStatus(entry.status);
+        RestExceptionHandler.applyCacheHeaders(response, entry.maxAge, entry.retryAfter);
+        for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+            String name = header.getKey();
+            if ("Content-Length".equalsIgnoreCase(name) || "Content-Type".equalsIgnoreCase(name)) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                response.addHeader(name, value);
+            }
+        }
+        if (entry.headers.getContentType() != null) {
+            response.setContentType(entry.headers.getContentType().toString());
+        }
+        response.setHeader(REPLAYED_HEADER_NAME, "true");
+        response.setContentLength(entry.body.length);
+        response.getOutputStream().write(entry.body);
+        return true;
+    }
+
+    /**
+     * Removes all stored responses.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Returns the number of stored responses, including expired ones that were not purged yet.
+     *
+     * @return the number of stored responses.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    private void purgeExpired(long now) {
+        //a single thread purges at a time, the others don't wait for it:
+        if (!this.purging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Iterator<Entry> i = this.entries.values().iterator(); i.hasNext(); ) {
+                if (now - i.next().expires >= 0) {
+                    i.remove();
+                }
+            }
+        } finally {
+            this.purging.set(false);
+        }
+    }
+
+    private static HttpHeaders copy(HttpHeaders headers) {
+        HttpHeaders copy = new HttpHeaders();
+        copy.putAll(headers);
+        return copy;
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * Sets the name of the request header carrying the idempotency key.  Defaults to {@code Idempotency-Key}.
+     *
+     * @param headerName the name of the request header carrying the idempotency key.
+     */
+    public void setHeaderName(String headerName) {
+        this.headerName = headerName;
+    }
+
+    /**
+     * Sets the statuses of errors that are deterministic, i.e. would fail the same way again, and may therefore be
+     * replayed.  Defaults to {@code 400}, {@code 404}, {@code 409}, {@code 410} and {@code 422}.  Transient or
+     * credential dependent statuses such as {@code 401}, {@code 408}, {@code 429} or any {@code 5xx} should not be
+     * included.
+     *
+     * @param replayableStatuses the statuses of errors that may be replayed.
+     */
+    public void setReplayableStatuses(Set<Integer> replayableStatuses) {
+        boolean[] replayable = new boolean[600];
+        if (replayableStatuses != null) {
+            for (Integer status : replayableStatuses) {
+                if (status < 0 || status >= replayable.length) {
+                    throw new IllegalArgumentException("Invalid HTTP status [" + status + "].");
+                }
+                replayable[status] = true;
+            }
+        }
+        this.replayable = replayable;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of stored responses.  Defaults to {@code 10000}.
+     *
+     * @param maxEntries the maximum number of stored responses.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    /**
+     * Sets the number of seconds a stored response may be replayed for.  Defaults to {@code 3600}.
+     *
+     * @param timeToLiveSeconds the number of seconds a stored response may be replayed for.
+     */
+    public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    private static final class Entry {
+
+        private final int status;
+        private final int maxAge;
+        private final int retryAfter;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final long expires;
+
+        Entry(int status, int maxAge, int retryAfter, HttpHeaders headers, byte[] body, long expires) {
+            this.status = status;
+            this.maxAge = maxAge;
+            this.retryAfter = retryAfter;
+            this.headers = headers;
+            this.body = body;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Replays error responses stored in an {@link IdempotentErrorCache} for retried requests, before the handler is
+ * invoked.  The same cache must be set as the {@link RestExceptionHandler}'s
+ * {@link RestExceptionHandler#setIdempotentErrorCache(IdempotentErrorCache) idempotentErrorCache}.
+ * <pre>
+ * &lt;mvc:interceptors&gt;
+ *     &lt;bean class="com.stormpath.spring.web.servlet.handler.IdempotentErrorReplayInterceptor"&gt;
+ *         &lt;property name="idempotentErrorCache" ref="idempotentErrorCache"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/mvc:interceptors&gt;
+ * </pre>
+ */
+public class IdempotentErrorReplayInterceptor extends HandlerInterceptorAdapter implements InitializingBean {
+
+    private IdempotentErrorCache idempotentErrorCache;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(this.idempotentErrorCache, "idempotentErrorCache property is required.");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        return !this.idempotentErrorCache.replay(request, response);
+    }
+
+    public IdempotentErrorCache getIdempotentErrorCache() {
+        return idempotentErrorCache;
+    }
+
+    public void setIdempotentErrorCache(IdempotentErrorCache idempotentErrorCache) {
+        this.idempotentErrorCache = idempotentErrorCache;
+    }
+}
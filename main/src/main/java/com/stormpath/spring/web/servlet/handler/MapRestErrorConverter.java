@@ -60,10 +60,15 @@ import java.util.Map;
  * </table>
  * <p/>
  * The map key names are customizable via setter methods (setStatusKey, setMessageKey, etc).
+ * <p/>
+ * Every entry except {@code status} can be excluded (setIncludeCode, setIncludeMessage, etc), for example to give
+ * public clients a less verbose representation than internal callers.  Excluded {@code RestError} properties are never
+ * read, so if the {@code RestError} computes them lazily (as those created by {@link DefaultRestErrorResolver} do),
+ * they are never computed at all.
  *
  * @author Les Hazlewood
  */
-public class MapRestErrorConverter implements RestErrorConverter<Map> {
+public class MapRestErrorConverter implements RestErrorConverter<Map<String, Object>> {
 
     private static final String DEFAULT_STATUS_KEY = "status";
     private static final String DEFAULT_CODE_KEY = "code";
@@ -77,30 +82,43 @@ public class MapRestErrorConverter implements RestErrorConverter<Map> {
     private String developerMessageKey = DEFAULT_DEVELOPER_MESSAGE_KEY;
     private String moreInfoUrlKey = DEFAULT_MORE_INFO_URL_KEY;
 
+    private boolean includeCode = true;
+    private boolean includeMessage = true;
+    private boolean includeDeveloperMessage = true;
+    private boolean includeMoreInfoUrl = true;
+
     @Override
-    public Map convert(RestError re) {
+    public Map<String, Object> convert(RestError re) {
         Map<String, Object> m = createMap();
         HttpStatus status = re.getStatus();
         m.put(getStatusKey(), status.value());
 
-        int code = re.getCode();
-        if (code > 0) {
-            m.put(getCodeKey(), code);
+        if (includeCode) {
+            int code = re.getCode();
+            if (code > 0) {
+                m.put(getCodeKey(), code);
+            }
         }
 
-        String message = re.getMessage();
-        if (message != null) {
-            m.put(getMessageKey(), message);
+        if (includeMessage) {
+            String message = re.getMessage();
+            if (message != null) {
+                m.put(getMessageKey(), message);
+            }
         }
 
-        String devMsg = re.getDeveloperMessage();
-        if (devMsg != null) {
-            m.put(getDeveloperMessageKey(), devMsg);
+        if (includeDeveloperMessage) {
+            String devMsg = re.getDeveloperMessage();
+            if (devMsg != null) {
+                m.put(getDeveloperMessageKey(), devMsg);
+            }
         }
 
-        String moreInfoUrl = re.getMoreInfoUrl();
-        if (moreInfoUrl != null) {
-            m.put(getMoreInfoUrlKey(), moreInfoUrl);
+        if (includeMoreInfoUrl) {
+            String moreInfoUrl = re.getMoreInfoUrl();
+            if (moreInfoUrl != null) {
+                m.put(getMoreInfoUrlKey(), moreInfoUrl);
+            }
         }
 
         return m;
@@ -149,4 +167,36 @@ public class MapRestErrorConverter implements RestErrorConverter<Map> {
     public void setMoreInfoUrlKey(String moreInfoUrlKey) {
         this.moreInfoUrlKey = moreInfoUrlKey;
     }
+
+    public boolean isIncludeCode() {
+        return includeCode;
+    }
+
+    public void setIncludeCode(boolean includeCode) {
+        this.includeCode = includeCode;
+    }
+
+    public boolean isIncludeMessage() {
+        return includeMessage;
+    }
+
+    public void setIncludeMessage(boolean includeMessage) {
+        this.includeMessage = includeMessage;
+    }
+
+    public boolean isIncludeDeveloperMessage() {
+        return includeDeveloperMessage;
+    }
+
+    public void setIncludeDeveloperMessage(boolean includeDeveloperMessage) {
+        this.includeDeveloperMessage = includeDeveloperMessage;
+    }
+
+    public boolean isIncludeMoreInfoUrl() {
+        return includeMoreInfoUrl;
+    }
+
+    public void setIncludeMoreInfoUrl(boolean includeMoreInfoUrl) {
+        this.includeMoreInfoUrl = includeMoreInfoUrl;
+    }
 }
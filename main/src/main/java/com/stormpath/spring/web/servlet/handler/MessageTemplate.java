@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A precompiled message pattern such as {@code "User {username} not found"}.  Each {@code {name}} placeholder is
+ * replaced at render time with the value of the corresponding property of a source object (typically the exception
+ * being resolved).  Placeholders that do not start with a Java identifier character, such as {@code {0}}, are
+ * retained as literal text.
+ * <p/>
+ * Instances are immutable and thread-safe.
+ */
+final class MessageTemplate {
+
+    private final String pattern;
+    private final String[] literals; //literals[i] precedes properties[i]; the last literal trails all properties
+    private final String[] properties;
+
+    private MessageTemplate(String pattern, String[] literals, String[] properties) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.properties = properties;
+    }
+
+    static MessageTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<String> properties = new ArrayList<String>();
+
+        StringBuilder literal = new StringBuilder();
+        int length = pattern.length();
+        int i = 0;
+        while (i < length) {
+            char c = pattern.charAt(i);
+            int end = c == '{' ? getPlaceholderEnd(pattern, i) : -1;
+            if (end > 0) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                properties.add(pattern.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(pattern, literals.toArray(new String[literals.size()]),
+                properties.toArray(new String[properties.size()]));
+    }
+
+    private static int getPlaceholderEnd(String pattern, int start) {
+        int i = start + 1;
+        if (i >= pattern.length() || !Character.isJavaIdentifierStart(pattern.charAt(i))) {
+            return -1;
+        }
+        for (i++; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '}') {
+                return i;
+            }
+            if (!Character.isJavaIdentifierPart(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    boolean isLiteral() {
+        return this.properties.length == 0;
+    }
+
+    String render(Object source, ExceptionPropertyAccessor accessor) {
+        if (isLiteral()) {
+            return this.pattern;
+        }
+        StringBuilder sb = new StringBuilder(this.pattern.length() + 16 * this.properties.length);
+        for (int i = 0; i < this.properties.length; i++) {
+            sb.append(this.literals[i]);
+            String property = this.properties[i];
+            if (accessor.isReadable(source.getClass(), property)) {
+                sb.append(accessor.getValue(source, property));
+            } else {
+                //leave unknown placeholders visible to make misconfigurations obvious:
+                sb.append('{').append(property).append('}');
+            }
+        }
+        sb.append(this.literals[this.properties.length]);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+}
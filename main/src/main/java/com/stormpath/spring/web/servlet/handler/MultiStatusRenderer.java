@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Renders {@code 207 Multi-Status} JSON responses for bulk operations in which individual items may fail without
+ * failing the entire request.  Item failures are resolved with the {@link RestExceptionHandler}'s
+ * {@link RestErrorResolver} and {@link RestErrorConverter}, exactly like a failed single-item request.
+ * <p/>
+ * Items are streamed to the response as they are reported, so memory use does not grow with the size of the batch:
+ * <pre>
+ * &#64;RequestMapping(value = "/users", method = POST)
+ * public void importUsers(&#64;RequestBody List&lt;User&gt; users, HttpServletRequest request,
+ *                         HttpServletResponse response) throws IOException {
+ *     MultiStatusWriter writer = multiStatusRenderer.open(new ServletWebRequest(request, response), this);
+ *     try {
+ *         for (User user : users) {
+ *             try {
+ *                 userService.create(user);
+ *                 writer.success(user.getUsername(), 201);
+ *             } catch (Exception e) {
+ *                 writer.failure(user.getUsername(), e);
+ *             }
+ *         }
+ *     } finally {
+ *         writer.close();
+ *     }
+ * }
+ * </pre>
+ * produces:
+ * <pre>
+ * {"status":207,"items":[{"id":"jsmith","status":201},{"id":"djones","status":409,"code":409,"message":"..."}],
+ *  "succeeded":1,"failed":1}
+ * </pre>
+ * If the {@link RestErrorConverter} does not produce a {@code Map}, a failed item carries its status and the
+ * converted error under the {@link #setErrorKey(String) errorKey} instead.
+ * <p/>
+ * This class requires Jackson on the classpath.
+ *
+ * @see MultiStatusWriter
+ */
+public class MultiStatusRenderer implements InitializingBean {
+
+    private static final String DEFAULT_STATUS_KEY = "status";
+    private static final String DEFAULT_ITEMS_KEY = "items";
+    private static final String DEFAULT_ID_KEY = "id";
+    private static final String DEFAULT_SUCCEEDED_KEY = "succeeded";
+    private static final String DEFAULT_FAILED_KEY = "failed";
+    private static final String DEFAULT_ERROR_KEY = "error";
+
+    private RestExceptionHandler exceptionHandler;
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private String statusKey = DEFAULT_STATUS_KEY;
+    private String itemsKey = DEFAULT_ITEMS_KEY;
+    private String idKey = DEFAULT_ID_KEY;
+    private String succeededKey = DEFAULT_SUCCEEDED_KEY;
+    private String failedKey = DEFAULT_FAILED_KEY;
+    private String errorKey = DEFAULT_ERROR_KEY;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(this.exceptionHandler, "exceptionHandler property is required.");
+    }
+
+    /**
+     * Starts a {@code 207 Multi-Status} response and returns the writer used to report each item's outcome.  The
+     * writer must be {@link MultiStatusWriter#close() closed} once all items have been reported.
+     *
+     * @param webRequest the current request/response pair
+     * @param handler    the handler processing the batch (used to apply handler-specific exception mappings), may be
+     *                   {@code null}
+     * @return the writer used to report each item's outcome
+     * @throws IOException if the response could not be started
+     */
+    public MultiStatusWriter open(ServletWebRequest webRequest, Object handler) throws IOException {
+        HttpServletResponse response = webRequest.getResponse();
+        response.setStatus(HttpStatus.MULTI_STATUS.value());
+        response.setContentType("application/json;charset=UTF-8");
+
+        JsonGenerator generator = this.objectMapper.getJsonFactory()
+                .createJsonGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeNumberField(this.statusKey, HttpStatus.MULTI_STATUS.value());
+        generator.writeArrayFieldStart(this.itemsKey);
+
+        return new MultiStatusWriter(this, generator, webRequest, handler);
+    }
+
+    public RestExceptionHandler getExceptionHandler() {
+        return exceptionHandler;
+    }
+
+    public void setExceptionHandler(RestExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        Assert.notNull(objectMapper, "'objectMapper' must not be null");
+        this.objectMapper = objectMapper;
+    }
+
+    public String getStatusKey() {
+        return statusKey;
+    }
+
+    public void setStatusKey(String statusKey) {
+        this.statusKey = statusKey;
+    }
+
+    public String getItemsKey() {
+        return itemsKey;
+    }
+
+    public void setItemsKey(String itemsKey) {
+        this.itemsKey = itemsKey;
+    }
+
+    public String getIdKey() {
+        return idKey;
+    }
+
+    public void setIdKey(String idKey) {
+        this.idKey = idKey;
+    }
+
+    public String getSucceededKey() {
+        return succeededKey;
+    }
+
+    public void setSucceededKey(String succeededKey) {
+        this.succeededKey = succeededKey;
+    }
+
+    public String getFailedKey() {
+        return failedKey;
+    }
+
+    public void setFailedKey(String failedKey) {
+        this.failedKey = failedKey;
+    }
+
+    public String getErrorKey() {
+        return errorKey;
+    }
+
+    public void setErrorKey(String errorKey) {
+        this.errorKey = errorKey;
+    }
+}
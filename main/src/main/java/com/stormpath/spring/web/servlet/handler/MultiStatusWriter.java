@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams the per-item results of a bulk operation as part of a {@code 207 Multi-Status} response.  Instances are
+ * obtained from {@link MultiStatusRenderer#open(ServletWebRequest, Object)} and are not thread-safe.
+ * <p/>
+ * Each reported item is written to the response immediately.  Failures are resolved with the configured
+ * {@link RestErrorResolver}; when it is a {@link DefaultRestErrorResolver}, the exception mapping lookup is performed
+ * only once per exception class for the whole batch.  Its {@link RestErrorListener} is still notified of every resolved
+ * failure.
+ */
+public class MultiStatusWriter {
+
+    private final MultiStatusRenderer renderer;
+    private final JsonGenerator generator;
+    private final ServletWebRequest webRequest;
+    private final Object handler;
+
+    //batch-local template cache - RestExceptions carry their own template and exceptions caused by a SQLException may
+    //be resolved by their SQLState, so neither is cached:
+    private final Map<Class<?>, CachedTemplate> templates = new HashMap<Class<?>, CachedTemplate>();
+
+    private int succeeded;
+    private int failed;
+    private boolean closed;
+
+    MultiStatusWriter(MultiStatusRenderer renderer, JsonGenerator generator, ServletWebRequest webRequest,
+                      Object handler) {
+        this.renderer = renderer;
+        this.generator = generator;
+        this.webRequest = webRequest;
+        this.handler = handler;
+    }
+
+    /**
+     * Reports an item that was processed successfully with a {@code 200 OK} status.
+     *
+     * @param id the item identifier
+     * @throws IOException if the item could not be written
+     */
+    public void success(Object id) throws IOException {
+        success(id, HttpStatus.OK.value());
+    }
+
+    /**
+     * Reports an item that was processed successfully with the specified status.
+     *
+     * @param id     the item identifier
+     * @param status the item status, for example {@code 201}
+     * @throws IOException if the item could not be written
+     */
+    public void success(Object id, int status) throws IOException {
+        assertOpen();
+        this.generator.writeStartObject();
+        this.generator.writeObjectField(this.renderer.getIdKey(), id);
+        this.generator.writeNumberField(this.renderer.getStatusKey(), status);
+        this.generator.writeEndObject();
+        this.succeeded++;
+    }
+
+    /**
+     * Reports an item that failed with the specified exception.  The exception is resolved to a {@link RestError} and
+     * converted exactly as the {@link RestExceptionHandler} would for a single failed request.
+     *
+     * @param id the item identifier
+     * @param ex the exception that caused the item to fail
+     * @throws IOException if the item could not be written
+     */
+    public void failure(Object id, Exception ex) throws IOException {
+        assertOpen();
+        RestError error = resolveError(ex);
+        if (error == null) {
+            error = new RestError.Builder().setStatus(HttpStatus.INTERNAL_SERVER_ERROR).setThrowable(ex).build();
+        }
+        failure(id, error);
+    }
+
+    /**
+     * Reports an item that failed with the specified, already resolved, {@link RestError}.
+     *
+     * @param id    the item identifier
+     * @param error the error describing the item failure
+     * @throws IOException if the item could not be written
+     */
+    public void failure(Object id, RestError error) throws IOException {
+        assertOpen();
+        Object body = error;
+        RestErrorConverter<?> converter = this.renderer.getExceptionHandler().getErrorConverter(this.webRequest);
+        if (converter != null) {
+            body = converter.convert(error);
+        }
+
+        this.generator.writeStartObject();
+        this.generator.writeObjectField(this.renderer.getIdKey(), id);
+        if (body instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) body).entrySet()) {
+                this.generator.writeObjectField(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        } else {
+            this.generator.writeNumberField(this.renderer.getStatusKey(), error.getStatus().value());
+            this.generator.writeObjectField(this.renderer.getErrorKey(), body);
+        }
+        this.generator.writeEndObject();
+        this.failed++;
+    }
+
+    private RestError resolveError(Exception ex) {
+        RestErrorResolver resolver = this.renderer.getExceptionHandler().getErrorResolver();
+        if (!(resolver instanceof DefaultRestErrorResolver) || ex instanceof RestException) {
+            return resolver.resolveError(this.webRequest, this.handler, ex);
+        }
+
+        DefaultRestErrorResolver defaultResolver = (DefaultRestErrorResolver) resolver;
+        if (defaultResolver.isSqlMappingCandidate(ex)) {
+            //SQLState and vendor code mappings depend on the cause, not only the exception class:
+            return defaultResolver.resolveError(this.webRequest, this.handler, ex);
+        }
+        long start = System.nanoTime();
+        Class<?> exceptionClass = ex.getClass();
+        CachedTemplate cached = this.templates.get(exceptionClass);
+        if (cached == null) {
+            String[] mappingKey = new String[1];
+            RestError template = defaultResolver.lookUpTemplate(this.handler, ex, mappingKey);
+            cached = new CachedTemplate(template, mappingKey[0]);
+            this.templates.put(exceptionClass, cached);
+        }
+        return defaultResolver.resolveTemplate(this.webRequest, ex, cached.template, cached.mappingKey, start);
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Completes the response.  Calling this method more than once has no effect.
+     *
+     * @throws IOException if the response could not be completed
+     */
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.generator.writeEndArray();
+        this.generator.writeNumberField(this.renderer.getSucceededKey(), this.succeeded);
+        this.generator.writeNumberField(this.renderer.getFailedKey(), this.failed);
+        this.generator.writeEndObject();
+        this.generator.close();
+    }
+
+    /**
+     * The template of an exception class and the key of the mapping it was found by, both possibly {@code null}.
+     */
+    private static final class CachedTemplate {
+
+        private final RestError template;
+        private final String mappingKey;
+
+        private CachedTemplate(RestError template, String mappingKey) {
+            this.template = template;
+            this.mappingKey = mappingKey;
+        }
+    }
+
+    private void assertOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("This MultiStatusWriter has already been closed.");
+        }
+    }
+}
@@ -19,35 +19,66 @@ import org.springframework.http.HttpStatus;
 import org.springframework.util.ObjectUtils;
 
 /**
+ * Immutable description of a RESTful error.
+ * <p/>
+ * The attributes that rarely vary between errors created from the same template (status, code, more info URL and
+ * caching policy) are held in a shared, immutable holder: a {@code RestError} {@link Builder#Builder(RestError) built
+ * from a template} references the template's holder unless one of those attributes was changed, so a runtime error
+ * only stores its own message, developer message and throwable.
+ *
  * @author Les Hazlewood
  */
 public class RestError {
 
-    private final HttpStatus status;
-    private final int code;
+    //indexed by status code:
+    private static final HttpStatus[] STATUSES = new HttpStatus[600];
+
+    static {
+        for (HttpStatus status : HttpStatus.values()) {
+            //as in HttpStatus.valueOf, the first constant wins for codes with several (e.g. FOUND, MOVED_TEMPORARILY):
+            if (status.value() < STATUSES.length && STATUSES[status.value()] == null) {
+                STATUSES[status.value()] = status;
+            }
+        }
+    }
+
+    private final Attributes attributes;
     private final String message;
     private final String developerMessage;
-    private final String moreInfoUrl;
     private final Throwable throwable;
 
     public RestError(HttpStatus status, int code, String message, String developerMessage, String moreInfoUrl, Throwable throwable) {
-        if (status == null) {
-            throw new NullPointerException("HttpStatus argument cannot be null.");
-        }
-        this.status = status;
-        this.code = code;
+        this(status, code, message, developerMessage, moreInfoUrl, -1, -1, throwable);
+    }
+
+    public RestError(HttpStatus status, int code, String message, String developerMessage, String moreInfoUrl,
+                     int maxAge, int retryAfter, Throwable throwable) {
+        this(new Attributes(status, code, moreInfoUrl, maxAge, retryAfter), message, developerMessage, throwable);
+    }
+
+    /**
+     * Creates a copy of the specified error that shares its status, code, more info URL and caching policy.  Intended
+     * for subclasses that compute other properties on demand by overriding their accessors.
+     *
+     * @param source the error to copy
+     */
+    protected RestError(RestError source) {
+        this(source.attributes, source.message, source.developerMessage, source.throwable);
+    }
+
+    private RestError(Attributes attributes, String message, String developerMessage, Throwable throwable) {
+        this.attributes = attributes;
         this.message = message;
         this.developerMessage = developerMessage;
-        this.moreInfoUrl = moreInfoUrl;
         this.throwable = throwable;
     }
 
     public HttpStatus getStatus() {
-        return status;
+        return attributes.status;
     }
 
     public int getCode() {
-        return code;
+        return attributes.code;
     }
 
     public String getMessage() {
@@ -59,7 +90,26 @@ public class RestError {
     }
 
     public String getMoreInfoUrl() {
-        return moreInfoUrl;
+        return attributes.moreInfoUrl;
+    }
+
+    /**
+     * Returns the number of seconds clients and intermediate caches may cache the error response for, or {@code -1}
+     * if no caching policy should be applied.
+     *
+     * @return the number of seconds the error response may be cached for, or {@code -1} if not specified.
+     */
+    public int getMaxAge() {
+        return attributes.maxAge;
+    }
+
+    /**
+     * Returns the number of seconds clients should wait before retrying the request, or {@code -1} if not specified.
+     *
+     * @return the number of seconds clients should wait before retrying the request, or {@code -1} if not specified.
+     */
+    public int getRetryAfter() {
+        return attributes.retryAfter;
     }
 
     public Throwable getThrowable() {
@@ -73,11 +123,9 @@ public class RestError {
         }
         if (o instanceof RestError) {
             RestError re = (RestError) o;
-            return ObjectUtils.nullSafeEquals(getStatus(), re.getStatus()) &&
-                    getCode() == re.getCode() &&
+            return this.attributes.equals(re.attributes) &&
                     ObjectUtils.nullSafeEquals(getMessage(), re.getMessage()) &&
                     ObjectUtils.nullSafeEquals(getDeveloperMessage(), re.getDeveloperMessage()) &&
-                    ObjectUtils.nullSafeEquals(getMoreInfoUrl(), re.getMoreInfoUrl()) &&
                     ObjectUtils.nullSafeEquals(getThrowable(), re.getThrowable());
         }
 
@@ -86,10 +134,11 @@ public class RestError {
 
     @Override
     public int hashCode() {
-        //noinspection ThrowableResultOfMethodCallIgnored
-        return ObjectUtils.nullSafeHashCode(new Object[]{
-                getStatus(), getCode(), getMessage(), getDeveloperMessage(), getMoreInfoUrl(), getThrowable()
-        });
+        int result = this.attributes.hashCode();
+        result = 31 * result + ObjectUtils.nullSafeHashCode(getMessage());
+        result = 31 * result + ObjectUtils.nullSafeHashCode(getDeveloperMessage());
+        result = 31 * result + ObjectUtils.nullSafeHashCode(getThrowable());
+        return result;
     }
 
     public String toString() {
@@ -99,20 +148,120 @@ public class RestError {
                 .toString();
     }
 
+    /**
+     * Returns the {@code HttpStatus} with the specified numeric value.  Unlike {@link HttpStatus#valueOf(int)}, this
+     * is a direct array lookup.
+     *
+     * @param statusCode the numeric status value
+     * @return the corresponding {@code HttpStatus}
+     * @throws IllegalArgumentException if there is no {@code HttpStatus} with the specified value
+     */
+    static HttpStatus toHttpStatus(int statusCode) {
+        HttpStatus status = findHttpStatus(statusCode);
+        if (status == null) {
+            throw new IllegalArgumentException("No matching constant for [" + statusCode + "]");
+        }
+        return status;
+    }
+
+    /**
+     * Returns the {@code HttpStatus} with the specified numeric value, or {@code null} if there is none.  Like
+     * {@link #toHttpStatus(int)}, this is a direct array lookup.
+     *
+     * @param statusCode the numeric status value
+     * @return the corresponding {@code HttpStatus}, or {@code null} if there is no {@code HttpStatus} with the
+     *         specified value
+     */
+    public static HttpStatus findHttpStatus(int statusCode) {
+        return statusCode >= 0 && statusCode < STATUSES.length ? STATUSES[statusCode] : null;
+    }
+
+    /**
+     * The attributes typically shared by all errors created from the same template.
+     */
+    private static final class Attributes {
+
+        private final HttpStatus status;
+        private final int code;
+        private final String moreInfoUrl;
+        private final int maxAge;
+        private final int retryAfter;
+
+        Attributes(HttpStatus status, int code, String moreInfoUrl, int maxAge, int retryAfter) {
+            if (status == null) {
+                throw new NullPointerException("HttpStatus argument cannot be null.");
+            }
+            this.status = status;
+            this.code = code;
+            this.moreInfoUrl = moreInfoUrl;
+            this.maxAge = maxAge;
+            this.retryAfter = retryAfter;
+        }
+
+        boolean matches(HttpStatus status, int code, String moreInfoUrl, int maxAge, int retryAfter) {
+            return this.status == status && this.code == code && this.maxAge == maxAge &&
+                    this.retryAfter == retryAfter && ObjectUtils.nullSafeEquals(this.moreInfoUrl, moreInfoUrl);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o instanceof Attributes) {
+                Attributes a = (Attributes) o;
+                return matches(a.status, a.code, a.moreInfoUrl, a.maxAge, a.retryAfter);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.status.hashCode();
+            result = 31 * result + this.code;
+            result = 31 * result + ObjectUtils.nullSafeHashCode(this.moreInfoUrl);
+            result = 31 * result + this.maxAge;
+            result = 31 * result + this.retryAfter;
+            return result;
+        }
+    }
+
     public static class Builder {
 
+        private Attributes template;
+
         private HttpStatus status;
         private int code;
         private String message;
         private String developerMessage;
         private String moreInfoUrl;
+        private int maxAge = -1;
+        private int retryAfter = -1;
         private Throwable throwable;
 
         public Builder() {
         }
 
+        /**
+         * Creates a builder initialized with all of the specified template's attributes except its throwable.  If the
+         * status, code, more info URL, max age and retry after values are left unchanged, the built instance shares
+         * them with the template instead of copying them.
+         *
+         * @param template the template to initialize this builder with
+         */
+        public Builder(RestError template) {
+            this.template = template.attributes;
+            this.status = template.getStatus();
+            this.code = template.getCode();
+            this.message = template.getMessage();
+            this.developerMessage = template.getDeveloperMessage();
+            this.moreInfoUrl = template.getMoreInfoUrl();
+            this.maxAge = template.getMaxAge();
+            this.retryAfter = template.getRetryAfter();
+        }
+
         public Builder setStatus(int statusCode) {
-            this.status = HttpStatus.valueOf(statusCode);
+            this.status = toHttpStatus(statusCode);
             return this;
         }
 
@@ -141,6 +290,16 @@ public class RestError {
             return this;
         }
 
+        public Builder setMaxAge(int maxAge) {
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        public Builder setRetryAfter(int retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
         public Builder setThrowable(Throwable throwable) {
             this.throwable = throwable;
             return this;
@@ -150,7 +309,12 @@ public class RestError {
             if (this.status == null) {
                 this.status = HttpStatus.INTERNAL_SERVER_ERROR;
             }
-            return new RestError(this.status, this.code, this.message, this.developerMessage, this.moreInfoUrl, this.throwable);
+            Attributes attributes = this.template;
+            if (attributes == null ||
+                    !attributes.matches(this.status, this.code, this.moreInfoUrl, this.maxAge, this.retryAfter)) {
+                attributes = new Attributes(this.status, this.code, this.moreInfoUrl, this.maxAge, this.retryAfter);
+            }
+            return new RestError(attributes, this.message, this.developerMessage, this.throwable);
         }
     }
-}
\ No newline at end of file
+}
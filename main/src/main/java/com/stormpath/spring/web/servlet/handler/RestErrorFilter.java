@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Servlet {@code Filter} that renders RESTful error representations for failures that never reach a
+ * {@link RestExceptionHandler}: exceptions thrown by other filters (security, rate limiting, etc.) and
+ * {@code response.sendError} calls made by the container or by {@code DispatcherServlet} (e.g. 404s for unmapped
+ * paths).
+ * <p/>
+ * Without this filter, such failures result in the container's error page mechanism forwarding the request back
+ * through the filter chain.  This filter instead hands them to the configured {@code RestExceptionHandler}, which
+ * renders them in place exactly like the errors of handlers (client aborts, committed responses, degraded mode, error
+ * rate tracking, the idempotent error cache and the error listener all apply).
+ * <p/>
+ * Exceptions are resolved with {@link RestExceptionHandler#resolveException}; if the handler cannot resolve one (or
+ * cannot be found at all), the original exception is rethrown as usual.  {@code sendError} calls are rendered with
+ * {@link RestExceptionHandler#renderError} as a {@link RestError} with the sent status, a code equal to the status and
+ * the sent message (or the status' reason phrase if none was given).  Once {@code sendError} has been called, the rest
+ * of the chain sees a committed response and anything it writes is discarded.
+ * <p/>
+ * The {@code RestExceptionHandler} may be {@link #setExceptionHandler(RestExceptionHandler) injected} when this filter
+ * is defined as a Spring bean (e.g. behind a {@code DelegatingFilterProxy}).  Otherwise it is looked up lazily in the
+ * {@code WebApplicationContext} stored under the {@link #setContextAttribute(String) contextAttribute} servlet context
+ * attribute (or the root {@code WebApplicationContext} if not set):
+ * <pre>
+ * &lt;filter&gt;
+ *     &lt;filter-name&gt;restErrorFilter&lt;/filter-name&gt;
+ *     &lt;filter-class&gt;com.stormpath.spring.web.servlet.handler.RestErrorFilter&lt;/filter-class&gt;
+ *     &lt;init-param&gt;
+ *         &lt;param-name&gt;contextAttribute&lt;/param-name&gt;
+ *         &lt;param-value&gt;org.springframework.web.servlet.FrameworkServlet.CONTEXT.rest&lt;/param-value&gt;
+ *     &lt;/init-param&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ *
+ * @see RestExceptionHandler
+ */
+public class RestErrorFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RestErrorFilter.class);
+
+    private static final ServletOutputStream DISCARDING_OUTPUT_STREAM = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private static final Writer DISCARDING_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private volatile RestExceptionHandler exceptionHandler;
+
+    private String contextAttribute;
+
+    private boolean renderSendError = true;
+
+    public RestExceptionHandler getExceptionHandler() {
+        return exceptionHandler;
+    }
+
+    public void setExceptionHandler(RestExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    public String getContextAttribute() {
+        return contextAttribute;
+    }
+
+    /**
+     * Sets the name of the servlet context attribute holding the {@code WebApplicationContext} that defines the
+     * {@link RestExceptionHandler} to use, for example
+     * {@code org.springframework.web.servlet.FrameworkServlet.CONTEXT.<servlet-name>}.  Only used if no
+     * {@link #setExceptionHandler(RestExceptionHandler) exceptionHandler} has been set.  If not set, the root
+     * {@code WebApplicationContext} is used.
+     *
+     * @param contextAttribute the name of the servlet context attribute holding the {@code WebApplicationContext}
+     */
+    public void setContextAttribute(String contextAttribute) {
+        this.contextAttribute = contextAttribute;
+    }
+
+    public boolean isRenderSendError() {
+        return renderSendError;
+    }
+
+    /**
+     * Sets whether {@code response.sendError} calls made further down the chain are rendered as RESTful errors instead
+     * of being passed to the container.  Defaults to {@code true}.
+     *
+     * @param renderSendError whether {@code response.sendError} calls should be rendered as RESTful errors.
+     */
+    public void setRenderSendError(boolean renderSendError) {
+        this.renderSendError = renderSendError;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        SendErrorCapturingResponse capturingResponse = null;
+        HttpServletResponse filteredResponse = response;
+        if (this.renderSendError) {
+            capturingResponse = new SendErrorCapturingResponse(response);
+            filteredResponse = capturingResponse;
+        }
+
+        try {
+            chain.doFilter(request, filteredResponse);
+        } catch (ServletException e) {
+            if (!render(request, response, e)) {
+                throw e;
+            }
+            return;
+        } catch (IOException e) {
+            if (!render(request, response, e)) {
+                throw e;
+            }
+            return;
+        } catch (RuntimeException e) {
+            if (!render(request, response, e)) {
+                throw e;
+            }
+            return;
+        }
+
+        if (capturingResponse != null && capturingResponse.isErrorSent()) {
+            int status = capturingResponse.getErrorStatus();
+            String message = capturingResponse.getErrorMessage();
+            if (!render(request, response, status, message) && !response.isCommitted()) {
+                if (message != null) {
+                    response.sendError(status, message);
+                } else {
+                    response.sendError(status);
+                }
+            }
+        }
+    }
+
+    private boolean render(HttpServletRequest request, HttpServletResponse response, Exception ex) {
+        Exception resolvable = ex;
+        if (ex instanceof ServletException && ((ServletException) ex).getRootCause() instanceof Exception) {
+            resolvable = (Exception) ((ServletException) ex).getRootCause();
+        }
+        try {
+            RestExceptionHandler handler = getRequiredExceptionHandler();
+            resetBufferIfPossible(response);
+            return handler.resolveException(request, response, null, resolvable) != null;
+        } catch (RuntimeException e) {
+            log.error("Unable to render exception [" + ex + "].  Rethrowing it.", e);
+            return false;
+        }
+    }
+
+    private boolean render(HttpServletRequest request, HttpServletResponse response, int status, String message) {
+        HttpStatus httpStatus;
+        try {
+            httpStatus = HttpStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            //non-standard status code - let the container handle it:
+            return false;
+        }
+        RestError error = new RestError.Builder().setStatus(httpStatus).setCode(status)
+                .setMessage(message != null ? message : httpStatus.getReasonPhrase()).build();
+        try {
+            RestExceptionHandler handler = getRequiredExceptionHandler();
+            resetBufferIfPossible(response);
+            return handler.renderError(request, response, null, error) != null;
+        } catch (RuntimeException e) {
+            log.error("Unable to render RestError " + error +
+                    ".  Falling back to the container's default error handling.", e);
+            return false;
+        }
+    }
+
+    private static void resetBufferIfPossible(HttpServletResponse response) {
+        if (!response.isCommitted()) {
+            //discard whatever the chain buffered before failing:
+            response.resetBuffer();
+        }
+    }
+
+    private RestExceptionHandler getRequiredExceptionHandler() {
+        RestExceptionHandler handler = this.exceptionHandler;
+        if (handler == null) {
+            WebApplicationContext wac = this.contextAttribute != null ?
+                    WebApplicationContextUtils.getWebApplicationContext(getServletContext(), this.contextAttribute) :
+                    WebApplicationContextUtils.getWebApplicationContext(getServletContext());
+            if (wac == null) {
+                throw new IllegalStateException("No WebApplicationContext found" + (this.contextAttribute != null ?
+                        " under servlet context attribute '" + this.contextAttribute + "'" : "") +
+                        ": no RestExceptionHandler available.");
+            }
+            handler = BeanFactoryUtils.beanOfTypeIncludingAncestors(wac, RestExceptionHandler.class);
+            this.exceptionHandler = handler;
+        }
+        return handler;
+    }
+
+    /**
+     * Records {@code sendError} calls instead of passing them to the container so they can be rendered as RESTful
+     * errors once the chain returns.  Like a container, it discards whatever is written after {@code sendError}.
+     */
+    private static final class SendErrorCapturingResponse extends HttpServletResponseWrapper {
+
+        private boolean errorSent;
+        private int errorStatus;
+        private String errorMessage;
+
+        private SendErrorCapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            sendError(sc, null);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            if (super.isCommitted()) {
+                //let the container enforce the usual IllegalStateException:
+                if (msg != null) {
+                    super.sendError(sc, msg);
+                } else {
+                    super.sendError(sc);
+                }
+                return;
+            }
+            this.errorSent = true;
+            this.errorStatus = sc;
+            this.errorMessage = msg;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            //a sent error commits the response as far as the rest of the chain is concerned:
+            return this.errorSent || super.isCommitted();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            return this.errorSent ? DISCARDING_OUTPUT_STREAM : super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            return this.errorSent ? new PrintWriter(DISCARDING_WRITER) : super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (!this.errorSent) {
+                super.flushBuffer();
+            }
+        }
+
+        private boolean isErrorSent() {
+            return errorSent;
+        }
+
+        private int getErrorStatus() {
+            return errorStatus;
+        }
+
+        private String getErrorMessage() {
+            return errorMessage;
+        }
+    }
+}
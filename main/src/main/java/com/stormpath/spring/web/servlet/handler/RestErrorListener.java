@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Receives notifications about resolved and rendered errors, for example to emit profiling events.  A listener is
+ * registered with the {@link DefaultRestErrorResolver#setErrorListener(RestErrorListener) DefaultRestErrorResolver}
+ * (resolution) and/or the {@link RestExceptionHandler#setErrorListener(RestErrorListener) RestExceptionHandler}
+ * (rendering).
+ * <p/>
+ * Notifications are only made, and the information they carry only measured, while {@link #isEnabled()} returns
+ * {@code true}, so a disabled listener costs a single method call per error.
+ */
+public interface RestErrorListener {
+
+    /**
+     * Returns {@code true} if this listener currently wants to be notified.  Called once per error and phase, so it
+     * should be cheap.
+     *
+     * @return {@code true} if this listener currently wants to be notified.
+     */
+    boolean isEnabled();
+
+    /**
+     * Called after an exception was resolved, whether or not a {@code RestError} was found for it.
+     *
+     * @param request      the current request
+     * @param ex           the resolved exception
+     * @param mappingKey   the matched exception mapping key, or {@code null} if none matched, the exception is a
+     *                     {@link RestException} or the resolver's template lookup is customized
+     * @param error        the resolved error, or {@code null} if the exception could not be resolved
+     * @param resolveNanos the time spent resolving the exception, in nanoseconds
+     */
+    void errorResolved(ServletWebRequest request, Exception ex, String mappingKey, RestError error, long resolveNanos);
+
+    /**
+     * Called after an error body was written to the response.
+     *
+     * @param request    the current request
+     * @param error      the rendered error
+     * @param mediaType  the negotiated media type of the body
+     * @param bodyLength the length of the body in bytes, or {@code -1} if it was streamed and its length is unknown
+     * @param timings    the measured phases; those that were not measured are {@code -1}
+     */
+    void errorRendered(ServletWebRequest request, RestError error, MediaType mediaType, long bodyLength,
+                       RestErrorTimings timings);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a handler-specific exception mapping that overrides (or adds to) the global
+ * {@link DefaultRestErrorResolver#setExceptionMappingDefinitions(java.util.Map) exceptionMappingDefinitions} for a
+ * single controller class or handler method.
+ * <p/>
+ * The {@link #definition() definition} uses exactly the same syntax as the values in the global mapping definitions
+ * map.  For example:
+ * <pre>
+ * &#64;Controller
+ * &#64;RestErrorMapping(value = IllegalArgumentException.class, definition = "500")
+ * public class InternalController {
+ *     ...
+ * }
+ * </pre>
+ * Method-level mappings take precedence over class-level mappings, which in turn take precedence over the global
+ * mappings.  Use {@link RestErrorMappings} to declare more than one mapping on the same element.
+ *
+ * @see RestErrorMappings
+ * @see DefaultRestErrorResolver
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RestErrorMapping {
+
+    /**
+     * Returns the exception types to which the {@link #definition() definition} applies.
+     *
+     * @return the exception types to which the {@link #definition() definition} applies.
+     */
+    Class<? extends Throwable>[] value();
+
+    /**
+     * Returns the mapping definition, for example {@code "404, _exmsg"} or {@code "status=500, code=10500"}.
+     *
+     * @return the mapping definition.
+     */
+    String definition();
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Groups multiple {@link RestErrorMapping} declarations on the same controller class or handler method:
+ * <pre>
+ * &#64;RestErrorMappings({
+ *     &#64;RestErrorMapping(value = IllegalArgumentException.class, definition = "400, _exmsg"),
+ *     &#64;RestErrorMapping(value = IllegalStateException.class, definition = "409, _exmsg")
+ * })
+ * </pre>
+ *
+ * @see RestErrorMapping
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RestErrorMappings {
+
+    RestErrorMapping[] value();
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects the error response verbosity profile for a request, for example {@code public} or {@code internal}.  The
+ * {@link RestExceptionHandler} renders errors with the {@link RestExceptionHandler#setProfileErrorConverters(java.util.Map)
+ * converter configured for the selected profile}.
+ * <p/>
+ * Rules are evaluated in the following order, and the first match wins:
+ * <ol>
+ *     <li>If a {@link #setHeaderName(String) headerName} is configured and the request specifies one of the
+ *     {@link #setHeaderProfiles(java.util.Set) headerProfiles} in that header, that profile is selected.  Only use this
+ *     rule if the header cannot be set by untrusted clients, for example because the edge proxy removes it.</li>
+ *     <li>If a {@link #setClientCertificateProfile(String) clientCertificateProfile} is configured and the request was
+ *     made with a client certificate, that profile is selected.</li>
+ *     <li>If {@link #setTrustedProxies(java.util.Set) trustedProxies} are configured and the client address starts
+ *     with one of the {@link #setRemoteAddressProfiles(java.util.Map) remoteAddressProfiles} prefixes (for example
+ *     {@code 10.}), the profile of the longest matching prefix is selected.</li>
+ *     <li>Otherwise the {@link #setDefaultProfile(String) defaultProfile} is selected, which may be {@code null}.</li>
+ * </ol>
+ * <h3>Remote Addresses and Reverse Proxies</h3>
+ * Behind a reverse proxy or load balancer, {@code request.getRemoteAddr()} is the address of the proxy, which is
+ * typically in a private range.  Matching it against a prefix like {@code 10.} would select the internal profile for
+ * every request, including those of public clients, and leak developer messages to them.  The remote address rule is
+ * therefore disabled until the proxies in front of the application are declared with
+ * {@link #setTrustedProxies(java.util.Set) trustedProxies} (an empty set declares that clients connect directly):
+ * <ul>
+ *     <li>A request from an address that is not a trusted proxy is matched by that address.</li>
+ *     <li>A request from a trusted proxy is matched by the client address the proxies report in the
+ *     {@link #setForwardedForHeaderName(String) X-Forwarded-For} header: the last address in it that is not itself a
+ *     trusted proxy.  Addresses further left were reported by the client and cannot be trusted.  If the header is
+ *     missing, or lists only trusted proxies, the request does not match any prefix.</li>
+ * </ul>
+ */
+public class RestErrorProfileResolver {
+
+    private static final String CLIENT_CERTIFICATE_ATTRIBUTE = "javax.servlet.request.X509Certificate";
+    private static final String DEFAULT_FORWARDED_FOR_HEADER_NAME = "X-Forwarded-For";
+
+    private String headerName;
+    private Set<String> headerProfiles = Collections.emptySet();
+    private String clientCertificateProfile;
+    private String defaultProfile;
+
+    //sorted longest prefix first:
+    private String[] remoteAddressPrefixes = new String[0];
+    private String[] remoteAddressPrefixProfiles = new String[0];
+
+    //null until configured, which disables the remote address rule:
+    private String[] trustedProxies;
+    private String forwardedForHeaderName = DEFAULT_FORWARDED_FOR_HEADER_NAME;
+
+    /**
+     * Returns the name of the profile to use for the specified request, or {@code null} if no profile applies.
+     *
+     * @param request the current request
+     * @return the name of the profile to use for the specified request, or {@code null} if no profile applies.
+     */
+    public String resolveProfile(HttpServletRequest request) {
+        if (this.headerName != null) {
+            String profile = request.getHeader(this.headerName);
+            if (profile != null && this.headerProfiles.contains(profile)) {
+                return profile;
+            }
+        }
+
+        if (this.clientCertificateProfile != null) {
+            Object certificates = request.getAttribute(CLIENT_CERTIFICATE_ATTRIBUTE);
+            if (certificates instanceof Object[] && ((Object[]) certificates).length > 0) {
+                return this.clientCertificateProfile;
+            }
+        }
+
+        if (this.remoteAddressPrefixes.length > 0 && this.trustedProxies != null) {
+            String clientAddr = getClientAddress(request);
+            if (clientAddr != null) {
+                for (int i = 0; i < this.remoteAddressPrefixes.length; i++) {
+                    if (clientAddr.startsWith(this.remoteAddressPrefixes[i])) {
+                        return this.remoteAddressPrefixProfiles[i];
+                    }
+                }
+            }
+        }
+
+        return this.defaultProfile;
+    }
+
+    /**
+     * Returns the address of the client that made the request, or {@code null} if it cannot be determined reliably.
+     */
+    private String getClientAddress(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if (remoteAddr == null || !isTrustedProxy(remoteAddr)) {
+            return remoteAddr;
+        }
+        List<String> hops = new ArrayList<String>();
+        Enumeration<?> headers = request.getHeaders(this.forwardedForHeaderName);
+        while (headers != null && headers.hasMoreElements()) {
+            String header = String.valueOf(headers.nextElement());
+            Collections.addAll(hops, StringUtils.commaDelimitedListToStringArray(header));
+        }
+        //nearest hop first - each one was appended by the proxy in front of it:
+        for (int i = hops.size() - 1; i >= 0; i--) {
+            String hop = hops.get(i).trim();
+            if (hop.length() == 0) {
+                return null;
+            }
+            if (!isTrustedProxy(hop)) {
+                return hop;
+            }
+        }
+        return null;
+    }
+
+    private boolean isTrustedProxy(String addr) {
+        for (String proxy : this.trustedProxies) {
+            if (addr.equals(proxy) || (isPrefix(proxy) && addr.startsWith(proxy))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPrefix(String proxy) {
+        char last = proxy.charAt(proxy.length() - 1);
+        return last == '.' || last == ':';
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * Sets the name of the request header that may select a profile directly, for example {@code X-Error-Profile}.
+     * Defaults to {@code null} (disabled).
+     *
+     * @param headerName the name of the request header that may select a profile directly.
+     */
+    public void setHeaderName(String headerName) {
+        this.headerName = StringUtils.hasText(headerName) ? headerName : null;
+    }
+
+    public Set<String> getHeaderProfiles() {
+        return headerProfiles;
+    }
+
+    /**
+     * Sets the profiles that may be selected via the {@link #setHeaderName(String) header}.
+     *
+     * @param headerProfiles the profiles that may be selected via the header.
+     */
+    public void setHeaderProfiles(Set<String> headerProfiles) {
+        this.headerProfiles = headerProfiles != null ? headerProfiles : Collections.<String>emptySet();
+    }
+
+    public String getClientCertificateProfile() {
+        return clientCertificateProfile;
+    }
+
+    /**
+     * Sets the profile selected for requests authenticated with a client certificate.  Defaults to {@code null}
+     * (disabled).
+     *
+     * @param clientCertificateProfile the profile selected for requests authenticated with a client certificate.
+     */
+    public void setClientCertificateProfile(String clientCertificateProfile) {
+        this.clientCertificateProfile = clientCertificateProfile;
+    }
+
+    /**
+     * Sets the profiles selected by client address prefix, for example {@code 10. -> internal}.  Only applied once
+     * {@link #setTrustedProxies(java.util.Set) trustedProxies} are configured.
+     *
+     * @param remoteAddressProfiles the profiles selected by client address prefix.
+     */
+    public void setRemoteAddressProfiles(Map<String, String> remoteAddressProfiles) {
+        List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>();
+        if (remoteAddressProfiles != null) {
+            entries.addAll(remoteAddressProfiles.entrySet());
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, String>>() {
+            public int compare(Map.Entry<String, String> a, Map.Entry<String, String> b) {
+                return b.getKey().length() - a.getKey().length();
+            }
+        });
+        String[] prefixes = new String[entries.size()];
+        String[] profiles = new String[entries.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = entries.get(i).getKey();
+            profiles[i] = entries.get(i).getValue();
+        }
+        this.remoteAddressPrefixes = prefixes;
+        this.remoteAddressPrefixProfiles = profiles;
+    }
+
+    public Set<String> getTrustedProxies() {
+        if (this.trustedProxies == null) {
+            return null;
+        }
+        Set<String> proxies = new LinkedHashSet<String>();
+        Collections.addAll(proxies, this.trustedProxies);
+        return proxies;
+    }
+
+    /**
+     * Sets the addresses of the reverse proxies in front of the application, which enables the
+     * {@link #setRemoteAddressProfiles(java.util.Map) remoteAddressProfiles} rule.  Entries ending with {@code .} or
+     * {@code :} are prefixes (for example {@code 10.0.0.}); all others must match an address exactly.  An empty set
+     * declares that clients connect directly.  Defaults to {@code null}, which disables the remote address rule.
+     *
+     * @param trustedProxies the addresses of the reverse proxies in front of the application.
+     */
+    public void setTrustedProxies(Set<String> trustedProxies) {
+        if (trustedProxies == null) {
+            this.trustedProxies = null;
+            return;
+        }
+        List<String> proxies = new ArrayList<String>(trustedProxies.size());
+        for (String proxy : trustedProxies) {
+            if (StringUtils.hasText(proxy)) {
+                proxies.add(proxy.trim());
+            }
+        }
+        this.trustedProxies = proxies.toArray(new String[proxies.size()]);
+    }
+
+    public String getForwardedForHeaderName() {
+        return forwardedForHeaderName;
+    }
+
+    /**
+     * Sets the name of the request header in which trusted proxies report the client address.  Defaults to
+     * {@code X-Forwarded-For}.
+     *
+     * @param forwardedForHeaderName the name of the request header in which trusted proxies report the client address.
+     */
+    public void setForwardedForHeaderName(String forwardedForHeaderName) {
+        this.forwardedForHeaderName = StringUtils.hasText(forwardedForHeaderName) ? forwardedForHeaderName :
+                DEFAULT_FORWARDED_FOR_HEADER_NAME;
+    }
+
+    public String getDefaultProfile() {
+        return defaultProfile;
+    }
+
+    /**
+     * Sets the profile selected when no other rule matches.  Defaults to {@code null}, in which case the
+     * {@link RestExceptionHandler}'s default {@code errorConverter} is used.
+     *
+     * @param defaultProfile the profile selected when no other rule matches.
+     */
+    public void setDefaultProfile(String defaultProfile) {
+        this.defaultProfile = defaultProfile;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+
+/**
+ * {@code HandlerMethodReturnValueHandler} that lets handler methods return a {@link RestError} or a
+ * {@link RestResult} instead of throwing an exception for expected failures (not found, conflict, etc.).  A returned
+ * error is resolved and rendered by the configured {@link RestExceptionHandler} exactly like a thrown
+ * {@link RestException} carrying it as its template: the resolver's defaults (code, more info URL,
+ * {@code MessageSource} messages and {@code {property}} templates) apply, error listeners, error rate trackers and the
+ * degraded mode detector are notified, and the same {@link RestErrorConverter} and {@code HttpMessageConverter}
+ * negotiation is used - but without the cost of filling in a stack trace, unwinding and walking the exception resolver
+ * chain.  Returned errors are not logged.  Successful {@code RestResult} values are rendered with the same negotiation.
+ * <p/>
+ * The handler method's {@code java.lang.reflect.Method} is passed to the {@code RestExceptionHandler} as the handler,
+ * since the {@code HandlerMethod} itself is not available to return value handlers.
+ * <p/>
+ * Register it with the {@code RequestMappingHandlerAdapter}, for example:
+ * <pre>
+ * &lt;mvc:annotation-driven&gt;
+ *     &lt;mvc:return-value-handlers&gt;
+ *         &lt;bean class="com.stormpath.spring.web.servlet.handler.RestErrorReturnValueHandler"&gt;
+ *             &lt;property name="exceptionHandler" ref="restExceptionResolver"/&gt;
+ *         &lt;/bean&gt;
+ *     &lt;/mvc:return-value-handlers&gt;
+ * &lt;/mvc:annotation-driven&gt;
+ * </pre>
+ *
+ * @see RestResult
+ * @see RestExceptionHandler
+ */
+public class RestErrorReturnValueHandler implements HandlerMethodReturnValueHandler, InitializingBean {
+
+    private RestExceptionHandler exceptionHandler;
+
+    public RestExceptionHandler getExceptionHandler() {
+        return exceptionHandler;
+    }
+
+    public void setExceptionHandler(RestExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(this.exceptionHandler, "exceptionHandler property is required.");
+    }
+
+    public boolean supportsReturnType(MethodParameter returnType) {
+        Class<?> type = returnType.getParameterType();
+        return RestError.class.isAssignableFrom(type) || RestResult.class.isAssignableFrom(type);
+    }
+
+    public void handleReturnValue(Object returnValue, MethodParameter returnType, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest) throws Exception {
+
+        mavContainer.setRequestHandled(true);
+
+        if (returnValue == null) {
+            return;
+        }
+
+        ServletWebRequest servletWebRequest = new ServletWebRequest(
+                webRequest.getNativeRequest(HttpServletRequest.class),
+                webRequest.getNativeResponse(HttpServletResponse.class));
+
+        RestError error;
+        if (returnValue instanceof RestResult) {
+            RestResult<?> result = (RestResult<?>) returnValue;
+            if (!result.isError()) {
+                Object value = result.getValue();
+                if (value != null && this.exceptionHandler.handleResponseBody(value, servletWebRequest) == null) {
+                    throw new HttpMediaTypeNotAcceptableException(Collections.<MediaType>emptyList());
+                }
+                return;
+            }
+            error = result.getError();
+        } else {
+            error = (RestError) returnValue;
+        }
+
+        //stackless, so this costs no more than the RestError itself:
+        RestException ex = new RestException(error);
+        if (this.exceptionHandler.doResolveException(servletWebRequest.getRequest(), servletWebRequest.getResponse(),
+                returnType.getMethod(), ex) == null) {
+            throw new HttpMediaTypeNotAcceptableException(Collections.<MediaType>emptyList());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+/**
+ * The time spent in each phase of rendering an error response, measured by the {@link RestExceptionHandler} when
+ * {@link RestExceptionHandler#setTimingEnabled(boolean) timingEnabled}.  An instance is available as the
+ * {@link #ATTRIBUTE} request attribute, for example for access logging, and is rendered as the response's
+ * {@code Server-Timing} header.
+ * <p/>
+ * The phases are:
+ * <ul>
+ *     <li>{@code resolve}: resolving the exception to a {@link RestError} (mapping lookup)</li>
+ *     <li>{@code message}: converting the {@code RestError} to the response body, which includes resolving and
+ *     localizing its messages</li>
+ *     <li>{@code negotiate}: selecting the {@code HttpMessageConverter} for the accepted media types</li>
+ *     <li>{@code write}: serializing the response body</li>
+ * </ul>
+ * Phases that were not measured report {@code -1}.  Since headers must be sent before the body, the {@code write}
+ * phase only appears in the {@code Server-Timing} header if the response was
+ * {@link RestExceptionHandler#setBufferedRendering(boolean) buffered}.
+ */
+public class RestErrorTimings {
+
+    /**
+     * The request attribute under which the current request's timings are stored.
+     */
+    public static final String ATTRIBUTE = RestErrorTimings.class.getName();
+
+    public static final String HEADER_NAME = "Server-Timing";
+
+    private long resolveNanos = -1;
+    private long messageNanos = -1;
+    private long negotiateNanos = -1;
+    private long writeNanos = -1;
+
+    public long getResolveNanos() {
+        return resolveNanos;
+    }
+
+    public void setResolveNanos(long resolveNanos) {
+        this.resolveNanos = resolveNanos;
+    }
+
+    public long getMessageNanos() {
+        return messageNanos;
+    }
+
+    public void setMessageNanos(long messageNanos) {
+        this.messageNanos = messageNanos;
+    }
+
+    public long getNegotiateNanos() {
+        return negotiateNanos;
+    }
+
+    public void setNegotiateNanos(long negotiateNanos) {
+        this.negotiateNanos = negotiateNanos;
+    }
+
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    public void setWriteNanos(long writeNanos) {
+        this.writeNanos = writeNanos;
+    }
+
+    /**
+     * Returns the measured phases as a {@code Server-Timing} header value, for example
+     * {@code resolve;dur=0.042, message;dur=0.015, negotiate;dur=0.008}.
+     *
+     * @return the measured phases as a {@code Server-Timing} header value.
+     */
+    public String toHeaderValue() {
+        StringBuilder sb = new StringBuilder(96);
+        append(sb, "resolve", this.resolveNanos);
+        append(sb, "message", this.messageNanos);
+        append(sb, "negotiate", this.negotiateNanos);
+        append(sb, "write", this.writeNanos);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+        //milliseconds with microsecond precision, without floating point formatting:
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        sb.append(name).append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) {
+            sb.append('0');
+        }
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    @Override
+    public String toString() {
+        return toHeaderValue();
+    }
+}
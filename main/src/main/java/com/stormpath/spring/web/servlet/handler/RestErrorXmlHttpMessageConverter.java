@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@code HttpMessageConverter} that writes error bodies as UTF-8 encoded XML, straight to the response's output stream.
+ * Unlike a JAXB based converter, it needs no JAXB context or reflection, and it can render the {@code Map}s created by
+ * a {@link MapRestErrorConverter} as well as raw {@link RestError} instances:
+ * <pre>
+ * &lt;error&gt;
+ *     &lt;status&gt;404&lt;/status&gt;
+ *     &lt;code&gt;40401&lt;/code&gt;
+ *     &lt;message&gt;...&lt;/message&gt;
+ * &lt;/error&gt;
+ * </pre>
+ * Map entries are written as elements named after their keys, in iteration order.  {@code RestError} instances are
+ * written with the keys and include flags of the {@link #setErrorConverter(MapRestErrorConverter) errorConverter}, so
+ * both representations use the same element names.
+ * <p/>
+ * The XML declaration and the start and end tags of the root element and of the first
+ * {@value #MAX_CACHED_ELEMENT_NAMES} distinct element names are encoded once and cached, so only the values are
+ * escaped and encoded per response.  Element names are written as given and must be valid XML names.
+ * <p/>
+ * This converter only writes for explicitly requested XML media types ({@code application/xml}, {@code text/xml} or
+ * {@code application/*+xml}), never for wildcards such as <code>*&#47;*</code> or {@code application/*}, so it may
+ * be registered before a JSON converter without changing the response of clients that accept anything.  Add it to
+ * the {@link RestExceptionHandler}'s
+ * {@link RestExceptionHandler#setMessageConverters(org.springframework.http.converter.HttpMessageConverter[])
+ * messageConverters} to enable XML error responses.
+ */
+public class RestErrorXmlHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String DEFAULT_ROOT_ELEMENT_NAME = "error";
+
+    static final int MAX_CACHED_ELEMENT_NAMES = 64;
+
+    private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(UTF_8);
+
+    private String rootElementName = DEFAULT_ROOT_ELEMENT_NAME;
+    private volatile ElementName rootElement = new ElementName(DEFAULT_ROOT_ELEMENT_NAME);
+    private MapRestErrorConverter errorConverter = new MapRestErrorConverter();
+
+    private final ConcurrentMap<String, ElementName> elementNames = new ConcurrentHashMap<String, ElementName>();
+
+    public RestErrorXmlHttpMessageConverter() {
+        super(new MediaType("application", "xml", UTF_8), new MediaType("text", "xml", UTF_8),
+                new MediaType("application", "*+xml", UTF_8));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return RestError.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    /**
+     * Returns {@code true} only if the specified media type is a concrete XML media type, so that clients accepting
+     * any media type (or any subtype, like {@code application/*}) are rendered by the next (typically JSON) converter.
+     */
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return mediaType != null && !mediaType.isWildcardType() && !mediaType.isWildcardSubtype() && supports(clazz) &&
+                super.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        throw new HttpMessageNotReadableException("Error bodies cannot be read as XML.");
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream out = outputMessage.getBody();
+        ElementName root = this.rootElement;
+        out.write(XML_DECLARATION);
+        out.write(root.start);
+        if (body instanceof RestError) {
+            writeRestError((RestError) body, out);
+        } else {
+            writeMap((Map<?, ?>) body, out);
+        }
+        out.write(root.end);
+    }
+
+    private void writeRestError(RestError error, OutputStream out) throws IOException {
+        MapRestErrorConverter keys = this.errorConverter;
+        writeElement(out, keys.getStatusKey(), error.getStatus().value());
+        if (keys.isIncludeCode() && error.getCode() > 0) {
+            writeElement(out, keys.getCodeKey(), error.getCode());
+        }
+        if (keys.isIncludeMessage()) {
+            writeElement(out, keys.getMessageKey(), error.getMessage());
+        }
+        if (keys.isIncludeDeveloperMessage()) {
+            writeElement(out, keys.getDeveloperMessageKey(), error.getDeveloperMessage());
+        }
+        if (keys.isIncludeMoreInfoUrl()) {
+            writeElement(out, keys.getMoreInfoUrlKey(), error.getMoreInfoUrl());
+        }
+    }
+
+    private void writeMap(Map<?, ?> map, OutputStream out) throws IOException {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeElement(out, String.valueOf(entry.getKey()), entry.getValue());
+        }
+    }
+
+    private void writeElement(OutputStream out, String name, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        ElementName element = getElementName(name);
+        out.write(element.start);
+        if (value instanceof Number) {
+            //no escaping needed:
+            out.write(value.toString().getBytes(UTF_8));
+        } else {
+            out.write(escape(value.toString()).getBytes(UTF_8));
+        }
+        out.write(element.end);
+    }
+
+    private ElementName getElementName(String name) {
+        ElementName element = this.elementNames.get(name);
+        if (element == null) {
+            element = new ElementName(name);
+            if (this.elementNames.size() < MAX_CACHED_ELEMENT_NAMES) {
+                this.elementNames.putIfAbsent(name, element);
+            }
+        }
+        return element;
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = null;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '&') {
+                replacement = "&amp;";
+            } else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                //not allowed in XML 1.0 documents at all:
+                replacement = "\uFFFD";
+            } else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length + 16).append(text, 0, i);
+            }
+            sb.append(replacement);
+        }
+        return sb != null ? sb.toString() : text;
+    }
+
+    public String getRootElementName() {
+        return rootElementName;
+    }
+
+    /**
+     * Sets the name of the document's root element.  Defaults to {@code error}.
+     *
+     * @param rootElementName the name of the document's root element.
+     */
+    public void setRootElementName(String rootElementName) {
+        Assert.hasText(rootElementName, "rootElementName cannot be empty.");
+        this.rootElementName = rootElementName;
+        this.rootElement = new ElementName(rootElementName);
+    }
+
+    public MapRestErrorConverter getErrorConverter() {
+        return errorConverter;
+    }
+
+    /**
+     * Sets the converter whose keys and include flags determine the elements written for raw {@link RestError}
+     * bodies.  This should be the {@link RestExceptionHandler}'s own converter, if it uses a customized one.
+     *
+     * @param errorConverter the converter whose keys determine the elements written for {@code RestError} bodies.
+     */
+    public void setErrorConverter(MapRestErrorConverter errorConverter) {
+        Assert.notNull(errorConverter, "errorConverter cannot be null.");
+        this.errorConverter = errorConverter;
+    }
+
+    /**
+     * The UTF-8 encoded start and end tags of an element.
+     */
+    private static final class ElementName {
+
+        private final byte[] start;
+        private final byte[] end;
+
+        private ElementName(String name) {
+            this.start = ('<' + name + '>').getBytes(UTF_8);
+            this.end = ("</" + name + '>').getBytes(UTF_8);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+/**
+ * Base class for exceptions that describe their own RESTful error representation.  The {@link #getRestError() RestError}
+ * carried by the exception is used by {@link DefaultRestErrorResolver} as the template for the resolved error
+ * directly, without consulting the exception mappings.  The template is interpreted exactly like a configured mapping,
+ * so for example a message of {@code _exmsg} renders the exception's message.
+ * <p/>
+ * By default, instances do not fill in their stack trace, which is typically the most expensive part of creating an
+ * exception.  This makes them suitable for high-volume, expected failures such as 'not found' or 'conflict'
+ * conditions.  Subclasses that do want a stack trace may use the
+ * {@link #RestException(RestError, String, Throwable, boolean)} constructor.
+ * <p/>
+ * Templates are immutable and are best shared as constants:
+ * <pre>
+ * public class UnknownResourceException extends RestException {
+ *
+ *     private static final RestError TEMPLATE = new RestError.Builder()
+ *             .setStatus(HttpStatus.NOT_FOUND).setMessage(DefaultRestErrorResolver.DEFAULT_EXCEPTION_MESSAGE_VALUE).build();
+ *
+ *     public UnknownResourceException(String msg) {
+ *         super(TEMPLATE, msg);
+ *     }
+ * }
+ * </pre>
+ */
+public class RestException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RestError restError;
+
+    public RestException(RestError restError) {
+        this(restError, null, null, false);
+    }
+
+    public RestException(RestError restError, String message) {
+        this(restError, message, null, false);
+    }
+
+    public RestException(RestError restError, String message, Throwable cause) {
+        this(restError, message, cause, false);
+    }
+
+    /**
+     * Creates a new {@code RestException}.
+     *
+     * @param restError          the template used to resolve this exception to a {@link RestError}
+     * @param message            the exception message
+     * @param cause              the cause of this exception, may be {@code null}
+     * @param writableStackTrace whether or not the stack trace should be filled in
+     */
+    protected RestException(RestError restError, String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause);
+        if (restError == null) {
+            throw new IllegalArgumentException("RestError argument cannot be null.");
+        }
+        this.restError = restError;
+        if (writableStackTrace) {
+            super.fillInStackTrace();
+        }
+    }
+
+    /**
+     * Returns the template used to resolve this exception to a {@link RestError}.
+     *
+     * @return the template used to resolve this exception to a {@link RestError}.
+     */
+    public RestError getRestError() {
+        return restError;
+    }
+
+    /**
+     * Does not fill in the stack trace: this method is invoked by the {@code Throwable} constructor, before the
+     * {@code writableStackTrace} constructor argument is available.  The stack trace is filled in by the constructor
+     * afterwards if requested.
+     *
+     * @return this exception
+     */
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -17,27 +17,51 @@ package com.stormpath.spring.web.servlet.handler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 import org.springframework.web.servlet.handler.AbstractHandlerExceptionResolver;
+import org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 import org.springframework.web.util.WebUtils;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Renders a response with a RESTful Error representation based on the error format discussed in
@@ -88,19 +112,92 @@ import java.util.List;
  *     <tr>
  *         <td>messageConverters</td>
  *         <td>multiple instances</td>
- *         <td>Default collection are those automatically enabled by Spring as
- *         <a href="http://static.springsource.org/spring/docs/current/spring-framework-reference/html/mvc.html#mvc-config-enable">defined here</a> (specifically item #5)</td>
+ *         <td>Configured converters are consulted first, followed by the converters already registered with the
+ *         application's {@code RequestMappingHandlerAdapter} or {@code AnnotationMethodHandlerAdapter} (for example via
+ *         {@code <mvc:message-converters>}).  Only if no such adapter exists are the converters automatically enabled
+ *         by Spring as
+ *         <a href="http://static.springsource.org/spring/docs/current/spring-framework-reference/html/mvc.html#mvc-config-enable">defined here</a> (specifically item #5)
+ *         created, lazily, as a fallback.</td>
  *     </tr>
  * </table>
  *
  * <h2>JSON Rendering</h2>
- * This implementation comes pre-configured with Spring's typical default
- * {@link HttpMessageConverter} instances; JSON will be enabled automatically if Jackson is in the classpath.  If you
+ * This implementation shares the {@link HttpMessageConverter} instances already used by the application's handler
+ * adapters, so any JSON converter registered via {@code <mvc:message-converters>} is used for error responses as
+ * well.  Without such an adapter it falls back to Spring's typical default {@link HttpMessageConverter} instances;
+ * JSON will be enabled automatically if Jackson is in the classpath.  If you
  * want to match the JSON representation shown in the article above (recommended) but do not want to use Jackson
  * (or the Spring's default Jackson config), you will need to
  * {@link #setMessageConverters(org.springframework.http.converter.HttpMessageConverter[]) configure} a different
  * JSON-capable {@link HttpMessageConverter}.
  *
+ * <h2>Warm-up</h2>
+ * The first error of each type is considerably slower than subsequent ones: mapped exception classes are loaded
+ * lazily, {@code HttpMessageConverter}s build their serializers on first use and the JIT has not yet compiled the error
+ * path.  If {@link #setWarmUpEnabled(boolean) warmUpEnabled} is {@code true}, {@link #afterPropertiesSet()} loads and
+ * validates every exception class named in the {@link DefaultRestErrorResolver} mappings, resolves a synthetic
+ * instance of each one in every configured {@link #setWarmUpLocales(java.util.List) locale} (priming the message
+ * caches) and renders it, in memory, with the default and every profile {@code RestErrorConverter} and every
+ * configured {@link #setWarmUpMediaTypes(java.util.List) media type}.  It then compiles the effective exception
+ * mappings of every {@code @RequestMapping} handler method.  An optional {@link #setWarmUpTimeBudget(long) time budget}
+ * limits how long startup may be delayed.  No requests or responses are involved, so its synthetic errors are not
+ * reported to error listeners, error rate trackers or the degraded mode detector.
+ *
+ * <h2>Verbosity Profiles</h2>
+ * Different clients may warrant different levels of detail, for example only {@code status}, {@code code} and
+ * {@code message} for public clients but also {@code developerMessage} and {@code moreInfoUrl} for internal callers.
+ * A {@link #setProfileResolver(RestErrorProfileResolver) profileResolver} selects a profile for each request (by
+ * header, client certificate or remote address) and the error is rendered with the
+ * {@link #setProfileErrorConverters(java.util.Map) converter configured for that profile}.  Since the
+ * {@link DefaultRestErrorResolver} computes messages lazily, fields a profile's converter omits are never resolved.
+ *
+ * <h2>Timing</h2>
+ * If {@link #setTimingEnabled(boolean) timingEnabled} is {@code true}, the resolve, message, negotiation and write
+ * phases of each error response are timed and reported in a {@code Server-Timing} header as well as a
+ * {@link RestErrorTimings} request attribute, for example for access logs.  When disabled (the default), no timing is
+ * performed unless an enabled {@link #setErrorListener(RestErrorListener) errorListener}, such as a Java Flight
+ * Recorder event emitter, receives the timings instead.
+ *
+ * <h2>Buffered Rendering</h2>
+ * By default error bodies are streamed to the response by the {@code HttpMessageConverter}, which typically results in
+ * a chunked response and several small writes.  If {@link #setBufferedRendering(boolean) bufferedRendering} is
+ * {@code true}, bodies are rendered into a buffer taken from a lock-free {@link BufferPool} and written with an exact
+ * {@code Content-Length} in a single write; a converter failure then leaves the response untouched.  Bodies that do
+ * not fit in the pool's largest buffer are streamed as usual.
+ *
+ * <h2>Asynchronous Requests</h2>
+ * This module targets Servlet 2.5 and Spring 3.1, so all errors are resolved on the request thread.  Code that
+ * completes a response on another thread can render an error in place by calling
+ * {@link #resolveException(HttpServletRequest, HttpServletResponse, Object, Exception) resolveException} directly
+ * with the original request and response; the handler holds no per-request state and may be called concurrently.
+ * Once such code sets the {@link #RENDERED_ATTRIBUTE} request attribute, exceptions reaching this handler later in
+ * the same request are treated as handled without being resolved or rendered again.
+ * <p/>
+ * The optional {@code spring-mvc-rest-exhandler-async} module (Servlet 3.0 and Spring 3.2+) uses this to render
+ * failed and timed out {@code Callable}s and {@code DeferredResult}s on the thread completing them, instead of in
+ * the async dispatch that follows.
+ *
+ * <h2>Disconnected Clients</h2>
+ * Exceptions raised after the response was committed, and exceptions indicating that the client disconnected (such as
+ * Tomcat's {@code ClientAbortException}, Jetty's {@code EofException} or a broken pipe), cannot be rendered.  They
+ * are detected before any resolution work is done, treated as handled and only counted (see
+ * {@link #getCommittedResponseCount()} and {@link #getClientAbortCount()}) instead of being logged.  A client
+ * disconnecting while the error body is written is counted the same way.
+ *
+ * <h2>Idempotent Retries</h2>
+ * Clients commonly retry failed requests with the same {@code Idempotency-Key} header.  If an
+ * {@link #setIdempotentErrorCache(IdempotentErrorCache) idempotentErrorCache} is configured, deterministic errors
+ * (such as {@code 409} or {@code 422}) of such requests are stored once rendered, and an
+ * {@link IdempotentErrorReplayInterceptor} replays them for retries before the handler runs again.
+ *
+ * <h2>Degraded Mode</h2>
+ * When errors spike, rendering them can take a significant share of the CPU away from healthy requests.  If a
+ * {@link #setDegradedModeDetector(DegradedModeDetector) degradedModeDetector} is configured and reports that the error
+ * rate or latency crossed its thresholds, errors are still resolved (status, code and caching headers are kept) but
+ * rendered as a precomputed JSON body containing only the status and its reason phrase, for example
+ * {@code {"status":503,"message":"Service Unavailable"}}.  Messages are not resolved, converters and content
+ * negotiation are bypassed and exceptions are not logged until the detector leaves degraded mode.
+ *
  * @see DefaultRestErrorResolver
  * @see MapRestErrorConverter
  * @see HttpMessageConverter
@@ -108,18 +205,60 @@ import java.util.List;
  *
  * @author Les Hazlewood
  */
-public class RestExceptionHandler extends AbstractHandlerExceptionResolver implements InitializingBean {
+public class RestExceptionHandler extends AbstractHandlerExceptionResolver
+        implements InitializingBean, ApplicationContextAware {
 
     private static final Logger log = LoggerFactory.getLogger(RestExceptionHandler.class);
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Request attribute indicating that the error response of the current request has already been rendered, for
+     * example by the thread completing an asynchronous request.
+     */
+    public static final String RENDERED_ATTRIBUTE = RestExceptionHandler.class.getName() + ".RENDERED";
+
     private HttpMessageConverter<?>[] messageConverters = null;
 
-    private List<HttpMessageConverter<?>> allMessageConverters = null;
+    private final AtomicReference<List<HttpMessageConverter<?>>> allMessageConverters =
+            new AtomicReference<List<HttpMessageConverter<?>>>();
+
+    private ApplicationContext applicationContext;
 
     private RestErrorResolver errorResolver;
 
     private RestErrorConverter<?> errorConverter;
 
+    private RestErrorProfileResolver profileResolver;
+
+    private Map<String, RestErrorConverter<?>> profileErrorConverters = Collections.emptyMap();
+
+    private boolean warmUpEnabled = false;
+    private List<MediaType> warmUpMediaTypes = Collections.singletonList(MediaType.APPLICATION_JSON);
+    private List<Locale> warmUpLocales = Collections.singletonList(Locale.getDefault());
+    private long warmUpTimeBudget = 0;
+
+    private boolean bufferedRendering = false;
+    private BufferPool bufferPool = new BufferPool();
+
+    private ErrorRateTracker errorRateTracker;
+
+    private boolean timingEnabled = false;
+
+    private RestErrorListener errorListener;
+
+    private IdempotentErrorCache idempotentErrorCache;
+
+    private DegradedModeDetector degradedModeDetector;
+
+    //precomputed degraded mode bodies, indexed by status code:
+    private final AtomicReferenceArray<byte[]> degradedBodies = new AtomicReferenceArray<byte[]>(600);
+
+    private ClientAbortDetector clientAbortDetector =
+            new ClientAbortDetector(ClientAbortDetector.DEFAULT_EXCEPTION_NAMES);
+    private final AtomicLong clientAbortCount = new AtomicLong();
+    private final AtomicLong committedResponseCount = new AtomicLong();
+
     public RestExceptionHandler() {
         this.errorResolver = new DefaultRestErrorResolver();
         this.errorConverter = new MapRestErrorConverter();
@@ -129,6 +268,10 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
         this.messageConverters = messageConverters;
     }
 
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
     public void setErrorResolver(RestErrorResolver errorResolver) {
         this.errorResolver = errorResolver;
     }
@@ -145,13 +288,274 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
         this.errorConverter = errorConverter;
     }
 
+    public RestErrorProfileResolver getProfileResolver() {
+        return profileResolver;
+    }
+
+    /**
+     * Sets the resolver that selects the verbosity profile of each request's error response.  Defaults to
+     * {@code null}, in which case the {@link #setErrorConverter(RestErrorConverter) errorConverter} is always used.
+     *
+     * @param profileResolver the resolver that selects the verbosity profile of each request's error response.
+     */
+    public void setProfileResolver(RestErrorProfileResolver profileResolver) {
+        this.profileResolver = profileResolver;
+    }
+
+    public Map<String, RestErrorConverter<?>> getProfileErrorConverters() {
+        return profileErrorConverters;
+    }
+
+    /**
+     * Sets the {@code RestErrorConverter} to use for each profile selected by the
+     * {@link #setProfileResolver(RestErrorProfileResolver) profileResolver}.  Requests without a profile, or with a
+     * profile that has no converter, use the {@link #setErrorConverter(RestErrorConverter) errorConverter}.
+     *
+     * @param profileErrorConverters the {@code RestErrorConverter} to use for each profile, keyed by profile name.
+     */
+    public void setProfileErrorConverters(Map<String, RestErrorConverter<?>> profileErrorConverters) {
+        this.profileErrorConverters = profileErrorConverters != null ? profileErrorConverters :
+                Collections.<String, RestErrorConverter<?>>emptyMap();
+    }
+
+    /**
+     * Returns the {@code RestErrorConverter} for the specified request's
+     * {@link #setProfileResolver(RestErrorProfileResolver) profile}, or the default
+     * {@link #setErrorConverter(RestErrorConverter) errorConverter} if there is none.
+     *
+     * @param webRequest the current request
+     * @return the {@code RestErrorConverter} to use for the specified request, may be {@code null}.
+     */
+    protected RestErrorConverter<?> getErrorConverter(ServletWebRequest webRequest) {
+        if (this.profileResolver != null) {
+            String profile = this.profileResolver.resolveProfile(webRequest.getRequest());
+            if (profile != null) {
+                RestErrorConverter<?> converter = this.profileErrorConverters.get(profile);
+                if (converter != null) {
+                    return converter;
+                }
+            }
+        }
+        return getErrorConverter();
+    }
+
+    public boolean isWarmUpEnabled() {
+        return warmUpEnabled;
+    }
+
+    /**
+     * Sets whether or not the error pipeline should be exercised during {@link #afterPropertiesSet()} so the first
+     * real errors after startup are not penalized by class loading and lazy initialization.  Defaults to
+     * {@code false}.
+     *
+     * @param warmUpEnabled whether or not the error pipeline should be warmed up at startup.
+     */
+    public void setWarmUpEnabled(boolean warmUpEnabled) {
+        this.warmUpEnabled = warmUpEnabled;
+    }
+
+    public List<MediaType> getWarmUpMediaTypes() {
+        return warmUpMediaTypes;
+    }
+
+    /**
+     * Sets the media types to render during warm-up.  Defaults to {@code application/json} only.
+     *
+     * @param warmUpMediaTypes the media types to render during warm-up.
+     */
+    public void setWarmUpMediaTypes(List<MediaType> warmUpMediaTypes) {
+        this.warmUpMediaTypes = warmUpMediaTypes;
+    }
+
+    public List<Locale> getWarmUpLocales() {
+        return warmUpLocales;
+    }
+
+    /**
+     * Sets the locales to resolve messages for during warm-up.  Defaults to the JVM's default locale only.
+     *
+     * @param warmUpLocales the locales to resolve messages for during warm-up.
+     */
+    public void setWarmUpLocales(List<Locale> warmUpLocales) {
+        this.warmUpLocales = warmUpLocales;
+    }
+
+    public long getWarmUpTimeBudget() {
+        return warmUpTimeBudget;
+    }
+
+    /**
+     * Sets the maximum number of milliseconds warm-up may take.  Any remaining warm-up work is skipped once the budget
+     * is exhausted.  Defaults to {@code 0}, meaning no limit.
+     *
+     * @param warmUpTimeBudget the maximum number of milliseconds warm-up may take, or {@code 0} for no limit.
+     */
+    public void setWarmUpTimeBudget(long warmUpTimeBudget) {
+        this.warmUpTimeBudget = warmUpTimeBudget;
+    }
+
+    public boolean isBufferedRendering() {
+        return bufferedRendering;
+    }
+
+    /**
+     * Sets whether or not error bodies should be rendered into a pooled in-memory buffer and written to the response
+     * in a single write with an exact {@code Content-Length}, instead of being streamed (typically chunked) to the
+     * response.  Bodies larger than the {@link #setBufferPool(BufferPool) buffer pool}'s largest buffer are streamed
+     * regardless.  Defaults to {@code false}.
+     *
+     * @param bufferedRendering whether or not error bodies should be buffered before being written.
+     */
+    public void setBufferedRendering(boolean bufferedRendering) {
+        this.bufferedRendering = bufferedRendering;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the pool of buffers used when {@link #setBufferedRendering(boolean) bufferedRendering} is enabled.
+     *
+     * @param bufferPool the pool of buffers used when buffered rendering is enabled.
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public ErrorRateTracker getErrorRateTracker() {
+        return errorRateTracker;
+    }
+
+    /**
+     * Sets the tracker that resolved errors are recorded with, per handler.  Successful requests are recorded by an
+     * {@link ErrorRateInterceptor} referencing the same tracker.  Defaults to {@code null} (no tracking).
+     *
+     * @param errorRateTracker the tracker that resolved errors are recorded with.
+     */
+    public void setErrorRateTracker(ErrorRateTracker errorRateTracker) {
+        this.errorRateTracker = errorRateTracker;
+    }
+
+    public boolean isTimingEnabled() {
+        return timingEnabled;
+    }
+
+    /**
+     * Sets whether or not the phases of rendering each error response should be timed.  If enabled, the timings are
+     * sent as a {@code Server-Timing} response header and stored as a {@link RestErrorTimings} request attribute.
+     * Defaults to {@code false}, in which case no timing is performed at all.
+     *
+     * @param timingEnabled whether or not the phases of rendering each error response should be timed.
+     */
+    public void setTimingEnabled(boolean timingEnabled) {
+        this.timingEnabled = timingEnabled;
+    }
+
+    public RestErrorListener getErrorListener() {
+        return errorListener;
+    }
+
+    /**
+     * Sets the listener notified of every rendered error, along with its media type, body length and phase timings.
+     * The phases are timed while the listener is {@link RestErrorListener#isEnabled() enabled}, even if
+     * {@link #setTimingEnabled(boolean) timingEnabled} is {@code false}; the {@code Server-Timing} header is only sent
+     * if {@code timingEnabled} is {@code true}.  Defaults to {@code null}.
+     *
+     * @param errorListener the listener notified of every rendered error.
+     */
+    public void setErrorListener(RestErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    public IdempotentErrorCache getIdempotentErrorCache() {
+        return idempotentErrorCache;
+    }
+
+    /**
+     * Sets the cache that rendered errors of requests with an idempotency key are stored in, so an
+     * {@link IdempotentErrorReplayInterceptor} can replay them for retries.  Such errors are always rendered through
+     * the {@link #setBufferPool(BufferPool) buffer pool}.  Defaults to {@code null}.
+     *
+     * @param idempotentErrorCache the cache that rendered errors of requests with an idempotency key are stored in.
+     */
+    public void setIdempotentErrorCache(IdempotentErrorCache idempotentErrorCache) {
+        this.idempotentErrorCache = idempotentErrorCache;
+    }
+
+    public DegradedModeDetector getDegradedModeDetector() {
+        return degradedModeDetector;
+    }
+
+    /**
+     * Sets the detector that decides when error responses should be degraded to terse, precomputed bodies.  Every
+     * resolved error is recorded with it.  Defaults to {@code null} (never degraded).
+     *
+     * @param degradedModeDetector the detector that decides when error responses should be degraded.
+     */
+    public void setDegradedModeDetector(DegradedModeDetector degradedModeDetector) {
+        this.degradedModeDetector = degradedModeDetector;
+    }
+
+    /**
+     * Sets the fully qualified names of exception types (and their subclasses) that indicate the client disconnected.
+     * Defaults to the client abort exceptions of common containers, such as Tomcat's {@code ClientAbortException} and
+     * Jetty's {@code EofException}.  {@code IOException}s reporting a broken pipe or connection reset are always
+     * treated as client aborts.
+     *
+     * @param clientAbortExceptionNames the fully qualified names of exception types indicating a client disconnect.
+     */
+    public void setClientAbortExceptionNames(Set<String> clientAbortExceptionNames) {
+        this.clientAbortDetector = new ClientAbortDetector(clientAbortExceptionNames != null ?
+                clientAbortExceptionNames : Collections.<String>emptySet());
+    }
+
+    /**
+     * Returns the number of exceptions caused by disconnected clients, which were neither rendered nor logged.
+     *
+     * @return the number of exceptions caused by disconnected clients.
+     */
+    public long getClientAbortCount() {
+        return clientAbortCount.get();
+    }
+
+    /**
+     * Returns the number of exceptions raised after the response was committed, which were neither rendered nor
+     * logged.
+     *
+     * @return the number of exceptions raised after the response was committed.
+     */
+    public long getCommittedResponseCount() {
+        return committedResponseCount.get();
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
-        ensureMessageConverters();
+        if (this.warmUpEnabled) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Returns the {@code HttpMessageConverter}s used to render error bodies, discovering them on first use.
+     * <p/>
+     * No lock is held: threads failing concurrently before discovery completes may each discover the (equivalent)
+     * converters, and the first published list wins.  This avoids blocking every failing request behind a monitor
+     * while bean lookups are performed.
+     */
+    private List<HttpMessageConverter<?>> getAllMessageConverters() {
+        List<HttpMessageConverter<?>> converters = this.allMessageConverters.get();
+        if (converters == null) {
+            converters = createMessageConverters();
+            if (!this.allMessageConverters.compareAndSet(null, converters)) {
+                converters = this.allMessageConverters.get();
+            }
+        }
+        return converters;
     }
 
     @SuppressWarnings("unchecked")
-    private void ensureMessageConverters() {
+    private List<HttpMessageConverter<?>> createMessageConverters() {
 
         List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
 
@@ -160,10 +564,49 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
             converters.addAll(CollectionUtils.arrayToList(this.messageConverters));
         }
 
-        //defaults next:
-        new HttpMessageConverterHelper().addDefaults(converters);
+        //share the converters the application already uses for handler return values:
+        List<HttpMessageConverter<?>> applicationConverters = getApplicationMessageConverters();
 
-        this.allMessageConverters = converters;
+        if (applicationConverters.isEmpty()) {
+            //defaults only as a last resort:
+            new HttpMessageConverterHelper().addDefaults(converters);
+        } else {
+            for (HttpMessageConverter<?> converter : applicationConverters) {
+                if (!converters.contains(converter)) {
+                    converters.add(converter);
+                }
+            }
+        }
+
+        return converters;
+    }
+
+    private List<HttpMessageConverter<?>> getApplicationMessageConverters() {
+        List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
+        if (this.applicationContext == null) {
+            return converters;
+        }
+
+        Map<String, RequestMappingHandlerAdapter> adapters = BeanFactoryUtils.beansOfTypeIncludingAncestors(
+                this.applicationContext, RequestMappingHandlerAdapter.class, true, false);
+        for (RequestMappingHandlerAdapter adapter : adapters.values()) {
+            converters.addAll(adapter.getMessageConverters());
+        }
+
+        Map<String, AnnotationMethodHandlerAdapter> legacyAdapters = BeanFactoryUtils.beansOfTypeIncludingAncestors(
+                this.applicationContext, AnnotationMethodHandlerAdapter.class, true, false);
+        for (AnnotationMethodHandlerAdapter adapter : legacyAdapters.values()) {
+            HttpMessageConverter<?>[] adapterConverters = adapter.getMessageConverters();
+            if (adapterConverters != null) {
+                Collections.addAll(converters, adapterConverters);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Discovered " + converters.size() + " HttpMessageConverters registered with the application's " +
+                    "handler adapters.");
+        }
+        return converters;
     }
 
     //leverage Spring's existing default setup behavior:
@@ -173,6 +616,192 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
         }
     }
 
+    /**
+     * Exercises the resolve/convert/write pipeline for every mapped exception type, media type and locale in memory,
+     * and compiles the effective exception mappings of every {@code @RequestMapping} handler method.
+     */
+    protected void warmUp() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.warmUpTimeBudget);
+
+        List<Exception> exceptions = createWarmUpExceptions();
+        List<RestErrorConverter<?>> converters = new ArrayList<RestErrorConverter<?>>();
+        if (this.errorConverter != null) {
+            converters.add(this.errorConverter);
+        }
+        for (RestErrorConverter<?> converter : this.profileErrorConverters.values()) {
+            if (!converters.contains(converter)) {
+                converters.add(converter);
+            }
+        }
+        int rendered = 0;
+        int handlers = 0;
+
+        warmUp:
+        {
+            for (Exception ex : exceptions) {
+                for (Locale locale : this.warmUpLocales) {
+                    if (isExpired(deadline)) {
+                        break warmUp;
+                    }
+                    rendered += warmUp(ex, locale, converters);
+                }
+            }
+            if (getErrorResolver() instanceof DefaultRestErrorResolver) {
+                DefaultRestErrorResolver resolver = (DefaultRestErrorResolver) getErrorResolver();
+                for (HandlerMethod handlerMethod : getHandlerMethods()) {
+                    if (isExpired(deadline)) {
+                        break warmUp;
+                    }
+                    resolver.getExceptionMappings(handlerMethod);
+                    handlers++;
+                }
+            }
+        }
+        if (isExpired(deadline)) {
+            log.warn("REST error warm-up exceeded its time budget of " + this.warmUpTimeBudget +
+                    " ms.  Skipped the remaining warm-up work.");
+        }
+
+        if (log.isInfoEnabled()) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("REST error warm-up rendered " + rendered + " error responses for " + exceptions.size() +
+                    " exception types and compiled the exception mappings of " + handlers + " handler methods in " +
+                    millis + " ms.");
+        }
+    }
+
+    private boolean isExpired(long deadline) {
+        return this.warmUpTimeBudget > 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Resolves the specified exception in the specified locale and renders it with every converter in every warm-up
+     * media type, into memory.  Neither reported to the errorListeners nor recorded with the errorRateTracker or
+     * degradedModeDetector.
+     *
+     * @return the number of rendered responses.
+     */
+    private int warmUp(Exception ex, Locale locale, List<RestErrorConverter<?>> converters) {
+        int rendered = 0;
+        MediaType mediaType = null;
+        try {
+            RestErrorResolver resolver = getErrorResolver();
+            //other resolvers can't resolve without a request, so only the rendering is warmed up for them:
+            RestError error = resolver instanceof DefaultRestErrorResolver ?
+                    ((DefaultRestErrorResolver) resolver).warmUp(null, ex, locale) :
+                    new RestError.Builder().setStatus(500).setMessage(ex.getMessage()).setThrowable(ex).build();
+            if (error == null) {
+                return 0;
+            }
+            for (RestErrorConverter<?> converter : converters) {
+                Object body = converter.convert(error);
+                for (MediaType each : this.warmUpMediaTypes) {
+                    mediaType = each;
+                    HttpMessageConverter<Object> messageConverter = getMessageConverter(body.getClass(), mediaType);
+                    if (messageConverter != null) {
+                        messageConverter.write(body, mediaType, new WarmUpOutputMessage());
+                        rendered++;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Unable to warm up error rendering for exception [" + ex.getClass().getName() + "], media type [" +
+                    mediaType + "] and locale [" + locale + "].", e);
+        }
+        return rendered;
+    }
+
+    /**
+     * Returns the handler methods of the application's {@code RequestMappingHandlerMapping}s.
+     */
+    private List<HandlerMethod> getHandlerMethods() {
+        List<HandlerMethod> handlerMethods = new ArrayList<HandlerMethod>();
+        if (this.applicationContext == null) {
+            return handlerMethods;
+        }
+        Map<String, RequestMappingHandlerMapping> mappings = BeanFactoryUtils.beansOfTypeIncludingAncestors(
+                this.applicationContext, RequestMappingHandlerMapping.class, true, false);
+        for (RequestMappingHandlerMapping mapping : mappings.values()) {
+            handlerMethods.addAll(mapping.getHandlerMethods().values());
+        }
+        return handlerMethods;
+    }
+
+    /**
+     * Loads every exception class named in the {@link DefaultRestErrorResolver} mappings and returns a synthetic
+     * instance of each one that can be created with a {@code String} or no-argument constructor.
+     *
+     * @return synthetic instances of the mapped exception classes.
+     * @throws IllegalStateException if a mapping names a loadable class that is not a {@code Throwable}.
+     */
+    private List<Exception> createWarmUpExceptions() {
+        Map<Class<?>, Exception> exceptions = new LinkedHashMap<Class<?>, Exception>();
+        exceptions.put(Exception.class, new Exception("REST error warm-up"));
+
+        RestErrorResolver resolver = getErrorResolver();
+        if (!(resolver instanceof DefaultRestErrorResolver)) {
+            return new ArrayList<Exception>(exceptions.values());
+        }
+
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+        for (String key : ((DefaultRestErrorResolver) resolver).getExceptionMappings(null).keySet()) {
+            Class<?> clazz = loadClass(key, classLoader);
+            if (clazz == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Exception mapping [" + key + "] does not name a loadable class.  Skipping warm-up " +
+                            "for it.");
+                }
+                continue;
+            }
+            if (!Throwable.class.isAssignableFrom(clazz)) {
+                throw new IllegalStateException("Exception mapping [" + key + "] refers to class [" +
+                        clazz.getName() + "] which is not a java.lang.Throwable.");
+            }
+            if (!Exception.class.isAssignableFrom(clazz) || exceptions.containsKey(clazz) ||
+                    Modifier.isAbstract(clazz.getModifiers())) {
+                continue;
+            }
+            Exception ex = instantiate(clazz);
+            if (ex != null) {
+                exceptions.put(clazz, ex);
+            }
+        }
+
+        return new ArrayList<Exception>(exceptions.values());
+    }
+
+    private Class<?> loadClass(String name, ClassLoader classLoader) {
+        String[] candidates = name.indexOf('.') >= 0 ? new String[]{name} : new String[]{name, "java.lang." + name};
+        for (String candidate : candidates) {
+            try {
+                return ClassUtils.forName(candidate, classLoader);
+            } catch (ClassNotFoundException ignored) {
+                //try the next candidate
+            } catch (LinkageError e) {
+                throw new IllegalStateException("Unable to load exception class [" + candidate + "].", e);
+            }
+        }
+        return null;
+    }
+
+    private Exception instantiate(Class<?> clazz) {
+        try {
+            Constructor<?> ctor = ClassUtils.getConstructorIfAvailable(clazz, String.class);
+            if (ctor != null) {
+                return (Exception) BeanUtils.instantiateClass(ctor, "REST error warm-up");
+            }
+            ctor = ClassUtils.getConstructorIfAvailable(clazz);
+            if (ctor != null) {
+                return (Exception) BeanUtils.instantiateClass(ctor);
+            }
+        } catch (Exception e) {
+            log.debug("Unable to instantiate exception class [" + clazz.getName() + "] for warm-up.", e);
+        }
+        return null;
+    }
+
     /**
      * Actually resolve the given exception that got thrown during on handler execution, returning a ModelAndView that
      * represents a specific error page if appropriate.
@@ -191,21 +820,109 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
     @Override
     protected ModelAndView doResolveException(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
 
+        if (request.getAttribute(RENDERED_ATTRIBUTE) != null) {
+            return new ModelAndView();
+        }
+
+        //nothing can be rendered for these, so they are counted and treated as handled without any further work:
+        if (response.isCommitted()) {
+            this.committedResponseCount.incrementAndGet();
+            return new ModelAndView();
+        }
+        if (this.clientAbortDetector.isClientAbort(ex)) {
+            this.clientAbortCount.incrementAndGet();
+            return new ModelAndView();
+        }
+
         ServletWebRequest webRequest = new ServletWebRequest(request, response);
 
         RestErrorResolver resolver = getErrorResolver();
 
+        DegradedModeDetector detector = this.degradedModeDetector;
+        boolean degraded = detector != null && detector.isDegraded();
+        long errorStart = detector != null ? System.nanoTime() : 0;
+
+        RestErrorTimings timings = !degraded ? getMeasuredTimings(webRequest) : null;
+        long start = timings != null ? System.nanoTime() : 0;
+
         RestError error = resolver.resolveError(webRequest, handler, ex);
         if (error == null) {
             return null;
         }
 
+        if (timings != null) {
+            timings.setResolveNanos(System.nanoTime() - start);
+        }
+
+        return render(webRequest, handler, error, ex, degraded, errorStart);
+    }
+
+    /**
+     * Renders an error that was not resolved from an exception, for example a status sent with
+     * {@code response.sendError} (see {@link RestErrorFilter}).  The error is subject to the same handling as the
+     * errors this handler resolves: nothing is rendered if the error has already been {@link #RENDERED_ATTRIBUTE
+     * rendered} or the response is committed, the error is counted by the
+     * {@link #setErrorRateTracker(ErrorRateTracker) errorRateTracker} and rendered in degraded mode if the
+     * {@link #setDegradedModeDetector(DegradedModeDetector) degradedModeDetector} reports it, cacheable errors are
+     * stored in the {@link #setIdempotentErrorCache(IdempotentErrorCache) idempotentErrorCache} and the
+     * {@link #setErrorListener(RestErrorListener) errorListener} is notified of the rendering.
+     *
+     * @param request  current HTTP request
+     * @param response current HTTP response
+     * @param handler  the executed handler, or {@code null} if none
+     * @param error    the error to render
+     * @return an empty {@code ModelAndView} if the error was rendered or nothing can be rendered, or {@code null} if
+     *         the error could not be rendered
+     */
+    public ModelAndView renderError(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                    RestError error) {
+        if (request.getAttribute(RENDERED_ATTRIBUTE) != null) {
+            return new ModelAndView();
+        }
+        if (response.isCommitted()) {
+            this.committedResponseCount.incrementAndGet();
+            return new ModelAndView();
+        }
+
+        DegradedModeDetector detector = this.degradedModeDetector;
+        boolean degraded = detector != null && detector.isDegraded();
+        long errorStart = detector != null ? System.nanoTime() : 0;
+
+        return render(new ServletWebRequest(request, response), handler, error, null, degraded, errorStart);
+    }
+
+    private ModelAndView render(ServletWebRequest webRequest, Object handler, RestError error, Exception ex,
+                                boolean degraded, long errorStart) {
+
+        HttpServletRequest request = webRequest.getRequest();
+
+        if (this.errorRateTracker != null && request.getAttribute(ErrorRateTracker.RECORDED_ATTRIBUTE) == null) {
+            this.errorRateTracker.recordFailure(handler, error.getStatus().value());
+            request.setAttribute(ErrorRateTracker.RECORDED_ATTRIBUTE, Boolean.TRUE);
+        }
+
         ModelAndView mav = null;
 
         try {
-            mav = getModelAndView(webRequest, handler, error);
+            if (degraded) {
+                mav = getDegradedModelAndView(webRequest, error);
+            } else {
+                mav = getModelAndView(webRequest, handler, error);
+            }
         } catch (Exception invocationEx) {
-            log.error("Acquiring ModelAndView for Exception [" + ex + "] resulted in an exception.", invocationEx);
+            if (this.clientAbortDetector.isClientAbort(invocationEx)) {
+                //the client disconnected while the body was written:
+                this.clientAbortCount.incrementAndGet();
+                mav = new ModelAndView();
+            } else if (!degraded) {
+                log.error("Acquiring ModelAndView for " + (ex != null ? "Exception [" + ex + "]" : error) +
+                        " resulted in an exception.", invocationEx);
+            }
+        }
+
+        DegradedModeDetector detector = this.degradedModeDetector;
+        if (detector != null) {
+            detector.recordError(System.nanoTime() - errorStart);
         }
 
         return mav;
@@ -214,26 +931,176 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
     protected ModelAndView getModelAndView(ServletWebRequest webRequest, Object handler, RestError error) throws Exception {
 
         applyStatusIfPossible(webRequest, error);
+        applyCacheHeadersIfPossible(webRequest, error);
 
         Object body = error; //default the error instance in case they don't configure an error converter
 
-        RestErrorConverter converter = getErrorConverter();
+        RestErrorConverter<?> converter = getErrorConverter(webRequest);
         if (converter != null) {
+            RestErrorTimings timings = getMeasuredTimings(webRequest);
+            long start = timings != null ? System.nanoTime() : 0;
             body = converter.convert(error);
+            if (timings != null) {
+                timings.setMessageNanos(System.nanoTime() - start);
+            }
         }
 
-        return handleResponseBody(body, webRequest);
+        return handleResponseBody(body, webRequest, error);
+    }
+
+    /**
+     * Renders the terse JSON body precomputed for the error's status, bypassing the {@code RestErrorConverter}, content
+     * negotiation and the {@code HttpMessageConverter}s.  Clients that do not accept JSON only receive the status,
+     * without a body.  Used instead of {@link #getModelAndView(ServletWebRequest, Object, RestError)} while the
+     * {@link #setDegradedModeDetector(DegradedModeDetector) degradedModeDetector} reports degraded mode.  The error's
+     * messages are never resolved.
+     *
+     * @param webRequest the current request/response pair
+     * @param error      the resolved error
+     * @return an empty {@code ModelAndView}, since the body has been rendered
+     * @throws IOException if the body could not be written
+     */
+    protected ModelAndView getDegradedModelAndView(ServletWebRequest webRequest, RestError error) throws IOException {
+
+        applyStatusIfPossible(webRequest, error);
+        applyCacheHeadersIfPossible(webRequest, error);
+
+        HttpServletResponse response = webRequest.getResponse();
+        if (!acceptsJson(webRequest.getRequest())) {
+            response.setContentLength(0);
+            return new ModelAndView();
+        }
+
+        byte[] body = getDegradedBody(error.getStatus().value());
+        response.setContentType("application/json;charset=UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+
+        return new ModelAndView();
+    }
+
+    private static boolean acceptsJson(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        if (!StringUtils.hasText(accept)) {
+            return true;
+        }
+        try {
+            for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                    return true;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            //malformed header - not worth reporting in degraded mode
+        }
+        return false;
+    }
+
+    private byte[] getDegradedBody(int status) {
+        byte[] body = this.degradedBodies.get(status);
+        if (body == null) {
+            //racing threads compute identical bodies:
+            String reason = RestError.toHttpStatus(status).getReasonPhrase();
+            body = ("{\"status\":" + status + ",\"message\":\"" + reason + "\"}").getBytes(UTF_8);
+            this.degradedBodies.set(status, body);
+        }
+        return body;
+    }
+
+    /**
+     * Skips logging client aborts, as well as everything while in degraded mode, so logging doesn't add to the load
+     * that caused it.
+     * <p/>
+     * Otherwise, exceptions are only logged if a {@link #setWarnLogCategory(String) warnLogCategory} is set (it is not
+     * by default).  Most logging backends serialize appends with a lock, which pins the carrier thread of a virtual
+     * thread when many requests fail at once; on virtual-thread executors, leave the category unset or route it to an
+     * asynchronous appender.
+     */
+    @Override
+    protected void logException(Exception ex, HttpServletRequest request) {
+        if ((this.degradedModeDetector == null || !this.degradedModeDetector.isDegraded()) &&
+                !this.clientAbortDetector.isClientAbort(ex)) {
+            super.logException(ex, request);
+        }
+    }
+
+    /**
+     * Returns the current request's timings if the phases are to be measured, either for the {@code Server-Timing}
+     * header or for the {@link #setErrorListener(RestErrorListener) errorListener}, or {@code null} otherwise.
+     */
+    private RestErrorTimings getMeasuredTimings(ServletWebRequest webRequest) {
+        if (this.timingEnabled || (this.errorListener != null && this.errorListener.isEnabled())) {
+            return getTimings(webRequest);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current request's timings, creating them if necessary.
+     */
+    private RestErrorTimings getTimings(ServletWebRequest webRequest) {
+        HttpServletRequest request = webRequest.getRequest();
+        RestErrorTimings timings = (RestErrorTimings) request.getAttribute(RestErrorTimings.ATTRIBUTE);
+        if (timings == null) {
+            timings = new RestErrorTimings();
+            request.setAttribute(RestErrorTimings.ATTRIBUTE, timings);
+        }
+        return timings;
     }
 
     private void applyStatusIfPossible(ServletWebRequest webRequest, RestError error) {
         if (!WebUtils.isIncludeRequest(webRequest.getRequest())) {
             webRequest.getResponse().setStatus(error.getStatus().value());
         }
-        //TODO support response.sendError ?
+        //response.sendError calls are not visible to exception resolvers - RestErrorFilter renders those in place.
     }
 
-    @SuppressWarnings("unchecked")
-    private ModelAndView handleResponseBody(Object body, ServletWebRequest webRequest) throws ServletException, IOException {
+    /**
+     * Applies the error's {@link RestError#getMaxAge() maxAge} as {@code Cache-Control} and {@code Expires} headers and
+     * its {@link RestError#getRetryAfter() retryAfter} as a {@code Retry-After} header, if specified.
+     */
+    private void applyCacheHeadersIfPossible(ServletWebRequest webRequest, RestError error) {
+        if (WebUtils.isIncludeRequest(webRequest.getRequest())) {
+            return;
+        }
+        applyCacheHeaders(webRequest.getResponse(), error.getMaxAge(), error.getRetryAfter());
+    }
+
+    /**
+     * Applies the specified caching policy as response headers.  Also used to replay stored responses.
+     */
+    static void applyCacheHeaders(HttpServletResponse response, int maxAge, int retryAfter) {
+        if (maxAge > 0) {
+            response.setHeader("Cache-Control", "max-age=" + maxAge);
+            response.setDateHeader("Expires", System.currentTimeMillis() + maxAge * 1000L);
+        } else if (maxAge == 0) {
+            response.setHeader("Cache-Control", "no-cache");
+            response.setDateHeader("Expires", 1L);
+        }
+        if (retryAfter >= 0) {
+            response.setIntHeader("Retry-After", retryAfter);
+        }
+    }
+
+    /**
+     * Writes the specified body with the first {@code HttpMessageConverter} able to render it for the request's
+     * accepted media types.
+     *
+     * @param body       the response body to render
+     * @param webRequest the current request/response pair
+     * @return an empty {@code ModelAndView} if the body was rendered, or {@code null} if no converter could render it
+     * @throws ServletException if the body could not be rendered
+     * @throws IOException      if the body could not be written
+     */
+    protected ModelAndView handleResponseBody(Object body, ServletWebRequest webRequest) throws ServletException, IOException {
+        return handleResponseBody(body, webRequest, null);
+    }
+
+    private ModelAndView handleResponseBody(Object body, ServletWebRequest webRequest, RestError error)
+            throws ServletException, IOException {
+
+        RestErrorTimings timings = getMeasuredTimings(webRequest);
+        long start = timings != null ? System.nanoTime() : 0;
 
         HttpInputMessage inputMessage = new ServletServerHttpRequest(webRequest.getRequest());
 
@@ -244,22 +1111,40 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
 
         MediaType.sortByQualityValue(acceptedMediaTypes);
 
-        HttpOutputMessage outputMessage = new ServletServerHttpResponse(webRequest.getResponse());
-
         Class<?> bodyType = body.getClass();
 
-        List<HttpMessageConverter<?>> converters = this.allMessageConverters;
-
-        if (converters != null) {
-            for (MediaType acceptedMediaType : acceptedMediaTypes) {
-                for (HttpMessageConverter messageConverter : converters) {
-                    if (messageConverter.canWrite(bodyType, acceptedMediaType)) {
-                        messageConverter.write(body, acceptedMediaType, outputMessage);
-                        //return empty model and view to short circuit the iteration and to let
-                        //Spring know that we've rendered the view ourselves:
-                        return new ModelAndView();
+        for (MediaType acceptedMediaType : acceptedMediaTypes) {
+            HttpMessageConverter<Object> messageConverter = getMessageConverter(bodyType, acceptedMediaType);
+            if (messageConverter != null) {
+                if (timings != null) {
+                    timings.setNegotiateNanos(System.nanoTime() - start);
+                }
+                long bodyLength = -1;
+                boolean store = error != null && this.idempotentErrorCache != null &&
+                        this.idempotentErrorCache.isStorable(webRequest.getRequest(), error);
+                if (this.bufferedRendering || store) {
+                    bodyLength = writeBuffered(messageConverter, body, acceptedMediaType, webRequest, timings,
+                            store ? error : null);
+                } else {
+                    if (timings != null) {
+                        if (this.timingEnabled) {
+                            //the write phase can't be reported in a header that must precede the body:
+                            webRequest.getResponse().setHeader(RestErrorTimings.HEADER_NAME, timings.toHeaderValue());
+                        }
+                        start = System.nanoTime();
+                    }
+                    HttpOutputMessage outputMessage = new ServletServerHttpResponse(webRequest.getResponse());
+                    messageConverter.write(body, acceptedMediaType, outputMessage);
+                    if (timings != null) {
+                        timings.setWriteNanos(System.nanoTime() - start);
                     }
                 }
+                if (error != null && timings != null && this.errorListener != null) {
+                    this.errorListener.errorRendered(webRequest, error, acceptedMediaType, bodyLength, timings);
+                }
+                //return empty model and view to short circuit the iteration and to let
+                //Spring know that we've rendered the view ourselves:
+                return new ModelAndView();
             }
         }
 
@@ -269,4 +1154,67 @@ public class RestExceptionHandler extends AbstractHandlerExceptionResolver imple
         }
         return null;
     }
-}
+
+    /**
+     * Writes the body through a pooled buffer and returns its length, or {@code -1} if it was too large to buffer.  If
+     * an error to store is specified, the buffered response is stored in the {@code idempotentErrorCache}.
+     */
+    private long writeBuffered(HttpMessageConverter<Object> messageConverter, Object body, MediaType mediaType,
+                               ServletWebRequest webRequest, RestErrorTimings timings, RestError store)
+            throws IOException {
+        HttpServletResponse response = webRequest.getResponse();
+        BufferedServletHttpOutputMessage outputMessage = new BufferedServletHttpOutputMessage(response, this.bufferPool);
+        try {
+            long start = timings != null ? System.nanoTime() : 0;
+            messageConverter.write(body, mediaType, outputMessage);
+            if (timings != null) {
+                timings.setWriteNanos(System.nanoTime() - start);
+                if (this.timingEnabled && outputMessage.isBuffered()) {
+                    response.setHeader(RestErrorTimings.HEADER_NAME, timings.toHeaderValue());
+                }
+            }
+            long bodyLength = outputMessage.isBuffered() ? outputMessage.getBodyLength() : -1;
+            if (store != null && outputMessage.isBuffered()) {
+                this.idempotentErrorCache.store(webRequest.getRequest(), store, outputMessage.getHeaders(),
+                        outputMessage.copyBody());
+            }
+            outputMessage.complete();
+            return bodyLength;
+        } finally {
+            outputMessage.release();
+        }
+    }
+
+    /**
+     * In-memory output message that warm-up renders into.
+     */
+    private static final class WarmUpOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        public OutputStream getBody() {
+            return this.body;
+        }
+    }
+
+    /**
+     * Returns the first configured {@code HttpMessageConverter} that can write the specified body type for the
+     * specified media type, or {@code null} if there is no such converter.
+     */
+    private HttpMessageConverter<Object> getMessageConverter(Class<?> bodyType, MediaType mediaType) {
+        for (HttpMessageConverter<?> messageConverter : getAllMessageConverters()) {
+            if (messageConverter.canWrite(bodyType, mediaType)) {
+                //canWrite guarantees the converter accepts the body:
+                @SuppressWarnings("unchecked")
+                HttpMessageConverter<Object> converter = (HttpMessageConverter<Object>) messageConverter;
+                return converter;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
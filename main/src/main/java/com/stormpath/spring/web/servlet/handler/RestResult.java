@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+/**
+ * The result of a handler method that either produces a value or fails with an expected {@link RestError}, without
+ * throwing an exception:
+ * <pre>
+ * &#64;RequestMapping(value = "/{username}", method = GET)
+ * public RestResult&lt;User&gt; getUser(&#64;PathVariable String username) {
+ *     User user = userService.findUser(username);
+ *     if (user == null) {
+ *         return RestResult.error(new RestError.Builder().setStatus(404).setMessage("No such user").build());
+ *     }
+ *     return RestResult.ok(user);
+ * }
+ * </pre>
+ * Results are rendered by a {@link RestErrorReturnValueHandler}.
+ *
+ * @param <T> the type of the value produced on success
+ * @see RestErrorReturnValueHandler
+ */
+public final class RestResult<T> {
+
+    private final T value;
+    private final RestError error;
+
+    private RestResult(T value, RestError error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> RestResult<T> ok(T value) {
+        return new RestResult<T>(value, null);
+    }
+
+    public static <T> RestResult<T> error(RestError error) {
+        if (error == null) {
+            throw new IllegalArgumentException("RestError argument cannot be null.");
+        }
+        return new RestResult<T>(null, error);
+    }
+
+    public boolean isError() {
+        return this.error != null;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public RestError getError() {
+        return error;
+    }
+}
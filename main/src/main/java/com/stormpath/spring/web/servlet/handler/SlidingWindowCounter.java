@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter of successes and errors over a sliding time window.
+ * <p/>
+ * Counts are kept in a preallocated ring of fixed-duration time buckets.  Each bucket is striped across a few counter
+ * cells (selected by thread) to reduce contention between concurrently recording threads.  A bucket is lazily reset
+ * by the first thread to record into it after its time slot has passed.  Samples for a bucket whose ring slot has
+ * already moved on to a newer bucket are dropped; increments racing with a reset may be lost or attributed to the
+ * new bucket, so counts are approximate at bucket boundaries.
+ */
+final class SlidingWindowCounter {
+
+    private static final int STRIPES = 4; //must be a power of two
+
+    private final long bucketMillis;
+    private final int buckets;
+
+    //the bucket epoch (time / bucketMillis) each ring slot currently holds:
+    private final AtomicLongArray epochs;
+    //indexed by (slot * STRIPES + stripe):
+    private final AtomicLongArray successes;
+    private final AtomicLongArray errors;
+
+    SlidingWindowCounter(long bucketMillis, int buckets) {
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.epochs = new AtomicLongArray(buckets);
+        this.successes = new AtomicLongArray(buckets * STRIPES);
+        this.errors = new AtomicLongArray(buckets * STRIPES);
+    }
+
+    void record(boolean error, long now) {
+        long epoch = now / this.bucketMillis;
+        int slot = (int) (epoch % this.buckets);
+        long current = this.epochs.get(slot);
+        while (current != epoch) {
+            if (current > epoch) {
+                return; //recorded too late, the slot already holds a newer bucket
+            }
+            if (this.epochs.compareAndSet(slot, current, epoch)) {
+                for (int i = slot * STRIPES, end = i + STRIPES; i < end; i++) {
+                    this.successes.set(i, 0);
+                    this.errors.set(i, 0);
+                }
+                break;
+            }
+            current = this.epochs.get(slot);
+        }
+        int cell = slot * STRIPES + ((int) Thread.currentThread().getId() & (STRIPES - 1));
+        if (error) {
+            this.errors.incrementAndGet(cell);
+        } else {
+            this.successes.incrementAndGet(cell);
+        }
+    }
+
+    /**
+     * Returns the {@code [successes, errors]} recorded within the specified number of milliseconds before
+     * {@code now}, rounded up to whole buckets and capped at the ring's capacity.
+     */
+    long[] getCounts(long windowMillis, long now) {
+        long epoch = now / this.bucketMillis;
+        int count = (int) Math.min(this.buckets, Math.max(1, (windowMillis + this.bucketMillis - 1) / this.bucketMillis));
+        long s = 0;
+        long e = 0;
+        for (long bucketEpoch = epoch - count + 1; bucketEpoch <= epoch; bucketEpoch++) {
+            int slot = (int) (bucketEpoch % this.buckets);
+            if (this.epochs.get(slot) != bucketEpoch) {
+                continue; //no activity in that bucket
+            }
+            for (int i = slot * STRIPES, end = i + STRIPES; i < end; i++) {
+                s += this.successes.get(i);
+                e += this.errors.get(i);
+            }
+        }
+        return new long[]{s, e};
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compiled {@link DefaultRestErrorResolver#setSqlStateMappingDefinitions(java.util.Map) SQLState} and
+ * {@link DefaultRestErrorResolver#setVendorCodeMappingDefinitions(java.util.Map) vendor code} mappings.
+ * <p/>
+ * SQLStates are encoded as base-36 integers, so every lookup is a probe into an open-addressing table keyed by a
+ * primitive {@code int}: first the vendor code, then the full five character SQLState, then its two character class.
+ * Instances are immutable.
+ */
+final class SqlErrorMappings {
+
+    private static final int MAX_CAUSE_DEPTH = 8;
+
+    private final IntTable vendorCodes;
+    private final IntTable sqlStates;
+    private final IntTable sqlStateClasses;
+
+    private SqlErrorMappings(IntTable vendorCodes, IntTable sqlStates, IntTable sqlStateClasses) {
+        this.vendorCodes = vendorCodes;
+        this.sqlStates = sqlStates;
+        this.sqlStateClasses = sqlStateClasses;
+    }
+
+    /**
+     * Compiles the specified templates, or returns {@code null} if there are none.
+     *
+     * @param sqlStateTemplates   templates keyed by five character SQLState or two character SQLState class
+     * @param vendorCodeTemplates templates keyed by vendor code
+     * @return the compiled mappings, or {@code null} if there are none.
+     * @throws IllegalArgumentException if a key is not a valid SQLState, SQLState class or vendor code
+     */
+    static SqlErrorMappings compile(Map<String, RestError> sqlStateTemplates, Map<String, RestError> vendorCodeTemplates) {
+        if (sqlStateTemplates.isEmpty() && vendorCodeTemplates.isEmpty()) {
+            return null;
+        }
+        IntTable vendorCodes = new IntTable(vendorCodeTemplates.size());
+        for (Map.Entry<String, RestError> entry : vendorCodeTemplates.entrySet()) {
+            String key = entry.getKey().trim();
+            int code;
+            try {
+                code = Integer.parseInt(key);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid vendor code mapping [" + key + "].", e);
+            }
+            vendorCodes.put(code, new Mapping("vendorCode=" + key, entry.getValue()));
+        }
+        IntTable sqlStates = new IntTable(sqlStateTemplates.size());
+        IntTable sqlStateClasses = new IntTable(sqlStateTemplates.size());
+        for (Map.Entry<String, RestError> entry : sqlStateTemplates.entrySet()) {
+            String key = entry.getKey().trim();
+            int encoded = encode(key, key.length());
+            if (encoded < 0 || (key.length() != 5 && key.length() != 2)) {
+                throw new IllegalArgumentException("Invalid SQLState mapping [" + key + "].  SQLState mappings must " +
+                        "be five character SQLStates (e.g. 23505) or two character SQLState classes (e.g. 40).");
+            }
+            IntTable table = key.length() == 5 ? sqlStates : sqlStateClasses;
+            table.put(encoded, new Mapping("sqlState=" + key, entry.getValue()));
+        }
+        return new SqlErrorMappings(vendorCodes, sqlStates, sqlStateClasses);
+    }
+
+    /**
+     * Returns the first {@code SQLException} in the specified exception's cause chain, or {@code null} if there is
+     * none.
+     */
+    static SQLException findSQLException(Throwable t) {
+        for (int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (t instanceof SQLException) {
+                return (SQLException) t;
+            }
+            Throwable cause = t.getCause();
+            t = cause != t ? cause : null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the mapping matching the specified exception, or {@code null} if there is none.
+     */
+    Mapping find(SQLException ex) {
+        Mapping mapping = this.vendorCodes.get(ex.getErrorCode());
+        if (mapping != null) {
+            return mapping;
+        }
+        String sqlState = ex.getSQLState();
+        if (sqlState == null || sqlState.length() < 2) {
+            return null;
+        }
+        int encoded = sqlState.length() == 5 ? encode(sqlState, 5) : -1;
+        if (encoded >= 0) {
+            mapping = this.sqlStates.get(encoded);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        encoded = encode(sqlState, 2);
+        return encoded >= 0 ? this.sqlStateClasses.get(encoded) : null;
+    }
+
+    /**
+     * Encodes the first {@code length} characters of the specified SQLState as a base-36 number, or returns
+     * {@code -1} if they are not all digits or upper case letters.
+     */
+    private static int encode(String sqlState, int length) {
+        if (sqlState.length() < length) {
+            return -1;
+        }
+        int encoded = 0;
+        for (int i = 0; i < length; i++) {
+            char c = sqlState.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'A' && c <= 'Z') {
+                digit = c - 'A' + 10;
+            } else {
+                return -1;
+            }
+            encoded = encoded * 36 + digit;
+        }
+        return encoded;
+    }
+
+    static final class Mapping {
+
+        private final String key;
+        private final RestError template;
+
+        Mapping(String key, RestError template) {
+            this.key = key;
+            this.template = template;
+        }
+
+        /**
+         * Returns a description of the mapping, for example {@code sqlState=23505}.
+         */
+        String getKey() {
+            return key;
+        }
+
+        RestError getTemplate() {
+            return template;
+        }
+    }
+
+    /**
+     * Open-addressing (linear probing) table with primitive {@code int} keys.  At least half of the slots are always
+     * empty, so probes are short and always terminate.
+     */
+    private static final class IntTable {
+
+        //not a valid key - encoded SQLStates are never negative and no vendor uses it as an error code:
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        private final int[] keys;
+        private final Mapping[] values;
+        private final int mask;
+        private int size;
+
+        IntTable(int expectedSize) {
+            int capacity = 2;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            this.keys = new int[capacity];
+            Arrays.fill(this.keys, EMPTY);
+            this.values = new Mapping[capacity];
+            this.mask = capacity - 1;
+        }
+
+        void put(int key, Mapping value) {
+            if (key == EMPTY) {
+                throw new IllegalArgumentException("Invalid mapping [" + value.key + "].");
+            }
+            int i = hash(key) & this.mask;
+            while (this.keys[i] != EMPTY && this.keys[i] != key) {
+                i = (i + 1) & this.mask;
+            }
+            if (this.keys[i] == EMPTY) {
+                this.size++;
+            }
+            this.keys[i] = key;
+            this.values[i] = value;
+        }
+
+        Mapping get(int key) {
+            if (key == EMPTY || this.size == 0) {
+                return null;
+            }
+            int i = hash(key) & this.mask;
+            while (true) {
+                int k = this.keys[i];
+                if (k == key) {
+                    return this.values[i];
+                }
+                if (k == EMPTY) {
+                    return null;
+                }
+                i = (i + 1) & this.mask;
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders exception stack traces for inclusion in a {@link RestError#getDeveloperMessage() developerMessage} at a
+ * bounded cost.  Compared to {@code Throwable.printStackTrace}, this renderer:
+ * <ul>
+ *     <li>renders at most {@link #setMaxFrames(int) maxFrames} frames per exception,</li>
+ *     <li>collapses runs of framework frames (see {@link #setExcludedPackages(String[]) excludedPackages}) into a
+ *     single line,</li>
+ *     <li>renders at most {@link #setMaxCauses(int) maxCauses} nested causes and folds the frames each cause has in
+ *     common with its enclosing exception, and</li>
+ *     <li>caches the rendered frames per throw site (the exception types and stack frames of the whole cause chain),
+ *     so repeated identical failures only render their exception messages.</li>
+ * </ul>
+ * The cache only saves the formatting of the frames.  Every render still calls {@code getStackTrace()} on each
+ * exception in the cause chain, which materializes (and copies) its frames, and a cache hit still compares every
+ * frame of the chain with the cached throw site.  Only the top {@value #HASHED_FRAMES} frames of each exception are
+ * hashed, which bounds the cost of computing the cache key.  Rendering stack traces is therefore intended for
+ * non-production environments or rare errors, not for every response of a high-volume error path.
+ * <p/>
+ * Instances are thread-safe once configured.
+ *
+ * @see DefaultRestErrorResolver#DEFAULT_STACK_TRACE_VALUE
+ */
+public class StackTraceRenderer {
+
+    private static final String[] DEFAULT_EXCLUDED_PACKAGES = {
+            "org.springframework.", "sun.reflect.", "jdk.internal.reflect.", "java.lang.reflect.", "javax.servlet.",
+            "org.apache.catalina.", "org.apache.coyote.", "org.apache.tomcat.", "org.eclipse.jetty.", "org.mortbay."
+    };
+
+    //frames hashed per exception for the cache key; deeper frames are only compared on a hash match:
+    static final int HASHED_FRAMES = 8;
+
+    private int maxFrames = 16;
+    private int maxCauses = 4;
+    private int maxCachedTraces = 256;
+    private String[] excludedPackages = DEFAULT_EXCLUDED_PACKAGES;
+
+    private final ConcurrentMap<ThrowSite, String[]> renderedFrames = new ConcurrentHashMap<ThrowSite, String[]>();
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * Sets the maximum number of non-excluded frames rendered per exception in the cause chain.  Defaults to
+     * {@code 16}.
+     *
+     * @param maxFrames the maximum number of frames rendered per exception.
+     */
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+        this.renderedFrames.clear();
+    }
+
+    public int getMaxCauses() {
+        return maxCauses;
+    }
+
+    /**
+     * Sets the maximum number of nested causes rendered below the top-level exception.  Defaults to {@code 4}.
+     *
+     * @param maxCauses the maximum number of nested causes rendered.
+     */
+    public void setMaxCauses(int maxCauses) {
+        this.maxCauses = maxCauses;
+        this.renderedFrames.clear();
+    }
+
+    public int getMaxCachedTraces() {
+        return maxCachedTraces;
+    }
+
+    /**
+     * Sets the maximum number of distinct throw sites whose rendered frames are cached.  Defaults to {@code 256}.
+     *
+     * @param maxCachedTraces the maximum number of distinct throw sites to cache.
+     */
+    public void setMaxCachedTraces(int maxCachedTraces) {
+        this.maxCachedTraces = maxCachedTraces;
+    }
+
+    public String[] getExcludedPackages() {
+        return excludedPackages;
+    }
+
+    /**
+     * Sets the class name prefixes of frames that are collapsed rather than rendered.  Defaults to the Spring
+     * Framework, reflection, Servlet API and common servlet container packages.
+     *
+     * @param excludedPackages the class name prefixes of frames that are collapsed rather than rendered.
+     */
+    public void setExcludedPackages(String[] excludedPackages) {
+        this.excludedPackages = excludedPackages != null ? excludedPackages : new String[0];
+        this.renderedFrames.clear();
+    }
+
+    /**
+     * Renders the stack trace of the specified throwable and its causes.
+     *
+     * @param t the throwable to render
+     * @return the rendered stack trace
+     */
+    public String render(Throwable t) {
+        List<Throwable> chain = new ArrayList<Throwable>(2);
+        boolean truncated = false;
+        for (Throwable each = t; each != null; each = each.getCause()) {
+            if (containsIdentical(chain, each)) {
+                break; //cause cycle
+            }
+            if (chain.size() > this.maxCauses) {
+                truncated = true;
+                break;
+            }
+            chain.add(each);
+        }
+
+        int size = chain.size();
+        Class<?>[] types = new Class<?>[size];
+        StackTraceElement[][] traces = new StackTraceElement[size][];
+        for (int i = 0; i < size; i++) {
+            Throwable each = chain.get(i);
+            types[i] = each.getClass();
+            traces[i] = each.getStackTrace();
+        }
+
+        ThrowSite site = new ThrowSite(types, traces);
+        String[] frames = this.renderedFrames.get(site);
+        if (frames == null) {
+            frames = renderFrames(traces);
+            if (this.renderedFrames.size() < this.maxCachedTraces) {
+                this.renderedFrames.putIfAbsent(site, frames);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append("Caused by: ");
+            }
+            sb.append(chain.get(i)).append('\n').append(frames[i]);
+        }
+        if (truncated) {
+            sb.append("\t... further causes omitted\n");
+        }
+        return sb.toString();
+    }
+
+    private static boolean containsIdentical(List<Throwable> chain, Throwable t) {
+        for (Throwable each : chain) {
+            if (each == t) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String[] renderFrames(StackTraceElement[][] traces) {
+        String[] rendered = new String[traces.length];
+        for (int i = 0; i < traces.length; i++) {
+            int inCommon = i > 0 ? countFramesInCommon(traces[i], traces[i - 1]) : 0;
+            rendered[i] = renderFrames(traces[i], inCommon);
+        }
+        return rendered;
+    }
+
+    private String renderFrames(StackTraceElement[] trace, int inCommon) {
+        StringBuilder sb = new StringBuilder(64 * Math.min(trace.length, this.maxFrames + 2));
+        int unique = trace.length - inCommon;
+        int rendered = 0;
+        int excluded = 0;
+
+        for (int i = 0; i < unique; i++) {
+            StackTraceElement frame = trace[i];
+            if (isExcluded(frame)) {
+                excluded++;
+                continue;
+            }
+            appendExcluded(sb, excluded);
+            excluded = 0;
+            if (rendered == this.maxFrames) {
+                sb.append("\t... ").append(unique - i).append(" more frames\n");
+                return appendInCommon(sb, inCommon);
+            }
+            sb.append("\tat ").append(frame).append('\n');
+            rendered++;
+        }
+        appendExcluded(sb, excluded);
+        return appendInCommon(sb, inCommon);
+    }
+
+    private static void appendExcluded(StringBuilder sb, int excluded) {
+        if (excluded > 0) {
+            sb.append("\t... ").append(excluded).append(excluded == 1 ? " framework frame\n" : " framework frames\n");
+        }
+    }
+
+    private static String appendInCommon(StringBuilder sb, int inCommon) {
+        if (inCommon > 0) {
+            sb.append("\t... ").append(inCommon).append(" more\n");
+        }
+        return sb.toString();
+    }
+
+    private static int countFramesInCommon(StackTraceElement[] trace, StackTraceElement[] enclosingTrace) {
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        return trace.length - 1 - m;
+    }
+
+    private boolean isExcluded(StackTraceElement frame) {
+        String className = frame.getClassName();
+        for (String prefix : this.excludedPackages) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Identifies a throw site by the exception types and stack frames of an entire cause chain.
+     */
+    private static final class ThrowSite {
+
+        private final Class<?>[] types;
+        private final StackTraceElement[][] traces;
+        private final int hash;
+
+        private ThrowSite(Class<?>[] types, StackTraceElement[][] traces) {
+            this.types = types;
+            this.traces = traces;
+            int h = Arrays.hashCode(types);
+            for (StackTraceElement[] trace : traces) {
+                h = 31 * h + trace.length;
+                for (int i = 0; i < trace.length && i < HASHED_FRAMES; i++) {
+                    h = 31 * h + trace[i].hashCode();
+                }
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ThrowSite)) {
+                return false;
+            }
+            ThrowSite other = (ThrowSite) o;
+            return this.hash == other.hash && Arrays.equals(this.types, other.types) &&
+                    Arrays.deepEquals(this.traces, other.traces);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.client;
+
+import com.stormpath.spring.web.servlet.handler.MapRestErrorConverter;
+import com.stormpath.spring.web.servlet.handler.RestError;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class RestErrorDecoderTest {
+
+    private final RestErrorDecoder decoder = new RestErrorDecoder();
+
+    private static InputStream json(String s) throws IOException {
+        return new ByteArrayInputStream(s.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        RestError error = decoder.decode(json("{\"status\":409,\"code\":40901,\"message\":\"Duplicate username\"," +
+                "\"developerMessage\":\"jsmith exists\",\"moreInfoUrl\":\"http://docs/40901\"}"), 409);
+
+        assertEquals(HttpStatus.CONFLICT, error.getStatus());
+        assertEquals(40901, error.getCode());
+        assertEquals("Duplicate username", error.getMessage());
+        assertEquals("jsmith exists", error.getDeveloperMessage());
+        assertEquals("http://docs/40901", error.getMoreInfoUrl());
+    }
+
+    @Test
+    public void testUnknownAndNestedFieldsAreSkipped() throws Exception {
+        RestError error = decoder.decode(json("{\"details\":{\"fields\":[{\"name\":\"username\"}]},\"tags\":[1,2]," +
+                "\"message\":\"Invalid\",\"extra\":true,\"developerMessage\":null}"), 400);
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatus());
+        assertEquals("Invalid", error.getMessage());
+        assertNull(error.getDeveloperMessage());
+    }
+
+    @Test
+    public void testStreamIsNotClosed() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream body = new ByteArrayInputStream("{\"message\":\"x\"}".getBytes("UTF-8")) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        decoder.decode(body, 400);
+        assertFalse(closed[0]);
+    }
+
+    @Test
+    public void testBodyStatusPreferredWhenKnown() throws Exception {
+        assertEquals(HttpStatus.CONFLICT, decoder.decode(json("{\"status\":409}"), 400).getStatus());
+        //not a status:
+        assertEquals(HttpStatus.BAD_REQUEST, decoder.decode(json("{\"status\":42}"), 400).getStatus());
+    }
+
+    @Test
+    public void testUnknownStatusFallsBackToSeries() throws Exception {
+        assertEquals(HttpStatus.BAD_REQUEST, decoder.decode(null, 499).getStatus());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, decoder.decode(null, 599).getStatus());
+        assertNull(RestErrorDecoder.toHttpStatus(700));
+    }
+
+    @Test
+    public void testNonObjectBodies() throws Exception {
+        assertEquals(HttpStatus.NOT_FOUND, decoder.decode(json("[1,2]"), 404).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, decoder.decode(json("<html>Not Found</html>"), 404).getStatus());
+        assertEquals(HttpStatus.NOT_FOUND, decoder.decode(json(""), 404).getStatus());
+    }
+
+    @Test
+    public void testKeysCopiedFromConverter() throws Exception {
+        MapRestErrorConverter converter = new MapRestErrorConverter();
+        converter.setMessageKey("error");
+        RestError error = new RestErrorDecoder(converter).decode(json("{\"error\":\"Nope\",\"message\":\"x\"}"), 400);
+        assertEquals("Nope", error.getMessage());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.client;
+
+import com.stormpath.spring.web.servlet.handler.RestError;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestErrorResponseErrorHandlerTest {
+
+    private RestErrorResponseErrorHandler errorHandler;
+
+    @Before
+    public void setUp() {
+        Map<String, Class<? extends RestErrorException>> mappings =
+                new LinkedHashMap<String, Class<? extends RestErrorException>>();
+        mappings.put("409", ConflictException.class);
+        mappings.put("409:40901", DuplicateUsernameException.class);
+        mappings.put("499", ClientClosedException.class);
+
+        errorHandler = new RestErrorResponseErrorHandler();
+        errorHandler.setExceptionMappings(mappings);
+    }
+
+    private RestErrorException handle(TestResponse response) throws IOException {
+        assertTrue(errorHandler.hasError(response));
+        try {
+            errorHandler.handleError(response);
+        } catch (RestErrorException e) {
+            return e;
+        }
+        throw new AssertionError("handleError should have thrown");
+    }
+
+    @Test
+    public void testHasError() throws Exception {
+        assertFalse(errorHandler.hasError(new TestResponse(200, null)));
+        assertFalse(errorHandler.hasError(new TestResponse(302, null)));
+        assertTrue(errorHandler.hasError(new TestResponse(499, null)));
+        assertFalse(errorHandler.hasError(new TestResponse(600, null)));
+    }
+
+    @Test
+    public void testStatusCodeMappingTakesPrecedence() throws Exception {
+        RestErrorException e = handle(new TestResponse(409, "{\"status\":409,\"code\":40901,\"message\":\"Taken\"}"));
+        assertTrue(e instanceof DuplicateUsernameException);
+        assertEquals(40901, e.getCode());
+        assertEquals("409: Taken", e.getMessage());
+
+        e = handle(new TestResponse(409, "{\"status\":409,\"code\":40902}"));
+        assertEquals(ConflictException.class, e.getClass());
+    }
+
+    @Test
+    public void testUnmappedStatus() throws Exception {
+        RestErrorException e = handle(new TestResponse(404, "{\"status\":404}"));
+        assertEquals(RestErrorException.class, e.getClass());
+        assertEquals(404, e.getStatusCode());
+    }
+
+    @Test
+    public void testUnknownStatusMappedByRawStatus() throws Exception {
+        RestErrorException e = handle(new TestResponse(499, null));
+        assertEquals(ClientClosedException.class, e.getClass());
+        //reported with the generic status of its series:
+        assertEquals(HttpStatus.BAD_REQUEST, e.getRestError().getStatus());
+
+        //not confused with other statuses of the same series:
+        assertEquals(RestErrorException.class, handle(new TestResponse(451, null)).getClass());
+    }
+
+    @Test
+    public void testDecodeBodyDisabled() throws Exception {
+        errorHandler.setDecodeBody(false);
+        TestResponse response = new TestResponse(409, "{\"status\":409,\"code\":40901,\"message\":\"Taken\"}");
+
+        RestErrorException e = handle(response);
+
+        assertFalse(response.bodyRead);
+        assertEquals(ConflictException.class, e.getClass());
+        assertEquals(HttpStatus.CONFLICT, e.getRestError().getStatus());
+        assertNull(e.getRestError().getMessage());
+    }
+
+    @Test
+    public void testNonJsonBodyIsNotRead() throws Exception {
+        TestResponse response = new TestResponse(500, "<html>Oops</html>");
+        response.headers.setContentType(MediaType.TEXT_HTML);
+
+        RestErrorException e = handle(response);
+
+        assertFalse(response.bodyRead);
+        assertEquals(500, e.getStatusCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedKey() {
+        errorHandler.setExceptionMappings(singleMapping("409:x"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonErrorStatusKey() {
+        errorHandler.setExceptionMappings(singleMapping("302"));
+    }
+
+    private static Map<String, Class<? extends RestErrorException>> singleMapping(String key) {
+        Map<String, Class<? extends RestErrorException>> mappings =
+                new LinkedHashMap<String, Class<? extends RestErrorException>>();
+        mappings.put(key, ConflictException.class);
+        return mappings;
+    }
+
+    public static class ConflictException extends RestErrorException {
+        public ConflictException(RestError restError) {
+            super(restError);
+        }
+    }
+
+    public static class DuplicateUsernameException extends ConflictException {
+        public DuplicateUsernameException(RestError restError) {
+            super(restError);
+        }
+    }
+
+    public static class ClientClosedException extends RestErrorException {
+        public ClientClosedException(RestError restError) {
+            super(restError);
+        }
+    }
+
+    private static class TestResponse implements ClientHttpResponse {
+
+        private final int status;
+        private final String body;
+        private final HttpHeaders headers = new HttpHeaders();
+        private boolean bodyRead;
+
+        private TestResponse(int status, String body) {
+            this.status = status;
+            this.body = body;
+            this.headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+
+        public HttpStatus getStatusCode() {
+            return HttpStatus.valueOf(this.status);
+        }
+
+        public int getRawStatusCode() {
+            return this.status;
+        }
+
+        public String getStatusText() {
+            return "";
+        }
+
+        public void close() {
+        }
+
+        public InputStream getBody() throws IOException {
+            this.bodyRead = true;
+            return new ByteArrayInputStream(this.body != null ? this.body.getBytes("UTF-8") : new byte[0]);
+        }
+
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+    }
+}
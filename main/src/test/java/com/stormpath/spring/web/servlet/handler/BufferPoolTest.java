@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testSmallestFittingSizeClass() {
+        BufferPool pool = new BufferPool();
+        assertEquals(512, pool.acquire(1).length);
+        assertEquals(512, pool.acquire(512).length);
+        assertEquals(2048, pool.acquire(513).length);
+        assertEquals(8192, pool.acquire(8192).length);
+        assertEquals(8192, pool.getMaxBufferSize());
+    }
+
+    @Test
+    public void testOverflowReturnsNull() {
+        assertNull(new BufferPool().acquire(8193));
+    }
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        BufferPool pool = new BufferPool();
+        byte[] buffer = pool.acquire(100);
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire(200));
+        //the pool is empty again:
+        assertNotSame(buffer, pool.acquire(200));
+    }
+
+    @Test
+    public void testMaxPooledPerClass() {
+        BufferPool pool = new BufferPool();
+        pool.setMaxPooledPerClass(1);
+        byte[] first = pool.acquire(100);
+        byte[] second = pool.acquire(100);
+        pool.release(first);
+        pool.release(second); //discarded
+
+        assertSame(first, pool.acquire(100));
+        byte[] next = pool.acquire(100);
+        assertNotSame(first, next);
+        assertNotSame(second, next);
+    }
+
+    @Test
+    public void testForeignBuffersAreDiscarded() {
+        BufferPool pool = new BufferPool();
+        byte[] foreign = new byte[1000];
+        pool.release(foreign);
+        pool.release(null);
+        assertNotSame(foreign, pool.acquire(1000));
+    }
+
+    @Test
+    public void testCustomSizeClassesAreSorted() {
+        BufferPool pool = new BufferPool();
+        pool.setSizeClasses(new int[]{4096, 256});
+        assertArrayEquals(new int[]{256, 4096}, pool.getSizeClasses());
+        assertEquals(256, pool.acquire(10).length);
+        assertEquals(4096, pool.getMaxBufferSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySizeClasses() {
+        new BufferPool().setSizeClasses(new int[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveSizeClass() {
+        new BufferPool().setSizeClasses(new int[]{0, 512});
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BufferedServletHttpOutputMessageTest {
+
+    private BufferPool pool;
+    private MockHttpServletResponse response;
+    private BufferedServletHttpOutputMessage message;
+
+    @Before
+    public void setUp() {
+        pool = new BufferPool();
+        pool.setSizeClasses(new int[]{4, 8});
+        response = new MockHttpServletResponse();
+        message = new BufferedServletHttpOutputMessage(response, pool);
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] b = new byte[length];
+        Arrays.fill(b, (byte) 'x');
+        return b;
+    }
+
+    @Test
+    public void testBufferedBodyWrittenOnComplete() throws Exception {
+        message.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        message.getHeaders().set("X-Custom", "value");
+        message.getBody().write(new byte[]{'{', '}'});
+        message.getBody().write('\n');
+        message.getBody().flush();
+
+        assertTrue(message.isBuffered());
+        assertEquals(3, message.getBodyLength());
+        assertArrayEquals(new byte[]{'{', '}', '\n'}, message.copyBody());
+        //nothing is written before completion:
+        assertFalse(response.isCommitted());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertNull(response.getContentType());
+
+        message.complete();
+
+        assertEquals("{}\n", response.getContentAsString());
+        assertEquals(3, response.getContentLength());
+        assertEquals("application/json", response.getContentType());
+        assertEquals("value", response.getHeader("X-Custom"));
+    }
+
+    @Test
+    public void testBufferGrowsAcrossSizeClasses() throws Exception {
+        message.getBody().write(bytes(3));
+        message.getBody().write(bytes(5));
+        assertTrue(message.isBuffered());
+        assertEquals(8, message.getBodyLength());
+
+        message.complete();
+
+        assertEquals("xxxxxxxx", response.getContentAsString());
+        assertEquals(8, response.getContentLength());
+    }
+
+    @Test
+    public void testOverflowSpillsToResponse() throws Exception {
+        message.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+        message.getBody().write(bytes(6));
+        message.getBody().write(bytes(6));
+
+        assertFalse(message.isBuffered());
+        assertEquals(12, message.getBodyLength());
+        //the headers and the buffered bytes are written when spilling:
+        assertEquals("text/plain", response.getContentType());
+        assertEquals(12, response.getContentAsByteArray().length);
+
+        message.complete();
+
+        assertEquals(12, response.getContentAsByteArray().length);
+        //the length was not known in advance:
+        assertEquals(0, response.getContentLength());
+    }
+
+    @Test
+    public void testBufferReturnedToPool() throws Exception {
+        message.getBody().write(bytes(2));
+        message.complete();
+        //release is idempotent:
+        message.release();
+
+        //pooled buffers are not cleared, so the reused buffer still holds the body:
+        assertEquals('x', pool.acquire(4)[0]);
+        assertEquals(0, pool.acquire(4)[0]);
+    }
+
+    @Test
+    public void testReleaseWithoutComplete() throws Exception {
+        message.getBody().write(bytes(2));
+        message.release();
+
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals('x', pool.acquire(4)[0]);
+    }
+
+    @Test
+    public void testSpillReturnsBufferToPool() throws Exception {
+        message.getBody().write(bytes(8));
+        message.getBody().write(bytes(1));
+        assertFalse(message.isBuffered());
+        message.complete();
+
+        assertEquals(9, response.getContentAsByteArray().length);
+        //the 8 byte buffer was released when spilling:
+        assertEquals('x', pool.acquire(8)[0]);
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+        message.complete();
+        assertEquals(0, message.copyBody().length);
+        assertEquals(0, response.getContentLength());
+        assertEquals("", response.getContentAsString());
+    }
+}
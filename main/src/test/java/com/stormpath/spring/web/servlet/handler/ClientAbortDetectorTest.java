@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ClientAbortDetectorTest {
+
+    private ClientAbortDetector detector;
+
+    @Before
+    public void setUp() {
+        detector = new ClientAbortDetector(Collections.singleton(AbortException.class.getName()));
+    }
+
+    @Test
+    public void testDefaultExceptionNames() {
+        assertTrue(ClientAbortDetector.DEFAULT_EXCEPTION_NAMES.contains(
+                "org.apache.catalina.connector.ClientAbortException"));
+        assertTrue(ClientAbortDetector.DEFAULT_EXCEPTION_NAMES.contains("org.eclipse.jetty.io.EofException"));
+    }
+
+    @Test
+    public void testMatchesConfiguredTypesAndSubclasses() {
+        assertTrue(detector.isClientAbort(new AbortException()));
+        assertTrue(detector.isClientAbort(new SpecificAbortException()));
+        //cached results are the same:
+        assertTrue(detector.isClientAbort(new SpecificAbortException()));
+        assertFalse(detector.isClientAbort(new IOException("Disk full")));
+        assertFalse(detector.isClientAbort(new IllegalStateException()));
+        assertFalse(detector.isClientAbort(null));
+    }
+
+    @Test
+    public void testMatchesIOExceptionMessages() {
+        assertTrue(detector.isClientAbort(new IOException("Broken pipe")));
+        assertTrue(detector.isClientAbort(new IOException("java.io.IOException: Connection reset by peer")));
+        assertTrue(detector.isClientAbort(
+                new IOException("An established connection was aborted by the software in your host machine")));
+        assertFalse(detector.isClientAbort(new IOException()));
+    }
+
+    @Test
+    public void testMessagesOnlyMatchIOExceptions() {
+        assertFalse(detector.isClientAbort(new IllegalStateException("Broken pipe")));
+    }
+
+    @Test
+    public void testMatchesCauses() {
+        assertTrue(detector.isClientAbort(new RuntimeException(new AbortException())));
+        assertTrue(detector.isClientAbort(new RuntimeException(new RuntimeException(new IOException("Broken pipe")))));
+        //a non-IOException wrapper with the message of its cause:
+        assertTrue(detector.isClientAbort(new RuntimeException(new IOException("Broken pipe"))));
+        assertFalse(detector.isClientAbort(new RuntimeException(new IOException("Disk full"))));
+    }
+
+    @Test
+    public void testCauseDepthIsBounded() {
+        Throwable t = new AbortException();
+        for (int i = 0; i < 7; i++) {
+            t = new RuntimeException(t);
+        }
+        //the abort is the 8th exception in the chain:
+        assertTrue(detector.isClientAbort(t));
+        assertFalse(detector.isClientAbort(new RuntimeException(t)));
+    }
+
+    @Test
+    public void testCauseCycle() {
+        RuntimeException first = new RuntimeException();
+        RuntimeException second = new RuntimeException(first);
+        first.initCause(second);
+        assertFalse(detector.isClientAbort(second));
+    }
+
+    static class AbortException extends IOException {
+    }
+
+    static class SpecificAbortException extends AbortException {
+    }
+}
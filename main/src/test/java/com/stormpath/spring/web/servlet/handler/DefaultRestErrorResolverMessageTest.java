@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceResolvable;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.i18n.AcceptHeaderLocaleResolver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DefaultRestErrorResolverMessageTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 2000;
+
+    private LockingMessageSource messageSource;
+    private DefaultRestErrorResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400, msg=error.badArgument");
+
+        messageSource = new LockingMessageSource();
+
+        resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.setMessageSource(messageSource);
+        resolver.setLocaleResolver(new AcceptHeaderLocaleResolver());
+        resolver.setCacheMessages(true);
+        resolver.afterPropertiesSet();
+    }
+
+    private String resolveMessage(Locale locale) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addPreferredLocale(locale);
+        ServletWebRequest webRequest = new ServletWebRequest(request, new MockHttpServletResponse());
+        return resolver.resolveError(webRequest, null, new IllegalArgumentException()).getMessage();
+    }
+
+    @Test
+    public void testMessagesAreNotCachedByDefault() {
+        assertFalse(new DefaultRestErrorResolver().isCacheMessages());
+
+        resolver.setCacheMessages(false);
+        assertEquals("Bad argument (en)", resolveMessage(Locale.ENGLISH));
+        assertEquals("Bad argument (en)", resolveMessage(Locale.ENGLISH));
+        assertEquals(2, messageSource.lookups.get());
+    }
+
+    @Test
+    public void testMessagesAreCachedWhenEnabled() {
+        assertEquals("Bad argument (en)", resolveMessage(Locale.ENGLISH));
+        assertEquals("Bad argument (en)", resolveMessage(Locale.ENGLISH));
+        assertEquals("Bad argument (de)", resolveMessage(Locale.GERMAN));
+        assertEquals(2, messageSource.lookups.get());
+    }
+
+    @Test
+    public void testConcurrentResolutionDoesNotLookUpCachedMessages() throws Exception {
+        final Locale[] locales = {Locale.ENGLISH, Locale.GERMAN, Locale.FRENCH};
+        for (Locale locale : locales) {
+            resolveMessage(locale);
+        }
+        assertEquals(locales.length, messageSource.lookups.get());
+
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < THREADS; t++) {
+                final Locale locale = locales[t % locales.length];
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        String expected = "Bad argument (" + locale.getLanguage() + ")";
+                        start.await();
+                        int mismatches = 0;
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            if (!expected.equals(resolveMessage(locale))) {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(0), result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //every resolution was served from the cache, without entering the MessageSource's monitor:
+        assertEquals(locales.length, messageSource.lookups.get());
+    }
+
+    @Test
+    public void testCachedResolutionDoesNotWaitForMessageSourceMonitor() throws Exception {
+        resolveMessage(Locale.ENGLISH);
+
+        ResolvingThread cached = new ResolvingThread();
+        synchronized (messageSource) {
+            cached.start();
+            cached.join(5000);
+            assertFalse("resolution blocked on the MessageSource monitor", cached.isAlive());
+        }
+        assertEquals("Bad argument (en)", cached.message);
+
+        //without the cache the same resolution waits for the monitor:
+        resolver.setCacheMessages(false);
+        ResolvingThread uncached = new ResolvingThread();
+        synchronized (messageSource) {
+            uncached.start();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (uncached.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(Thread.State.BLOCKED, uncached.getState());
+        }
+        uncached.join(5000);
+        assertEquals("Bad argument (en)", uncached.message);
+    }
+
+    private class ResolvingThread extends Thread {
+
+        volatile String message;
+
+        @Override
+        public void run() {
+            this.message = resolveMessage(Locale.ENGLISH);
+        }
+    }
+
+    /**
+     * Synchronizes every lookup on itself, like the common {@code MessageSource} implementations, and counts them.
+     */
+    static class LockingMessageSource implements MessageSource {
+
+        final AtomicInteger lookups = new AtomicInteger();
+
+        public synchronized String getMessage(String code, Object[] args, String defaultMessage, Locale locale) {
+            lookups.incrementAndGet();
+            if ("error.badArgument".equals(code)) {
+                return "Bad argument (" + locale.getLanguage() + ")";
+            }
+            return defaultMessage;
+        }
+
+        public synchronized String getMessage(String code, Object[] args, Locale locale) {
+            return getMessage(code, args, code, locale);
+        }
+
+        public synchronized String getMessage(MessageSourceResolvable resolvable, Locale locale) {
+            return getMessage(resolvable.getCodes()[0], resolvable.getArguments(), resolvable.getDefaultMessage(),
+                    locale);
+        }
+    }
+}
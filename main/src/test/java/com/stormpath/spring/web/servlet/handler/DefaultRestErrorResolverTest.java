@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DefaultRestErrorResolverTest {
+
+    private DefaultRestErrorResolver resolver;
+    private ServletWebRequest request;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400");
+        definitions.put("Throwable", "500");
+        resolver = createResolver(definitions);
+        request = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+    }
+
+    private static DefaultRestErrorResolver createResolver(Map<String, String> definitions) throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+        return resolver;
+    }
+
+    private int resolveStatus(Object handler, Exception ex) {
+        return resolver.resolveError(request, handler, ex).getStatus().value();
+    }
+
+    private static HandlerMethod handlerMethod(Object bean, String methodName) throws NoSuchMethodException {
+        return new HandlerMethod(bean, bean.getClass().getMethod(methodName));
+    }
+
+    @Test
+    public void testGlobalMappings() {
+        assertEquals(400, resolveStatus(null, new IllegalArgumentException()));
+        assertEquals(500, resolveStatus(null, new IllegalStateException()));
+    }
+
+    @Test
+    public void testUserMappingWinsTieAgainstDefault() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        //matches at the same depth as the fully qualified default (400):
+        definitions.put("HttpMessageNotReadableException", "422");
+        resolver = createResolver(definitions);
+        Exception ex = new org.springframework.http.converter.HttpMessageNotReadableException("bad");
+        assertEquals(422, resolveStatus(null, ex));
+    }
+
+    @Test
+    public void testClassMappingWinsTieAgainstGlobalShortName() throws Exception {
+        Object handler = handlerMethod(new InternalController(), "handle");
+        assertEquals(500, resolveStatus(handler, new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testMethodMappingWinsTieAgainstGlobalThrowable() throws Exception {
+        Object handler = handlerMethod(new InternalController(), "teapot");
+        assertEquals(418, resolveStatus(handler, new Exception()));
+        //the class-level mapping still applies to other exceptions:
+        assertEquals(500, resolveStatus(handler, new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testMethodMappingWinsOverClassMapping() throws Exception {
+        Object handler = handlerMethod(new InternalController(), "conflict");
+        assertEquals(409, resolveStatus(handler, new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testCloserGlobalMappingWinsOverHandlerMapping() throws Exception {
+        Object handler = handlerMethod(new RuntimeController(), "handle");
+        //IllegalArgumentException (global) is closer than RuntimeException (handler):
+        assertEquals(400, resolveStatus(handler, new IllegalArgumentException()));
+        assertEquals(503, resolveStatus(handler, new IllegalStateException()));
+    }
+
+    @Test
+    public void testInheritedMethodResolvedPerBeanType() throws Exception {
+        Object first = handlerMethod(new FirstController(), "handle");
+        Object second = handlerMethod(new SecondController(), "handle");
+        assertEquals(((HandlerMethod) first).getMethod(), ((HandlerMethod) second).getMethod());
+
+        assertEquals(501, resolveStatus(first, new IllegalStateException()));
+        assertEquals(502, resolveStatus(second, new IllegalStateException()));
+        assertEquals(501, resolveStatus(first, new IllegalStateException()));
+    }
+
+    @Test
+    public void testHandlerWithoutMappingsSharesGlobalMappings() throws Exception {
+        Object handler = handlerMethod(new PlainController(), "handle");
+        assertSame(resolver.getExceptionMappings(null), resolver.getExceptionMappings(handler));
+        assertEquals(400, resolveStatus(handler, new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testEffectiveMappingsAreCached() throws Exception {
+        Object handler = handlerMethod(new InternalController(), "handle");
+        Object sameMethod = handlerMethod(new InternalController(), "handle");
+        assertSame(resolver.getExceptionMappings(handler), resolver.getExceptionMappings(sameMethod));
+    }
+
+    @Test
+    public void testMappingsCachedPerMethodAndBeanType() throws Exception {
+        Method method = BaseController.class.getMethod("handle");
+        Object first = new HandlerMethod(new FirstController(), method);
+        Object second = new HandlerMethod(new SecondController(), method);
+        Map<String, RestError> firstMappings = resolver.getExceptionMappings(first);
+        Map<String, RestError> secondMappings = resolver.getExceptionMappings(second);
+        assertNotSame(firstMappings, secondMappings);
+        //Spring may create a HandlerMethod per request for the same Method instance:
+        assertSame(firstMappings, resolver.getExceptionMappings(new HandlerMethod(new FirstController(), method)));
+        assertSame(secondMappings, resolver.getExceptionMappings(new HandlerMethod(new SecondController(), method)));
+    }
+
+    @Test
+    public void testOverriddenMappingKeyIsUsed() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400");
+        definitions.put("Throwable", "500");
+        resolver = new DefaultRestErrorResolver() {
+            @Override
+            protected String getMappingKey(Object handler, Exception ex) {
+                return "Throwable";
+            }
+        };
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+        assertEquals(500, resolveStatus(null, new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testListenerReceivesMatchedMappingKey() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400");
+        resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.setSqlStateMappingDefinitions(Collections.singletonMap("23", "409"));
+        resolver.setVendorCodeMappingDefinitions(Collections.singletonMap("-803", "422"));
+        RestExceptionHandlerTest.CountingListener listener = new RestExceptionHandlerTest.CountingListener();
+        resolver.setErrorListener(listener);
+        resolver.afterPropertiesSet();
+
+        assertEquals(400, resolveStatus(null, new IllegalArgumentException()));
+        assertEquals("IllegalArgumentException", listener.lastMappingKey);
+
+        Exception wrapped = new IllegalStateException(new SQLException("duplicate", "23505"));
+        assertEquals(409, resolveStatus(null, wrapped));
+        assertEquals("sqlState=23", listener.lastMappingKey);
+
+        assertEquals(422, resolveStatus(null, new SQLException("duplicate", "23505", -803)));
+        assertEquals("vendorCode=-803", listener.lastMappingKey);
+
+        resolveStatus(null, new RestException(new RestError.Builder().setStatus(418).build()));
+        assertNull(listener.lastMappingKey);
+        assertEquals(4, listener.resolved.get());
+    }
+
+    @RestErrorMapping(value = IllegalArgumentException.class, definition = "500")
+    public static class InternalController {
+
+        public void handle() {
+        }
+
+        @RestErrorMapping(value = Throwable.class, definition = "418")
+        public void teapot() {
+        }
+
+        @RestErrorMapping(value = IllegalArgumentException.class, definition = "409")
+        public void conflict() {
+        }
+    }
+
+    public static class RuntimeController {
+
+        @RestErrorMapping(value = RuntimeException.class, definition = "503")
+        public void handle() {
+        }
+    }
+
+    public static class BaseController {
+
+        public void handle() {
+        }
+    }
+
+    @RestErrorMapping(value = IllegalStateException.class, definition = "501")
+    public static class FirstController extends BaseController {
+    }
+
+    @RestErrorMapping(value = IllegalStateException.class, definition = "502")
+    public static class SecondController extends BaseController {
+    }
+
+    public static class PlainController {
+
+        public void handle() {
+        }
+    }
+}
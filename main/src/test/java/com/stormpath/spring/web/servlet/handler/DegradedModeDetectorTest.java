@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DegradedModeDetectorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private DegradedModeDetector detector;
+    private long start;
+
+    @Before
+    public void setUp() {
+        detector = new DegradedModeDetector();
+        detector.setEnterErrorsPerSecond(10);
+        detector.setExitErrorsPerSecond(2);
+        detector.setMinDegradedMillis(0);
+        //a second boundary well after the detector's own clock reading:
+        start = (System.nanoTime() / SECOND + 10) * SECOND;
+    }
+
+    @Test
+    public void testEntersAndLeavesByErrorRate() {
+        recordErrors(9, start, 0);
+        assertFalse(detector.isDegraded(start + SECOND));
+        recordErrors(1, start + SECOND, 0);
+        assertEquals(9, detector.getErrorsPerSecond());
+        assertFalse(detector.isDegraded(start + SECOND));
+
+        recordErrors(10, start + SECOND, 0);
+        recordErrors(3, start + 2 * SECOND, 0);
+        assertEquals(11, detector.getErrorsPerSecond());
+        assertTrue(detector.isDegraded(start + 2 * SECOND));
+
+        //above the exit threshold - still degraded:
+        recordErrors(1, start + 3 * SECOND, 0);
+        assertEquals(3, detector.getErrorsPerSecond());
+        assertTrue(detector.isDegraded(start + 3 * SECOND));
+
+        //at the exit threshold:
+        assertFalse(detector.isDegraded(start + 4 * SECOND));
+    }
+
+    @Test
+    public void testThresholdIsAbsoluteRate() {
+        //the detector never sees successful requests, so 10 errors in a second enter degraded mode however many
+        //requests succeeded alongside them:
+        recordErrors(10, start, 0);
+        detector.recordError(0, start + SECOND);
+        assertEquals(10, detector.getErrorsPerSecond());
+        assertTrue(detector.isDegraded(start + SECOND));
+    }
+
+    @Test
+    public void testLeavesWhenErrorsStop() {
+        recordErrors(20, start, 0);
+        detector.recordError(0, start + SECOND);
+        assertTrue(detector.isDegraded(start + SECOND));
+
+        //no errors at all for a while:
+        assertFalse(detector.isDegraded(start + 5 * SECOND));
+        assertEquals(0, detector.getErrorsPerSecond());
+    }
+
+    @Test
+    public void testMinDegradedMillis() {
+        detector.setMinDegradedMillis(3000);
+        recordErrors(20, start, 0);
+        detector.recordError(0, start + SECOND);
+        assertTrue(detector.isDegraded(start + SECOND));
+
+        assertTrue(detector.isDegraded(start + 3 * SECOND));
+        assertFalse(detector.isDegraded(start + 4 * SECOND));
+    }
+
+    @Test
+    public void testLatencyRecoversWithoutErrors() {
+        detector.setEnterErrorsPerSecond(0);
+        detector.setEnterLatencyMillis(50);
+        detector.setExitLatencyMillis(10);
+
+        //a single slow error per second drives the average up:
+        long now = start;
+        for (int i = 0; i < 30; i++, now += SECOND) {
+            detector.recordError(100 * MILLI, now);
+        }
+        assertTrue(detector.getAverageLatencyMillis() > 50);
+        assertTrue(detector.isDegraded(now));
+
+        //every second without errors counts as a sample of 0, so the average decays (0.9^10 * ~96ms is ~33ms):
+        assertTrue(detector.isDegraded(now + 10 * SECOND));
+        assertTrue(detector.getAverageLatencyMillis() < 50);
+        assertTrue(detector.getAverageLatencyMillis() > 10);
+
+        //0.9^25 * ~96ms is ~7ms:
+        assertFalse(detector.isDegraded(now + 25 * SECOND));
+        assertTrue(detector.getAverageLatencyMillis() <= 10);
+    }
+
+    @Test
+    public void testLatencyOfActiveSecondsIsNotDecayed() {
+        detector.setEnterErrorsPerSecond(0);
+        for (int i = 0; i < 100; i++) {
+            detector.recordError(100 * MILLI, start);
+        }
+        double average = detector.getAverageLatencyMillis();
+        detector.recordError(100 * MILLI, start + SECOND);
+        assertTrue(detector.getAverageLatencyMillis() >= average);
+    }
+
+    @Test
+    public void testDegradedRenderingWithJsonAccept() throws Exception {
+        MockHttpServletResponse response = renderDegraded("application/json");
+        assertEquals(400, response.getStatus());
+        assertEquals("application/json;charset=UTF-8", response.getContentType());
+        assertEquals("{\"status\":400,\"message\":\"Bad Request\"}", response.getContentAsString());
+    }
+
+    @Test
+    public void testDegradedRenderingWithoutAccept() throws Exception {
+        MockHttpServletResponse response = renderDegraded(null);
+        assertEquals(400, response.getStatus());
+        assertEquals("application/json;charset=UTF-8", response.getContentType());
+        assertTrue(response.getContentAsString().length() > 0);
+
+        response = renderDegraded("application/*");
+        assertTrue(response.getContentAsString().length() > 0);
+    }
+
+    @Test
+    public void testDegradedRenderingWithoutJsonAccept() throws Exception {
+        MockHttpServletResponse response = renderDegraded("application/xml");
+        assertEquals(400, response.getStatus());
+        assertNull(response.getContentType());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        response = renderDegraded("not a media type");
+        assertEquals(400, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    private void recordErrors(int count, long now, long nanos) {
+        for (int i = 0; i < count; i++) {
+            detector.recordError(nanos, now);
+        }
+    }
+
+    private MockHttpServletResponse renderDegraded(String accept) throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("IllegalArgumentException", "400"));
+        resolver.afterPropertiesSet();
+
+        RestExceptionHandler handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        HttpMessageConverter<?> converter = new RestExceptionHandlerTest.CountingJsonConverter();
+        handler.setMessageConverters(new HttpMessageConverter<?>[]{converter});
+        handler.setDegradedModeDetector(new DegradedModeDetector() {
+            @Override
+            public boolean isDegraded() {
+                return true;
+            }
+        });
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        if (accept != null) {
+            request.addHeader("Accept", accept);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(handler.resolveException(request, response, null, new IllegalArgumentException("test")));
+        return response;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ErrorRateTrackerTest {
+
+    private ErrorRateTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new ErrorRateTracker();
+        tracker.setBucketSeconds(1);
+        tracker.setBuckets(60);
+        tracker.setSloTarget(0.9);
+    }
+
+    @Test
+    public void testRatiosPerHandler() throws Exception {
+        HandlerMethod users = new HandlerMethod(new UserController(), "list");
+        for (int i = 0; i < 8; i++) {
+            tracker.recordSuccess(users);
+        }
+        tracker.recordFailure(users, 503);
+        //client errors are not counted as errors by default:
+        tracker.recordFailure(users, 404);
+        tracker.recordFailure(null, 500);
+
+        String name = "ErrorRateTrackerTest.UserController#list";
+        assertEquals(Arrays.asList(ErrorRateTracker.NO_HANDLER, name), Arrays.asList(tracker.getHandlerNames()));
+        assertEquals(10, tracker.getRequestCount(name, 60));
+        assertEquals(1, tracker.getErrorCount(name, 60));
+        assertEquals(0.1, tracker.getErrorRatio(name, 60), 0.0001);
+        assertEquals(1.0, tracker.getBurnRate(name, 60), 0.0001);
+
+        assertEquals(11, tracker.getRequestCount(ErrorRateTracker.ALL_HANDLERS, 60));
+        assertEquals(2, tracker.getErrorCount(null, 60));
+        assertEquals(0, tracker.getErrorRatio("unknown", 60), 0);
+    }
+
+    @Test
+    public void testMethodAndHandlerMethodShareCounter() throws Exception {
+        HandlerMethod handlerMethod = new HandlerMethod(new UserController(), "list");
+        tracker.recordFailure(handlerMethod, 500);
+        tracker.recordFailure(handlerMethod.getMethod(), 500);
+        assertEquals(1, tracker.getHandlerNames().length);
+        assertEquals(2, tracker.getErrorCount(tracker.getHandlerNames()[0], 60));
+    }
+
+    @Test
+    public void testHandlersBeyondMaxShareOtherCounter() throws Exception {
+        tracker.setMaxHandlers(1);
+        tracker.recordSuccess(new HandlerMethod(new UserController(), "list"));
+        tracker.recordSuccess(new HandlerMethod(new UserController(), "get"));
+        tracker.recordSuccess(new Object());
+
+        assertEquals(2, tracker.getHandlerNames().length);
+        assertEquals(2, tracker.getRequestCount(ErrorRateTracker.OTHER_HANDLERS, 60));
+    }
+
+    public static class UserController {
+
+        public void list() {
+        }
+
+        public void get() {
+        }
+    }
+}
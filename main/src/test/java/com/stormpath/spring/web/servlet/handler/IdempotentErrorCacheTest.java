@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IdempotentErrorCacheTest {
+
+    private IdempotentErrorCache cache;
+    private RestExceptionHandler handler;
+    private IdempotentErrorReplayInterceptor interceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "409, msg=Conflict");
+        definitions.put("Throwable", "500");
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+
+        cache = new IdempotentErrorCache();
+
+        handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        handler.setMessageConverters(new HttpMessageConverter<?>[]{new MappingJacksonHttpMessageConverter()});
+        handler.setIdempotentErrorCache(cache);
+        handler.afterPropertiesSet();
+
+        interceptor = new IdempotentErrorReplayInterceptor();
+        interceptor.setIdempotentErrorCache(cache);
+        interceptor.afterPropertiesSet();
+    }
+
+    private static MockHttpServletRequest request(String uri, String idempotencyKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        if (idempotencyKey != null) {
+            request.addHeader(IdempotentErrorCache.DEFAULT_HEADER_NAME, idempotencyKey);
+        }
+        return request;
+    }
+
+    private MockHttpServletResponse fail(MockHttpServletRequest request, Exception ex) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        handler.resolveException(request, response, null, ex);
+        return response;
+    }
+
+    private static void store(IdempotentErrorCache cache, String idempotencyKey) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        RestError error = new RestError.Builder().setStatus(409).build();
+        cache.store(request("/users", idempotencyKey), error, headers, new byte[]{'{', '}'});
+    }
+
+    @Test
+    public void testReplaysStoredError() throws Exception {
+        MockHttpServletResponse original = fail(request("/users", "abc"), new IllegalArgumentException());
+        assertEquals(409, original.getStatus());
+        assertEquals(1, cache.size());
+
+        MockHttpServletResponse replayed = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request("/users", "abc"), replayed, null));
+        assertEquals(409, replayed.getStatus());
+        assertEquals("true", replayed.getHeader(IdempotentErrorCache.REPLAYED_HEADER_NAME));
+        assertEquals(original.getContentType(), replayed.getContentType());
+        assertEquals(original.getContentAsString(), replayed.getContentAsString());
+        assertEquals(original.getContentAsByteArray().length, replayed.getContentLength());
+    }
+
+    @Test
+    public void testDoesNotReplayOtherRequests() throws Exception {
+        fail(request("/users", "abc"), new IllegalArgumentException());
+
+        assertTrue(interceptor.preHandle(request("/users", "other"), new MockHttpServletResponse(), null));
+        assertTrue(interceptor.preHandle(request("/groups", "abc"), new MockHttpServletResponse(), null));
+        assertTrue(interceptor.preHandle(request("/users", null), new MockHttpServletResponse(), null));
+
+        MockHttpServletRequest otherPrincipal = request("/users", "abc");
+        otherPrincipal.setUserPrincipal(new Principal() {
+            public String getName() {
+                return "jsmith";
+            }
+        });
+        assertTrue(interceptor.preHandle(otherPrincipal, new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    public void testStoresOnlyReplayableStatuses() {
+        fail(request("/users", "abc"), new IllegalStateException());
+        fail(request("/users", null), new IllegalArgumentException());
+        assertEquals(0, cache.size());
+
+        cache.setReplayableStatuses(Collections.singleton(500));
+        fail(request("/users", "abc"), new IllegalStateException());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testExpiredEntryIsNotReplayed() throws Exception {
+        cache.setTimeToLiveSeconds(0);
+        fail(request("/users", "abc"), new IllegalArgumentException());
+        assertEquals(1, cache.size());
+
+        assertFalse(cache.replay(request("/users", "abc"), new MockHttpServletResponse()));
+        //removed on access:
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testFullCacheDoesNotStore() throws Exception {
+        cache.setMaxEntries(2);
+        store(cache, "a");
+        store(cache, "b");
+        store(cache, "c");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.replay(request("/users", "a"), new MockHttpServletResponse()));
+        assertTrue(cache.replay(request("/users", "b"), new MockHttpServletResponse()));
+        assertFalse(cache.replay(request("/users", "c"), new MockHttpServletResponse()));
+    }
+
+    @Test
+    public void testFullCachePurgesExpiredEntries() throws Exception {
+        cache.setMaxEntries(2);
+        cache.setTimeToLiveSeconds(0);
+        store(cache, "a");
+        store(cache, "b");
+        cache.setTimeToLiveSeconds(3600);
+        store(cache, "c");
+
+        assertEquals(1, cache.size());
+        assertTrue(cache.replay(request("/users", "c"), new MockHttpServletResponse()));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        store(cache, "a");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.replay(request("/users", "a"), new MockHttpServletResponse()));
+    }
+}
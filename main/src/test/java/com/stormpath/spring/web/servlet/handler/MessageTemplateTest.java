@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MessageTemplateTest {
+
+    private final ExceptionPropertyAccessor accessor = new ExceptionPropertyAccessor();
+
+    private String render(String pattern, Object source) {
+        return MessageTemplate.compile(pattern).render(source, accessor);
+    }
+
+    @Test
+    public void testLiteral() {
+        MessageTemplate template = MessageTemplate.compile("User not found");
+        assertTrue(template.isLiteral());
+        assertEquals("User not found", template.render(new UserNotFoundException("jsmith", 42), accessor));
+        assertEquals("User not found", template.toString());
+    }
+
+    @Test
+    public void testPlaceholders() {
+        UserNotFoundException ex = new UserNotFoundException("jsmith", 42);
+        assertFalse(MessageTemplate.compile("User {username} not found").isLiteral());
+        assertEquals("User jsmith not found", render("User {username} not found", ex));
+        assertEquals("jsmith", render("{username}", ex));
+        assertEquals("jsmith42", render("{username}{accountId}", ex));
+        assertEquals("Account 42 of jsmith.", render("Account {accountId} of {username}.", ex));
+    }
+
+    @Test
+    public void testInheritedProperties() {
+        assertEquals("Failed: boom", render("Failed: {message}", new IllegalStateException("boom")));
+    }
+
+    @Test
+    public void testNullValue() {
+        assertEquals("User null not found", render("User {username} not found", new UserNotFoundException(null, 1)));
+    }
+
+    @Test
+    public void testMissingPropertiesRemainVisible() {
+        UserNotFoundException ex = new UserNotFoundException("jsmith", 42);
+        assertEquals("User {name} not found", render("User {name} not found", ex));
+        //write-only properties are not readable:
+        assertEquals("{password} of jsmith", render("{password} of {username}", ex));
+    }
+
+    @Test
+    public void testNonPlaceholderBracesAreLiteral() {
+        UserNotFoundException ex = new UserNotFoundException("jsmith", 42);
+        assertTrue(MessageTemplate.compile("Argument {0} is invalid").isLiteral());
+        assertEquals("Argument {0} is invalid", render("Argument {0} is invalid", ex));
+        assertEquals("{} and { username} and {user-name}", render("{} and { username} and {user-name}", ex));
+        assertEquals("unclosed {username", render("unclosed {username", ex));
+        assertEquals("{{jsmith}}", render("{{{username}}}", ex));
+    }
+
+    @Test
+    public void testNonPublicExceptionClass() {
+        assertEquals("code 7", render("code {code}", new HiddenException(7)));
+    }
+
+    @Test
+    public void testAccessor() {
+        UserNotFoundException ex = new UserNotFoundException("jsmith", 42);
+        assertTrue(accessor.isReadable(UserNotFoundException.class, "username"));
+        assertFalse(accessor.isReadable(UserNotFoundException.class, "password"));
+        assertFalse(accessor.isReadable(UserNotFoundException.class, "missing"));
+        assertEquals(42L, accessor.getValue(ex, "accountId"));
+        assertNull(accessor.getValue(ex, "missing"));
+    }
+
+    @Test
+    public void testResolverFormatsMappedMessages() throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("UserNotFoundException",
+                "404, msg=User {username} not found, devMsg=_exmsg"));
+        resolver.afterPropertiesSet();
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        RestError error = resolver.resolveError(request, null, new UserNotFoundException("{username}", 42));
+        assertEquals("User {username} not found", error.getMessage());
+        //exception messages are never treated as templates:
+        assertEquals("No user {username}", error.getDeveloperMessage());
+
+        error = resolver.resolveError(request, null, new UserNotFoundException("jsmith", 42));
+        assertEquals("User jsmith not found", error.getMessage());
+    }
+
+    public static class UserNotFoundException extends RuntimeException {
+
+        private final String username;
+        private final long accountId;
+
+        public UserNotFoundException(String username, long accountId) {
+            super("No user " + username);
+            this.username = username;
+            this.accountId = accountId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getAccountId() {
+            return accountId;
+        }
+
+        public void setPassword(String password) {
+        }
+    }
+
+    static class HiddenException extends RuntimeException {
+
+        private final int code;
+
+        HiddenException(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+}
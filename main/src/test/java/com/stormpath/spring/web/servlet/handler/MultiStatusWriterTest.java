@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MultiStatusWriterTest {
+
+    private RestExceptionHandler exceptionHandler;
+    private MultiStatusRenderer renderer;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalStateException", "409");
+        definitions.put("Throwable", "500");
+
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.afterPropertiesSet();
+
+        exceptionHandler = new RestExceptionHandler();
+        exceptionHandler.setErrorResolver(resolver);
+
+        renderer = new MultiStatusRenderer();
+        renderer.setExceptionHandler(exceptionHandler);
+        renderer.afterPropertiesSet();
+    }
+
+    private String write(MultiStatusRenderer renderer) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MultiStatusWriter writer = renderer.open(new ServletWebRequest(new MockHttpServletRequest(), response), null);
+        writer.success("a", 201);
+        writer.failure("b", new IllegalStateException());
+        writer.close();
+        assertEquals(207, response.getStatus());
+        assertEquals(1, writer.getSucceeded());
+        assertEquals(1, writer.getFailed());
+        return response.getContentAsString();
+    }
+
+    @Test
+    public void testMapErrorsAreInlined() throws Exception {
+        assertEquals("{\"status\":207,\"items\":[{\"id\":\"a\",\"status\":201},{\"id\":\"b\",\"status\":409," +
+                "\"code\":409}],\"succeeded\":1,\"failed\":1}", write(renderer));
+    }
+
+    @Test
+    public void testOtherErrorsUseErrorKey() throws Exception {
+        exceptionHandler.setErrorConverter(new RestErrorConverter<String>() {
+            public String convert(RestError re) {
+                return "E" + re.getCode();
+            }
+        });
+        renderer.setErrorKey("problem");
+        assertEquals("{\"status\":207,\"items\":[{\"id\":\"a\",\"status\":201},{\"id\":\"b\",\"status\":409," +
+                "\"problem\":\"E409\"}],\"succeeded\":1,\"failed\":1}", write(renderer));
+    }
+
+    @Test
+    public void testListenerNotifiedOfEveryFailure() throws Exception {
+        RestExceptionHandlerTest.CountingListener listener = new RestExceptionHandlerTest.CountingListener();
+        ((DefaultRestErrorResolver) exceptionHandler.getErrorResolver()).setErrorListener(listener);
+
+        MultiStatusWriter writer = renderer.open(
+                new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()), null);
+        writer.failure("a", new IllegalStateException());
+        writer.failure("b", new IllegalStateException());
+        writer.failure("c", new IllegalArgumentException());
+        writer.close();
+
+        //the template is only looked up once for both IllegalStateExceptions, but each failure is reported:
+        assertEquals(3, listener.resolved.get());
+        assertEquals("Throwable", listener.lastMappingKey);
+    }
+}
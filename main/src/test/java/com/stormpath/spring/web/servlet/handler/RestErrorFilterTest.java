@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestErrorFilterTest {
+
+    private RestExceptionHandler handler;
+    private RestExceptionHandlerTest.CountingListener listener;
+    private RestErrorFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400, msg=Bad argument");
+
+        listener = new RestExceptionHandlerTest.CountingListener();
+
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.setErrorListener(listener);
+        resolver.afterPropertiesSet();
+
+        handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        handler.setMessageConverters(new HttpMessageConverter<?>[]{new RestExceptionHandlerTest.CountingJsonConverter()});
+        handler.setErrorListener(listener);
+
+        filter = new RestErrorFilter();
+        filter.setExceptionHandler(handler);
+        filter.init(new MockFilterConfig());
+
+        request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader("Accept", "application/json");
+        response = new MockHttpServletResponse();
+    }
+
+    private static FilterChain throwing(final Exception ex) {
+        return new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+                if (ex instanceof ServletException) {
+                    throw (ServletException) ex;
+                }
+                throw (RuntimeException) ex;
+            }
+        };
+    }
+
+    @Test
+    public void testFilterException() throws Exception {
+        ErrorRateTracker tracker = new ErrorRateTracker();
+        tracker.setMinErrorStatus(400);
+        handler.setErrorRateTracker(tracker);
+
+        filter.doFilter(request, response, throwing(new IllegalArgumentException("bad id")));
+
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString().contains("\"message\":\"Bad argument\""));
+        assertEquals(1, listener.resolved.get());
+        assertEquals(1, listener.rendered.get());
+        assertEquals(1, tracker.getHandlerNames().length);
+    }
+
+    @Test
+    public void testServletExceptionRootCauseIsResolved() throws Exception {
+        filter.doFilter(request, response,
+                throwing(new ServletException("wrapped", new IllegalArgumentException("bad id"))));
+
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString().contains("\"message\":\"Bad argument\""));
+    }
+
+    @Test
+    public void testUnresolvedExceptionIsRethrown() throws Exception {
+        IllegalStateException ex = new IllegalStateException("unmapped");
+        try {
+            filter.doFilter(request, response, throwing(ex));
+            fail("the unresolved exception should have been rethrown");
+        } catch (IllegalStateException e) {
+            assertSame(ex, e);
+        }
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    public void testHandlerLookupFailureRethrowsOriginalException() throws Exception {
+        //no WebApplicationContext in the servlet context:
+        filter.setExceptionHandler(null);
+        IllegalArgumentException ex = new IllegalArgumentException("bad id");
+        try {
+            filter.doFilter(request, response, throwing(ex));
+            fail("the original exception should have been rethrown");
+        } catch (IllegalArgumentException e) {
+            assertSame(ex, e);
+        }
+    }
+
+    @Test
+    public void testCommittedResponseIsCountedAndNotRendered() throws Exception {
+        response.setCommitted(true);
+
+        filter.doFilter(request, response, throwing(new IllegalArgumentException("bad id")));
+
+        assertEquals(1, handler.getCommittedResponseCount());
+        assertEquals(0, listener.rendered.get());
+    }
+
+    @Test
+    public void testUnmappedNotFound() throws Exception {
+        filter.doFilter(request, response, new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                ((HttpServletResponse) response).sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        });
+
+        assertEquals(404, response.getStatus());
+        assertNull(response.getErrorMessage());
+        String body = response.getContentAsString();
+        assertTrue(body, body.contains("\"status\":404"));
+        assertTrue(body, body.contains("\"code\":404"));
+        assertTrue(body, body.contains("\"message\":\"Not Found\""));
+        assertEquals(1, listener.rendered.get());
+    }
+
+    @Test
+    public void testWriteAfterSendErrorIsDiscarded() throws Exception {
+        filter.doFilter(request, response, new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "GET not supported");
+                assertTrue(httpResponse.isCommitted());
+                httpResponse.getWriter().write("container error page");
+                httpResponse.getOutputStream().write(new byte[]{'x'});
+                httpResponse.flushBuffer();
+            }
+        });
+
+        assertEquals(405, response.getStatus());
+        assertNull(response.getErrorMessage());
+        String body = response.getContentAsString();
+        assertTrue(body, body.startsWith("{"));
+        assertTrue(body, body.contains("\"message\":\"GET not supported\""));
+        assertFalse(body, body.contains("container error page"));
+    }
+
+    @Test
+    public void testSendErrorNotCapturedWhenDisabled() throws Exception {
+        filter.setRenderSendError(false);
+        filter.doFilter(request, response, new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                ((HttpServletResponse) response).sendError(HttpServletResponse.SC_NOT_FOUND, "Nope");
+            }
+        });
+
+        assertEquals(404, response.getStatus());
+        assertEquals("Nope", response.getErrorMessage());
+        assertEquals("", response.getContentAsString());
+    }
+}
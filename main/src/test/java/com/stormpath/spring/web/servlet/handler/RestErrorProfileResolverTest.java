@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestErrorProfileResolverTest {
+
+    private RestErrorProfileResolver resolver;
+
+    @Before
+    public void setUp() {
+        Map<String, String> profiles = new LinkedHashMap<String, String>();
+        profiles.put("10.", "internal");
+        profiles.put("10.9.", "ops");
+
+        resolver = new RestErrorProfileResolver();
+        resolver.setRemoteAddressProfiles(profiles);
+        resolver.setDefaultProfile("public");
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String... forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        for (String header : forwardedFor) {
+            request.addHeader("X-Forwarded-For", header);
+        }
+        return request;
+    }
+
+    private void setTrustedProxies(String... proxies) {
+        resolver.setTrustedProxies(new HashSet<String>(Arrays.asList(proxies)));
+    }
+
+    @Test
+    public void testRemoteAddressRuleDisabledWithoutTrustedProxies() {
+        assertNull(resolver.getTrustedProxies());
+        assertEquals("public", resolver.resolveProfile(request("10.1.2.3")));
+    }
+
+    @Test
+    public void testDirectConnections() {
+        resolver.setTrustedProxies(Collections.<String>emptySet());
+        assertEquals("internal", resolver.resolveProfile(request("10.1.2.3")));
+        assertEquals("ops", resolver.resolveProfile(request("10.9.0.1")));
+        assertEquals("public", resolver.resolveProfile(request("203.0.113.5")));
+    }
+
+    @Test
+    public void testProxyAddressIsNotMatched() {
+        setTrustedProxies("10.0.0.1");
+        //a public client behind the proxy:
+        assertEquals("public", resolver.resolveProfile(request("10.0.0.1", "203.0.113.5")));
+        //no client address reported:
+        assertEquals("public", resolver.resolveProfile(request("10.0.0.1")));
+    }
+
+    @Test
+    public void testForwardedClientAddressIsMatched() {
+        setTrustedProxies("10.0.0.1");
+        assertEquals("internal", resolver.resolveProfile(request("10.0.0.1", "10.1.2.3")));
+    }
+
+    @Test
+    public void testSpoofedForwardedAddressIsIgnored() {
+        setTrustedProxies("10.0.0.1");
+        //the client claims to be internal, the proxy appends the real address:
+        assertEquals("public", resolver.resolveProfile(request("10.0.0.1", "10.1.2.3, 203.0.113.5")));
+        assertEquals("public", resolver.resolveProfile(request("10.0.0.1", "10.1.2.3", "203.0.113.5")));
+    }
+
+    @Test
+    public void testProxyChain() {
+        setTrustedProxies("10.0.0.", "192.168.1.7");
+        assertEquals("ops", resolver.resolveProfile(request("10.0.0.4", "10.9.1.1, 192.168.1.7")));
+        //only proxies:
+        assertEquals("public", resolver.resolveProfile(request("10.0.0.4", "10.0.0.5")));
+        //exact entries are not prefixes:
+        assertEquals("public", resolver.resolveProfile(request("192.168.1.70", "10.1.2.3")));
+    }
+
+    @Test
+    public void testUntrustedRemoteAddressIgnoresForwardedHeader() {
+        setTrustedProxies("10.0.0.1");
+        assertEquals("public", resolver.resolveProfile(request("203.0.113.5", "10.1.2.3")));
+    }
+
+    @Test
+    public void testCustomForwardedForHeader() {
+        setTrustedProxies("10.0.0.1");
+        resolver.setForwardedForHeaderName("X-Real-IP");
+        MockHttpServletRequest request = request("10.0.0.1", "203.0.113.5");
+        request.addHeader("X-Real-IP", "10.1.2.3");
+        assertEquals("internal", resolver.resolveProfile(request));
+    }
+
+    @Test
+    public void testHeaderAndClientCertificateRulesComeFirst() {
+        resolver.setTrustedProxies(Collections.<String>emptySet());
+        resolver.setHeaderName("X-Error-Profile");
+        resolver.setHeaderProfiles(Collections.singleton("debug"));
+        resolver.setClientCertificateProfile("partner");
+
+        MockHttpServletRequest request = request("10.1.2.3");
+        request.addHeader("X-Error-Profile", "debug");
+        assertEquals("debug", resolver.resolveProfile(request));
+
+        request = request("10.1.2.3");
+        request.addHeader("X-Error-Profile", "unknown");
+        request.setAttribute("javax.servlet.request.X509Certificate", new X509Certificate[1]);
+        assertEquals("partner", resolver.resolveProfile(request));
+    }
+}
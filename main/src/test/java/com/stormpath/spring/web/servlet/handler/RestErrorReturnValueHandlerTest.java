@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestErrorReturnValueHandlerTest {
+
+    private RestExceptionHandlerTest.CountingListener listener;
+    private ErrorRateTracker tracker;
+    private RestErrorReturnValueHandler returnValueHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("Throwable", "500");
+
+        StaticMessageSource messageSource = new StaticMessageSource();
+        messageSource.addMessage("user.notFound", Locale.getDefault(), "No such user");
+
+        listener = new RestExceptionHandlerTest.CountingListener();
+        tracker = new ErrorRateTracker();
+
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.setDefaultMoreInfoUrl("http://example.com/errors");
+        resolver.setMessageSource(messageSource);
+        resolver.setErrorListener(listener);
+        resolver.afterPropertiesSet();
+
+        RestExceptionHandler exceptionHandler = new RestExceptionHandler();
+        exceptionHandler.setErrorResolver(resolver);
+        exceptionHandler.setMessageConverters(
+                new HttpMessageConverter<?>[]{new MappingJacksonHttpMessageConverter()});
+        exceptionHandler.setErrorListener(listener);
+        exceptionHandler.setErrorRateTracker(tracker);
+        exceptionHandler.afterPropertiesSet();
+
+        returnValueHandler = new RestErrorReturnValueHandler();
+        returnValueHandler.setExceptionHandler(exceptionHandler);
+        returnValueHandler.afterPropertiesSet();
+    }
+
+    private MockHttpServletResponse handle(Object returnValue, String methodName) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/jsmith");
+        request.addHeader("Accept", "application/json");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MethodParameter returnType = new MethodParameter(UserController.class.getMethod(methodName), -1);
+        ModelAndViewContainer mavContainer = new ModelAndViewContainer();
+
+        assertTrue(returnValueHandler.supportsReturnType(returnType));
+        returnValueHandler.handleReturnValue(returnValue, returnType, mavContainer,
+                new ServletWebRequest(request, response));
+        assertTrue(mavContainer.isRequestHandled());
+        return response;
+    }
+
+    @Test
+    public void testReturnedErrorGetsResolverDefaults() throws Exception {
+        RestError error = new RestError.Builder().setStatus(404).setMessage("user.notFound").build();
+        MockHttpServletResponse response = handle(error, "getUser");
+
+        assertEquals(404, response.getStatus());
+        String body = response.getContentAsString();
+        assertTrue(body, body.contains("\"code\":404"));
+        assertTrue(body, body.contains("\"message\":\"No such user\""));
+        assertTrue(body, body.contains("\"moreInfoUrl\":\"http://example.com/errors\""));
+    }
+
+    @Test
+    public void testReturnedErrorIsReportedAndRecorded() throws Exception {
+        RestError error = new RestError.Builder().setStatus(503).build();
+        handle(RestResult.error(error), "getResult");
+
+        assertEquals(1, listener.resolved.get());
+        assertEquals(1, listener.rendered.get());
+        String name = "RestErrorReturnValueHandlerTest.UserController#getResult";
+        assertEquals(1, tracker.getHandlerNames().length);
+        assertEquals(name, tracker.getHandlerNames()[0]);
+        assertEquals(1, tracker.getErrorCount(name, 60));
+        assertEquals(1, tracker.getRequestCount(name, 60));
+    }
+
+    @Test
+    public void testReturnedValueIsRendered() throws Exception {
+        MockHttpServletResponse response = handle(RestResult.ok("jsmith"), "getResult");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("\"jsmith\"", response.getContentAsString());
+        assertEquals(0, listener.resolved.get());
+        assertEquals(0, tracker.getHandlerNames().length);
+    }
+
+    public static class UserController {
+
+        public RestError getUser() {
+            return null;
+        }
+
+        public RestResult<String> getResult() {
+            return null;
+        }
+    }
+}
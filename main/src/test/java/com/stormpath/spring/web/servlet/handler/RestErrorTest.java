@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.Assert.*;
+
+public class RestErrorTest {
+
+    @Test
+    public void testStatusLookupMatchesHttpStatusValueOf() {
+        for (int code = 0; code < 600; code++) {
+            HttpStatus expected;
+            try {
+                expected = HttpStatus.valueOf(code);
+            } catch (IllegalArgumentException e) {
+                expected = null;
+            }
+            assertSame("status " + code, expected, RestError.findHttpStatus(code));
+        }
+    }
+
+    @Test
+    public void testDuplicateCodeResolvesToFirstConstant() {
+        assertSame(HttpStatus.FOUND, RestError.findHttpStatus(302));
+        assertSame(HttpStatus.FOUND, new RestError.Builder().setStatus(302).build().getStatus());
+    }
+
+    @Test
+    public void testUnknownStatus() {
+        assertNull(RestError.findHttpStatus(499));
+        assertNull(RestError.findHttpStatus(-1));
+        assertNull(RestError.findHttpStatus(600));
+        try {
+            new RestError.Builder().setStatus(499);
+            fail("499 has no HttpStatus constant");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RestErrorTimingsTest {
+
+    private RestExceptionHandler handler;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("Throwable", "500"));
+        resolver.afterPropertiesSet();
+
+        handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        handler.setErrorConverter(new MapRestErrorConverter());
+        handler.setMessageConverters(
+                new HttpMessageConverter<?>[]{new RestExceptionHandlerTest.CountingJsonConverter()});
+
+        request = new MockHttpServletRequest("GET", "/");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void testHeaderValue() {
+        RestErrorTimings timings = new RestErrorTimings();
+        timings.setResolveNanos(42000);
+        timings.setMessageNanos(1500000);
+        timings.setNegotiateNanos(999);
+        timings.setWriteNanos(12345678);
+        assertEquals("resolve;dur=0.042, message;dur=1.500, negotiate;dur=0.000, write;dur=12.345",
+                timings.toHeaderValue());
+        assertEquals(timings.toHeaderValue(), timings.toString());
+    }
+
+    @Test
+    public void testUnmeasuredPhasesAreOmitted() {
+        RestErrorTimings timings = new RestErrorTimings();
+        assertEquals(-1, timings.getResolveNanos());
+        assertEquals(-1, timings.getWriteNanos());
+        assertEquals("", timings.toHeaderValue());
+
+        timings.setNegotiateNanos(7000);
+        assertEquals("negotiate;dur=0.007", timings.toHeaderValue());
+    }
+
+    @Test
+    public void testNotMeasuredByDefault() {
+        handler.resolveException(request, response, null, new IllegalStateException());
+        assertEquals(500, response.getStatus());
+        assertNull(request.getAttribute(RestErrorTimings.ATTRIBUTE));
+        assertNull(response.getHeader(RestErrorTimings.HEADER_NAME));
+    }
+
+    @Test
+    public void testStreamedResponseHeader() {
+        handler.setTimingEnabled(true);
+        handler.resolveException(request, response, null, new IllegalStateException());
+
+        RestErrorTimings timings = (RestErrorTimings) request.getAttribute(RestErrorTimings.ATTRIBUTE);
+        assertNotNull(timings);
+        assertTrue(timings.getResolveNanos() >= 0);
+        assertTrue(timings.getMessageNanos() >= 0);
+        assertTrue(timings.getNegotiateNanos() >= 0);
+        assertTrue(timings.getWriteNanos() >= 0);
+
+        //the header precedes the body, so it can't report the write phase:
+        String header = response.getHeader(RestErrorTimings.HEADER_NAME);
+        assertTrue(header, header.startsWith("resolve;dur="));
+        assertTrue(header, header.contains("message;dur="));
+        assertTrue(header, header.contains("negotiate;dur="));
+        assertFalse(header, header.contains("write;dur="));
+    }
+
+    @Test
+    public void testBufferedResponseHeaderIncludesWrite() {
+        handler.setTimingEnabled(true);
+        handler.setBufferedRendering(true);
+        handler.resolveException(request, response, null, new IllegalStateException());
+
+        String header = response.getHeader(RestErrorTimings.HEADER_NAME);
+        assertTrue(header, header.contains("write;dur="));
+        assertTrue(response.getContentAsByteArray().length > 0);
+    }
+
+    @Test
+    public void testMeasuredForListenerWithoutHeader() {
+        RestExceptionHandlerTest.CountingListener listener = new RestExceptionHandlerTest.CountingListener();
+        handler.setErrorListener(listener);
+        handler.resolveException(request, response, null, new IllegalStateException());
+
+        assertNotNull(request.getAttribute(RestErrorTimings.ATTRIBUTE));
+        assertNull(response.getHeader(RestErrorTimings.HEADER_NAME));
+        assertEquals(1, listener.rendered.get());
+    }
+}
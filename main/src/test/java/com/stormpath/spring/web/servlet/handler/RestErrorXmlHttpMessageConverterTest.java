@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestErrorXmlHttpMessageConverterTest {
+
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private RestErrorXmlHttpMessageConverter converter;
+    private RestError error;
+
+    @Before
+    public void setUp() {
+        converter = new RestErrorXmlHttpMessageConverter();
+        error = new RestError.Builder().setStatus(HttpStatus.NOT_FOUND).setCode(40401).setMessage("Not found")
+                .setMoreInfoUrl("http://example.com/errors/40401").build();
+    }
+
+    private String write(Object body) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.write(body, MediaType.APPLICATION_XML, new HttpOutputMessage() {
+            private final HttpHeaders headers = new HttpHeaders();
+
+            public OutputStream getBody() {
+                return out;
+            }
+
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        });
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testRestErrorAndMapRenderIdentically() throws Exception {
+        String expected = DECLARATION + "<error><status>404</status><code>40401</code><message>Not found</message>" +
+                "<moreInfoUrl>http://example.com/errors/40401</moreInfoUrl></error>";
+        assertEquals(expected, write(error));
+        assertEquals(expected, write(new MapRestErrorConverter().convert(error)));
+    }
+
+    @Test
+    public void testCustomizedKeysApplyToBothRepresentations() throws Exception {
+        MapRestErrorConverter errorConverter = new MapRestErrorConverter();
+        errorConverter.setStatusKey("httpStatus");
+        errorConverter.setIncludeMoreInfoUrl(false);
+        converter.setErrorConverter(errorConverter);
+        converter.setRootElementName("problem");
+
+        String expected = DECLARATION + "<problem><httpStatus>404</httpStatus><code>40401</code>" +
+                "<message>Not found</message></problem>";
+        assertEquals(expected, write(error));
+        assertEquals(expected, write(errorConverter.convert(error)));
+    }
+
+    @Test
+    public void testMapEntriesInIterationOrder() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("b", 1);
+        map.put("a", "x");
+        map.put("skipped", null);
+        assertEquals(DECLARATION + "<error><b>1</b><a>x</a></error>", write(map));
+    }
+
+    @Test
+    public void testValuesAreEscaped() throws Exception {
+        RestError escaped = new RestError.Builder().setStatus(HttpStatus.BAD_REQUEST)
+                .setMessage("a < b & c > d \u00e9\u0001").build();
+        assertEquals(DECLARATION + "<error><status>400</status><message>a &lt; b &amp; c &gt; d \u00e9\uFFFD" +
+                "</message></error>", write(escaped));
+    }
+
+    @Test
+    public void testManyDistinctElementNames() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        StringBuilder expected = new StringBuilder(DECLARATION).append("<error>");
+        for (int i = 0; i < RestErrorXmlHttpMessageConverter.MAX_CACHED_ELEMENT_NAMES * 2; i++) {
+            map.put("e" + i, i);
+            expected.append("<e").append(i).append('>').append(i).append("</e").append(i).append('>');
+        }
+        expected.append("</error>");
+        assertEquals(expected.toString(), write(map));
+        //cached and uncached names alike:
+        assertEquals(expected.toString(), write(map));
+    }
+
+    @Test
+    public void testCanWriteOnlyConcreteXmlMediaTypes() {
+        assertTrue(converter.canWrite(RestError.class, MediaType.APPLICATION_XML));
+        assertTrue(converter.canWrite(Map.class, MediaType.TEXT_XML));
+        assertTrue(converter.canWrite(RestError.class, MediaType.valueOf("application/problem+xml")));
+
+        assertFalse(converter.canWrite(RestError.class, null));
+        assertFalse(converter.canWrite(RestError.class, MediaType.ALL));
+        assertFalse(converter.canWrite(RestError.class, MediaType.valueOf("application/*")));
+        assertFalse(converter.canWrite(RestError.class, MediaType.valueOf("text/*")));
+        assertFalse(converter.canWrite(RestError.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(String.class, MediaType.APPLICATION_XML));
+        assertFalse(converter.canRead(RestError.class, MediaType.APPLICATION_XML));
+    }
+
+    @Test
+    public void testNegotiationWithXmlConverterFirst() throws Exception {
+        RestExceptionHandler handler = createHandler();
+
+        assertTrue(resolve(handler, null).getContentType().startsWith("application/json"));
+        assertTrue(resolve(handler, "*/*").getContentType().startsWith("application/json"));
+        assertTrue(resolve(handler, "application/*").getContentType().startsWith("application/json"));
+        assertTrue(resolve(handler, "application/json").getContentType().startsWith("application/json"));
+
+        MockHttpServletResponse response = resolve(handler, "application/xml");
+        assertTrue(response.getContentType().startsWith("application/xml"));
+        assertEquals(DECLARATION + "<error><status>404</status><code>404</code></error>",
+                response.getContentAsString());
+        assertTrue(resolve(handler, "text/xml, */*;q=0.8").getContentType().startsWith("text/xml"));
+        assertTrue(resolve(handler, "application/json, application/xml;q=0.5").getContentType()
+                .startsWith("application/json"));
+    }
+
+    private static RestExceptionHandler createHandler() throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("Throwable", "404"));
+        resolver.afterPropertiesSet();
+
+        RestExceptionHandler handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        handler.setMessageConverters(new HttpMessageConverter<?>[]{
+                new RestErrorXmlHttpMessageConverter(), new MappingJacksonHttpMessageConverter()});
+        handler.afterPropertiesSet();
+        return handler;
+    }
+
+    private static MockHttpServletResponse resolve(RestExceptionHandler handler, String accept) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        if (accept != null) {
+            request.addHeader("Accept", accept);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(handler.resolveException(request, response, null, new IllegalStateException()));
+        return response;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RestExceptionHandlerConvertersTest {
+
+    private RestExceptionHandler handler;
+    private StaticApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("Throwable", "500"));
+        resolver.afterPropertiesSet();
+        handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        context = new StaticApplicationContext();
+        context.refresh();
+    }
+
+    private MockHttpServletResponse fail() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(handler.resolveException(new MockHttpServletRequest("GET", "/"), response, null,
+                new IllegalArgumentException("bad")));
+        return response;
+    }
+
+    private RestExceptionHandlerTest.CountingJsonConverter registerAdapter() {
+        RestExceptionHandlerTest.CountingJsonConverter converter = new RestExceptionHandlerTest.CountingJsonConverter();
+        RequestMappingHandlerAdapter adapter = new RequestMappingHandlerAdapter();
+        adapter.setMessageConverters(Collections.<HttpMessageConverter<?>>singletonList(converter));
+        context.getBeanFactory().registerSingleton("handlerAdapter", adapter);
+        return converter;
+    }
+
+    @Test
+    public void testReusesApplicationConverters() {
+        RestExceptionHandlerTest.CountingJsonConverter converter = registerAdapter();
+        handler.setApplicationContext(context);
+
+        MockHttpServletResponse response = fail();
+        assertEquals(500, response.getStatus());
+        assertEquals(1, converter.writes.get());
+    }
+
+    @Test
+    public void testReusesLegacyAdapterConverters() {
+        RestExceptionHandlerTest.CountingJsonConverter converter = new RestExceptionHandlerTest.CountingJsonConverter();
+        AnnotationMethodHandlerAdapter adapter = new AnnotationMethodHandlerAdapter();
+        adapter.setMessageConverters(new HttpMessageConverter<?>[]{converter});
+        context.getBeanFactory().registerSingleton("legacyHandlerAdapter", adapter);
+        handler.setApplicationContext(context);
+
+        fail();
+        assertEquals(1, converter.writes.get());
+    }
+
+    @Test
+    public void testConfiguredConvertersTakePrecedence() {
+        RestExceptionHandlerTest.CountingJsonConverter applicationConverter = registerAdapter();
+        RestExceptionHandlerTest.CountingJsonConverter configured = new RestExceptionHandlerTest.CountingJsonConverter();
+        handler.setMessageConverters(new HttpMessageConverter<?>[]{configured});
+        handler.setApplicationContext(context);
+
+        fail();
+        fail();
+        assertEquals(2, configured.writes.get());
+        assertEquals(0, applicationConverter.writes.get());
+    }
+
+    @Test
+    public void testFallsBackToDefaultConverters() throws Exception {
+        //no handler adapters at all:
+        handler.setApplicationContext(context);
+
+        MockHttpServletResponse response = fail();
+        assertTrue(response.getContentType().startsWith("application/json"));
+        assertTrue(response.getContentAsString().contains("\"status\":500"));
+    }
+
+    @Test
+    public void testConvertersAreDiscoveredOnFirstUse() {
+        handler.setApplicationContext(context);
+        //registered after the handler was configured, but before the first error:
+        RestExceptionHandlerTest.CountingJsonConverter converter = registerAdapter();
+
+        fail();
+        assertEquals(1, converter.writes.get());
+    }
+}
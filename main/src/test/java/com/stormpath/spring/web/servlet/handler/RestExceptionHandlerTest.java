@@ -0,0 +1,253 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RestExceptionHandlerTest {
+
+    private DefaultRestErrorResolver resolver;
+    private RestExceptionHandler handler;
+    private CountingJsonConverter converter;
+    private CountingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> definitions = new LinkedHashMap<String, String>();
+        definitions.put("IllegalArgumentException", "400, msg=Bad argument");
+        definitions.put("Throwable", "500");
+
+        listener = new CountingListener();
+
+        resolver = new DefaultRestErrorResolver();
+        resolver.setExceptionMappingDefinitions(definitions);
+        resolver.setErrorListener(listener);
+        resolver.afterPropertiesSet();
+
+        converter = new CountingJsonConverter();
+
+        handler = new RestExceptionHandler();
+        handler.setErrorResolver(resolver);
+        handler.setMessageConverters(new HttpMessageConverter<?>[]{converter});
+        handler.setErrorListener(listener);
+    }
+
+    @Test
+    public void testWarmUpRendersWithoutRecording() throws Exception {
+        ErrorRateTracker tracker = new ErrorRateTracker();
+        DegradedModeDetector detector = new DegradedModeDetector();
+        handler.setErrorRateTracker(tracker);
+        handler.setDegradedModeDetector(detector);
+        handler.setBufferedRendering(true);
+        handler.setWarmUpEnabled(true);
+        handler.setWarmUpLocales(Arrays.asList(Locale.US, Locale.GERMANY));
+        handler.afterPropertiesSet();
+
+        //at least Exception and IllegalArgumentException in both locales:
+        assertTrue(converter.writes.get() >= 4);
+        assertEquals(0, listener.resolved.get());
+        assertEquals(0, listener.rendered.get());
+        assertEquals(0, tracker.getHandlerNames().length);
+
+        //real errors are still reported:
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        handler.resolveException(request, response, null, new IllegalArgumentException("real"));
+        assertEquals(400, response.getStatus());
+        assertEquals(1, listener.resolved.get());
+        assertEquals(1, listener.rendered.get());
+        assertEquals(1, tracker.getHandlerNames().length);
+    }
+
+    @Test
+    public void testWarmUpUsesEveryProfileConverter() throws Exception {
+        final AtomicInteger conversions = new AtomicInteger();
+        Map<String, RestErrorConverter<?>> converters = new LinkedHashMap<String, RestErrorConverter<?>>();
+        converters.put("internal", new RestErrorConverter<Map<String, Object>>() {
+            public Map<String, Object> convert(RestError re) {
+                conversions.incrementAndGet();
+                return new MapRestErrorConverter().convert(re);
+            }
+        });
+        handler.setProfileErrorConverters(converters);
+        handler.setWarmUpEnabled(true);
+        handler.afterPropertiesSet();
+
+        assertTrue(conversions.get() >= 2);
+        //rendered with the default converter as well:
+        assertEquals(2 * conversions.get(), converter.writes.get());
+    }
+
+    @Test
+    public void testWarmUpCompilesHandlerMappings() throws Exception {
+        final List<Object> compiled = new ArrayList<Object>();
+        DefaultRestErrorResolver recordingResolver = new DefaultRestErrorResolver() {
+            @Override
+            protected Map<String, RestError> getExceptionMappings(Object handler) {
+                if (handler != null) {
+                    compiled.add(handler);
+                }
+                return super.getExceptionMappings(handler);
+            }
+        };
+        recordingResolver.afterPropertiesSet();
+
+        StaticWebApplicationContext context = new StaticWebApplicationContext();
+        context.registerSingleton("userController", UserController.class);
+        context.registerSingleton("handlerMapping", RequestMappingHandlerMapping.class);
+        context.refresh();
+
+        handler.setErrorResolver(recordingResolver);
+        handler.setApplicationContext(context);
+        handler.setWarmUpEnabled(true);
+        handler.afterPropertiesSet();
+
+        assertEquals(1, compiled.size());
+        HandlerMethod handlerMethod = (HandlerMethod) compiled.get(0);
+        assertEquals(UserController.class.getMethod("get"), handlerMethod.getMethod());
+        assertEquals(0, listener.resolved.get());
+    }
+
+    @Controller
+    public static class UserController {
+
+        @RequestMapping("/users")
+        @RestErrorMapping(value = IllegalStateException.class, definition = "503")
+        public void get() {
+        }
+    }
+
+    private MockHttpServletResponse resolveWithDefinition(String definition, boolean include) throws Exception {
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("IllegalStateException", definition));
+        resolver.afterPropertiesSet();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        if (include) {
+            request.setAttribute(WebUtils.INCLUDE_REQUEST_URI_ATTRIBUTE, "/");
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(handler.resolveException(request, response, null, new IllegalStateException()));
+        return response;
+    }
+
+    @Test
+    public void testMaxAgeHeaders() throws Exception {
+        long before = System.currentTimeMillis();
+        MockHttpServletResponse response = resolveWithDefinition("410, maxAge=86400", false);
+
+        assertEquals(410, response.getStatus());
+        assertEquals("max-age=86400", response.getHeader("Cache-Control"));
+        long expires = (Long) response.getHeaderValue("Expires");
+        assertTrue(expires >= before + 86400 * 1000L);
+        assertTrue(expires <= System.currentTimeMillis() + 86400 * 1000L);
+        assertNull(response.getHeader("Retry-After"));
+    }
+
+    @Test
+    public void testZeroMaxAgeDisablesCaching() throws Exception {
+        MockHttpServletResponse response = resolveWithDefinition("404, maxAge=0", false);
+
+        assertEquals("no-cache", response.getHeader("Cache-Control"));
+        assertEquals(1L, response.getHeaderValue("Expires"));
+    }
+
+    @Test
+    public void testRetryAfterHeader() throws Exception {
+        MockHttpServletResponse response = resolveWithDefinition("503, retryAfter=30", false);
+
+        assertEquals(503, response.getStatus());
+        assertEquals(30, response.getHeaderValue("Retry-After"));
+        assertNull(response.getHeader("Cache-Control"));
+        assertNull(response.getHeader("Expires"));
+    }
+
+    @Test
+    public void testNoCacheHeadersByDefault() throws Exception {
+        MockHttpServletResponse response = resolveWithDefinition("409", false);
+
+        assertNull(response.getHeader("Cache-Control"));
+        assertNull(response.getHeader("Expires"));
+        assertNull(response.getHeader("Retry-After"));
+    }
+
+    @Test
+    public void testNoCacheHeadersForIncludes() throws Exception {
+        MockHttpServletResponse response = resolveWithDefinition("503, maxAge=60, retryAfter=30", true);
+
+        assertNull(response.getHeader("Cache-Control"));
+        assertNull(response.getHeader("Retry-After"));
+    }
+
+    static class CountingJsonConverter extends MappingJacksonHttpMessageConverter {
+
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        protected void writeInternal(Object o, HttpOutputMessage outputMessage)
+                throws IOException, HttpMessageNotWritableException {
+            writes.incrementAndGet();
+            super.writeInternal(o, outputMessage);
+        }
+    }
+
+    static class CountingListener implements RestErrorListener {
+
+        final AtomicInteger resolved = new AtomicInteger();
+        final AtomicInteger rendered = new AtomicInteger();
+        volatile String lastMappingKey;
+
+        public boolean isEnabled() {
+            return true;
+        }
+
+        public void errorResolved(ServletWebRequest request, Exception ex, String mappingKey, RestError error,
+                                  long resolveNanos) {
+            lastMappingKey = mappingKey;
+            resolved.incrementAndGet();
+        }
+
+        public void errorRendered(ServletWebRequest request, RestError error, MediaType mediaType, long bodyLength,
+                                  RestErrorTimings timings) {
+            rendered.incrementAndGet();
+        }
+    }
+}
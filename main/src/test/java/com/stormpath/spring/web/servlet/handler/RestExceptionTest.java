@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RestExceptionTest {
+
+    private static final RestError NOT_FOUND = new RestError.Builder().setStatus(HttpStatus.NOT_FOUND)
+            .setMessage(DefaultRestErrorResolver.DEFAULT_EXCEPTION_MESSAGE_VALUE).build();
+
+    @Test
+    public void testNoStackTraceByDefault() {
+        RestException ex = new RestException(NOT_FOUND, "User jsmith not found");
+        assertEquals(0, ex.getStackTrace().length);
+        assertSame(NOT_FOUND, ex.getRestError());
+        assertEquals("User jsmith not found", ex.getMessage());
+    }
+
+    @Test
+    public void testWritableStackTrace() {
+        RestException ex = new TracedException(NOT_FOUND);
+        assertTrue(ex.getStackTrace().length > 0);
+        //filled in by the constructor, but starting at the frame that created the exception:
+        assertEquals("testWritableStackTrace", ex.getStackTrace()[0].getMethodName());
+    }
+
+    @Test
+    public void testCause() {
+        IllegalStateException cause = new IllegalStateException("boom");
+        RestException ex = new RestException(NOT_FOUND, "failed", cause);
+        assertSame(cause, ex.getCause());
+        assertEquals(0, ex.getStackTrace().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTemplateRequired() {
+        new RestException(null);
+    }
+
+    @Test
+    public void testResolvedWithoutMappings() throws Exception {
+        DefaultRestErrorResolver resolver = new DefaultRestErrorResolver();
+        //a mapping that would otherwise match:
+        resolver.setExceptionMappingDefinitions(Collections.singletonMap("RuntimeException", "500"));
+        resolver.afterPropertiesSet();
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        RestError error = resolver.resolveError(request, null, new RestException(NOT_FOUND, "User jsmith not found"));
+
+        assertEquals(HttpStatus.NOT_FOUND, error.getStatus());
+        assertEquals("User jsmith not found", error.getMessage());
+    }
+
+    private static class TracedException extends RestException {
+
+        private TracedException(RestError restError) {
+            super(restError, null, null, true);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowCounterTest {
+
+    private static final long BUCKET = 1000;
+
+    private static void record(SlidingWindowCounter counter, long now, int successes, int errors) {
+        for (int i = 0; i < successes; i++) {
+            counter.record(false, now);
+        }
+        for (int i = 0; i < errors; i++) {
+            counter.record(true, now);
+        }
+    }
+
+    private static void assertCounts(long successes, long errors, long[] counts) {
+        assertEquals("successes", successes, counts[0]);
+        assertEquals("errors", errors, counts[1]);
+    }
+
+    @Test
+    public void testCountsWithinWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(BUCKET, 5);
+        record(counter, 10000, 3, 1);
+        record(counter, 11500, 0, 2);
+
+        assertCounts(0, 2, counter.getCounts(1000, 11500));
+        assertCounts(3, 3, counter.getCounts(2000, 11500));
+        //partial buckets are rounded up:
+        assertCounts(3, 3, counter.getCounts(1001, 11500));
+        //windows are capped at the ring's capacity:
+        assertCounts(3, 3, counter.getCounts(60000, 11500));
+    }
+
+    @Test
+    public void testExpiredBucketsAreExcluded() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(BUCKET, 5);
+        record(counter, 10000, 4, 4);
+        record(counter, 12000, 1, 0);
+
+        assertCounts(5, 4, counter.getCounts(5000, 14999));
+        //the slot still holds epoch 10, but it is no longer within the ring:
+        assertCounts(1, 0, counter.getCounts(5000, 15000));
+        assertCounts(0, 0, counter.getCounts(5000, 17000));
+    }
+
+    @Test
+    public void testLateSampleIsDropped() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(BUCKET, 5);
+        record(counter, 15000, 1, 0);
+        //epoch 10 maps to the same slot, which already holds epoch 15:
+        record(counter, 10999, 0, 3);
+
+        assertCounts(1, 0, counter.getCounts(5000, 15000));
+    }
+
+    @Test
+    public void testReusedSlotIsReset() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(BUCKET, 5);
+        record(counter, 10000, 7, 3);
+        //epoch 15 maps to the same slot as epoch 10:
+        record(counter, 15000, 1, 1);
+
+        assertCounts(1, 1, counter.getCounts(1000, 15000));
+        assertCounts(1, 1, counter.getCounts(5000, 15000));
+    }
+
+    @Test
+    public void testConcurrentRecordingIsExactWithinBucket() throws Exception {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(BUCKET, 5);
+        final int threads = 8;
+        final int iterations = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final boolean error = t % 2 == 0;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            counter.record(error, 20500);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(failure.get());
+        assertCounts(threads / 2 * iterations, threads / 2 * iterations, counter.getCounts(1000, 20999));
+    }
+
+    @Test
+    public void testConcurrentRolloverKeepsNewBucket() throws Exception {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(BUCKET, 2);
+        final int threads = 8;
+        final int epochs = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int epoch = 1; epoch <= epochs; epoch++) {
+                        for (int i = 0; i < 100; i++) {
+                            counter.record(true, epoch * BUCKET);
+                        }
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        //lagging threads must not add their old samples to the reused slots - only an increment in flight while a
+        //slot is reset may spill over, at most one per thread and bucket:
+        long[] counts = counter.getCounts(2 * BUCKET, epochs * BUCKET);
+        assertEquals(0, counts[0]);
+        assertTrue(counts[1] > 0);
+        assertTrue(String.valueOf(counts[1]), counts[1] <= 2 * threads * (100 + 1));
+    }
+}
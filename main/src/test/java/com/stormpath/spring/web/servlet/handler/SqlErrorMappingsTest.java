@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SqlErrorMappingsTest {
+
+    private static final Map<String, RestError> NONE = Collections.emptyMap();
+
+    private static RestError template(int status) {
+        return new RestError.Builder().setStatus(status).build();
+    }
+
+    private static SqlErrorMappings compile(Map<String, RestError> sqlStates, Map<String, RestError> vendorCodes) {
+        return SqlErrorMappings.compile(sqlStates, vendorCodes);
+    }
+
+    private static String key(SqlErrorMappings mappings, SQLException ex) {
+        SqlErrorMappings.Mapping mapping = mappings.find(ex);
+        return mapping != null ? mapping.getKey() : null;
+    }
+
+    @Test
+    public void testNoMappingsCompileToNull() {
+        assertNull(compile(NONE, NONE));
+    }
+
+    @Test
+    public void testVendorCodeWinsOverSqlState() {
+        RestError vendor = template(422);
+        Map<String, RestError> sqlStates = new LinkedHashMap<String, RestError>();
+        sqlStates.put("23505", template(409));
+        sqlStates.put("23", template(400));
+        SqlErrorMappings mappings = compile(sqlStates, Collections.singletonMap(" -803 ", vendor));
+
+        SQLException ex = new SQLException("duplicate", "23505", -803);
+        assertSame(vendor, mappings.find(ex).getTemplate());
+        assertEquals("vendorCode=-803", key(mappings, ex));
+        //other vendor codes fall back to the SQLState:
+        assertEquals("sqlState=23505", key(mappings, new SQLException("duplicate", "23505", -804)));
+    }
+
+    @Test
+    public void testSqlStateWinsOverSqlStateClass() {
+        RestError unique = template(409);
+        RestError integrity = template(400);
+        Map<String, RestError> sqlStates = new LinkedHashMap<String, RestError>();
+        sqlStates.put("23", integrity);
+        sqlStates.put("23505", unique);
+        SqlErrorMappings mappings = compile(sqlStates, NONE);
+
+        assertSame(unique, mappings.find(new SQLException("duplicate", "23505")).getTemplate());
+        assertSame(integrity, mappings.find(new SQLException("not null", "23502")).getTemplate());
+        assertEquals("sqlState=23", key(mappings, new SQLException("not null", "23502")));
+        //a malformed SQLState still matches its class:
+        assertSame(integrity, mappings.find(new SQLException("odd", "23x")).getTemplate());
+    }
+
+    @Test
+    public void testBase36SqlStates() {
+        Map<String, RestError> sqlStates = new LinkedHashMap<String, RestError>();
+        sqlStates.put("HY000", template(500));
+        sqlStates.put("ZZZZZ", template(501));
+        sqlStates.put("00000", template(502));
+        sqlStates.put("0A", template(503));
+        SqlErrorMappings mappings = compile(sqlStates, NONE);
+
+        assertEquals("sqlState=HY000", key(mappings, new SQLException("x", "HY000")));
+        assertEquals("sqlState=ZZZZZ", key(mappings, new SQLException("x", "ZZZZZ")));
+        assertEquals("sqlState=00000", key(mappings, new SQLException("x", "00000")));
+        assertEquals("sqlState=0A", key(mappings, new SQLException("x", "0A000")));
+        //base-36 encodings of different lengths don't collide: "0A" == 10 == "0000A"
+        assertNull(mappings.find(new SQLException("x", "0000A")));
+        assertNull(mappings.find(new SQLException("x", "HY001")));
+        //lower case letters are not valid SQLState characters:
+        assertNull(mappings.find(new SQLException("x", "hy000")));
+    }
+
+    @Test
+    public void testMissingOrShortSqlStateDoesNotMatch() {
+        SqlErrorMappings mappings = compile(Collections.singletonMap("23", template(400)), NONE);
+        assertNull(mappings.find(new SQLException("x")));
+        assertNull(mappings.find(new SQLException("x", "")));
+        assertNull(mappings.find(new SQLException("x", "2")));
+    }
+
+    @Test
+    public void testManyMappings() {
+        Map<String, RestError> vendorCodes = new LinkedHashMap<String, RestError>();
+        for (int code = -500; code < 500; code++) {
+            vendorCodes.put(String.valueOf(code), template(400));
+        }
+        SqlErrorMappings mappings = compile(NONE, vendorCodes);
+        for (int code = -500; code < 500; code++) {
+            assertEquals("vendorCode=" + code, key(mappings, new SQLException("x", null, code)));
+        }
+        assertNull(mappings.find(new SQLException("x", null, 500)));
+        assertNull(mappings.find(new SQLException("x", null, Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void testInvalidSqlStates() {
+        for (String invalid : new String[]{"2", "235", "2350", "235050", "23a05", "23-05", ""}) {
+            try {
+                compile(Collections.singletonMap(invalid, template(400)), NONE);
+                fail("Expected an invalid SQLState mapping for [" + invalid + "].");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidVendorCodes() {
+        for (String invalid : new String[]{"abc", "1.5", "", String.valueOf(Integer.MIN_VALUE)}) {
+            try {
+                compile(NONE, Collections.singletonMap(invalid, template(400)));
+                fail("Expected an invalid vendor code mapping for [" + invalid + "].");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testFindSQLExceptionInCauseChain() {
+        SQLException sqlEx = new SQLIntegrityConstraintViolationException("duplicate", "23505");
+        assertSame(sqlEx, SqlErrorMappings.findSQLException(sqlEx));
+        assertSame(sqlEx, SqlErrorMappings.findSQLException(new RuntimeException(new IllegalStateException(sqlEx))));
+        assertNull(SqlErrorMappings.findSQLException(new RuntimeException()));
+        assertNull(SqlErrorMappings.findSQLException(null));
+
+        Throwable deep = sqlEx;
+        for (int i = 0; i < 8; i++) {
+            deep = new RuntimeException(deep);
+        }
+        //the cause walk is bounded:
+        assertNull(SqlErrorMappings.findSQLException(deep));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Stormpath, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stormpath.spring.web.servlet.handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StackTraceRendererTest {
+
+    private static StackTraceElement frame(String className, String method, int line) {
+        return new StackTraceElement(className, method, className.substring(className.lastIndexOf('.') + 1) + ".java", line);
+    }
+
+    private static <T extends Throwable> T withTrace(T t, StackTraceElement... frames) {
+        t.setStackTrace(frames);
+        return t;
+    }
+
+    @Test
+    public void testRendersFrames() {
+        IllegalStateException ex = withTrace(new IllegalStateException("boom"),
+                frame("com.acme.UserService", "find", 10), frame("com.acme.UserController", "get", 20));
+
+        String expected = "java.lang.IllegalStateException: boom\n" +
+                "\tat com.acme.UserService.find(UserService.java:10)\n" +
+                "\tat com.acme.UserController.get(UserController.java:20)\n";
+        assertEquals(expected, new StackTraceRenderer().render(ex));
+    }
+
+    @Test
+    public void testMaxFrames() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        renderer.setMaxFrames(1);
+        IllegalStateException ex = withTrace(new IllegalStateException("boom"),
+                frame("com.acme.A", "a", 1), frame("com.acme.B", "b", 2), frame("com.acme.C", "c", 3));
+
+        String expected = "java.lang.IllegalStateException: boom\n" +
+                "\tat com.acme.A.a(A.java:1)\n" +
+                "\t... 2 more frames\n";
+        assertEquals(expected, renderer.render(ex));
+    }
+
+    @Test
+    public void testFrameworkFramesCollapsed() {
+        IllegalStateException ex = withTrace(new IllegalStateException("boom"),
+                frame("com.acme.UserController", "get", 20),
+                frame("sun.reflect.NativeMethodAccessorImpl", "invoke", 1),
+                frame("org.springframework.web.servlet.DispatcherServlet", "doDispatch", 2),
+                frame("com.acme.Filter", "doFilter", 30),
+                frame("org.apache.catalina.core.StandardWrapperValve", "invoke", 3));
+
+        String expected = "java.lang.IllegalStateException: boom\n" +
+                "\tat com.acme.UserController.get(UserController.java:20)\n" +
+                "\t... 2 framework frames\n" +
+                "\tat com.acme.Filter.doFilter(Filter.java:30)\n" +
+                "\t... 1 framework frame\n";
+        assertEquals(expected, new StackTraceRenderer().render(ex));
+    }
+
+    @Test
+    public void testCauseFramesInCommon() {
+        StackTraceElement shared1 = frame("com.acme.UserController", "get", 20);
+        StackTraceElement shared2 = frame("com.acme.Filter", "doFilter", 30);
+        IllegalArgumentException cause = withTrace(new IllegalArgumentException("bad"),
+                frame("com.acme.Parser", "parse", 5), frame("com.acme.UserService", "find", 11), shared1, shared2);
+        IllegalStateException ex = withTrace(new IllegalStateException("boom", cause),
+                frame("com.acme.UserService", "find", 12), shared1, shared2);
+
+        String expected = "java.lang.IllegalStateException: boom\n" +
+                "\tat com.acme.UserService.find(UserService.java:12)\n" +
+                "\tat com.acme.UserController.get(UserController.java:20)\n" +
+                "\tat com.acme.Filter.doFilter(Filter.java:30)\n" +
+                "Caused by: java.lang.IllegalArgumentException: bad\n" +
+                "\tat com.acme.Parser.parse(Parser.java:5)\n" +
+                "\tat com.acme.UserService.find(UserService.java:11)\n" +
+                "\t... 2 more\n";
+        assertEquals(expected, new StackTraceRenderer().render(ex));
+    }
+
+    @Test
+    public void testMaxCauses() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        renderer.setMaxCauses(1);
+        StackTraceElement site = frame("com.acme.A", "a", 1);
+        Exception root = withTrace(new Exception("root"), site);
+        Exception middle = withTrace(new Exception("middle", root), site);
+        Exception top = withTrace(new Exception("top", middle), site);
+
+        String expected = "java.lang.Exception: top\n" +
+                "\tat com.acme.A.a(A.java:1)\n" +
+                "Caused by: java.lang.Exception: middle\n" +
+                "\t... 1 more\n" +
+                "\t... further causes omitted\n";
+        assertEquals(expected, renderer.render(top));
+    }
+
+    @Test
+    public void testCauseCycle() {
+        Exception first = withTrace(new Exception("first"), frame("com.acme.A", "a", 1));
+        Exception second = withTrace(new Exception("second", first), frame("com.acme.B", "b", 2));
+        first.initCause(second);
+
+        String rendered = new StackTraceRenderer().render(second);
+        assertTrue(rendered.startsWith("java.lang.Exception: second\n"));
+        assertTrue(rendered.contains("Caused by: java.lang.Exception: first\n"));
+        assertFalse(rendered.contains("further causes omitted"));
+    }
+
+    @Test
+    public void testCachedFramesRenderCurrentMessage() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        StackTraceElement[] frames = {frame("com.acme.UserService", "find", 10)};
+
+        String first = renderer.render(withTrace(new IllegalStateException("user 1"), frames));
+        String second = renderer.render(withTrace(new IllegalStateException("user 2"), frames));
+
+        assertEquals("java.lang.IllegalStateException: user 1\n\tat com.acme.UserService.find(UserService.java:10)\n", first);
+        assertEquals("java.lang.IllegalStateException: user 2\n\tat com.acme.UserService.find(UserService.java:10)\n", second);
+    }
+
+    @Test
+    public void testSameTopFramesDifferentDeeperFrames() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        StackTraceElement[] top = new StackTraceElement[StackTraceRenderer.HASHED_FRAMES + 1];
+        for (int i = 0; i < StackTraceRenderer.HASHED_FRAMES; i++) {
+            top[i] = frame("com.acme.A", "a", i);
+        }
+        StackTraceElement[] other = top.clone();
+        top[StackTraceRenderer.HASHED_FRAMES] = frame("com.acme.B", "b", 1);
+        other[StackTraceRenderer.HASHED_FRAMES] = frame("com.acme.C", "c", 1);
+
+        assertTrue(renderer.render(withTrace(new Exception(), top)).endsWith("\tat com.acme.B.b(B.java:1)\n"));
+        assertTrue(renderer.render(withTrace(new Exception(), other)).endsWith("\tat com.acme.C.c(C.java:1)\n"));
+    }
+
+    @Test
+    public void testSettersClearCache() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        IllegalStateException ex = withTrace(new IllegalStateException("boom"),
+                frame("com.acme.A", "a", 1), frame("com.acme.B", "b", 2));
+        renderer.render(ex);
+
+        renderer.setExcludedPackages(new String[]{"com.acme.B"});
+        assertEquals("java.lang.IllegalStateException: boom\n\tat com.acme.A.a(A.java:1)\n\t... 1 framework frame\n",
+                renderer.render(ex));
+    }
+}